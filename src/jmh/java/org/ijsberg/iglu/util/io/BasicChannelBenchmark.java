@@ -0,0 +1,67 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.io;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures fan-out of BasicChannel.transmit to a growing number of receivers,
+ * by a single transmitter and by concurrent transmitters.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class BasicChannelBenchmark {
+
+	@Param({"1", "8", "64"})
+	public int nrofReceivers;
+
+	private BasicChannel channel;
+	private final Object message = "message";
+
+	@Setup
+	public void setUp(Blackhole blackhole) {
+		channel = new BasicChannel("benchmark");
+		for (int i = 0; i < nrofReceivers; i++) {
+			channel.registerReceiver(new BlackholeReceiver(blackhole));
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		channel.close();
+	}
+
+	@Benchmark
+	public void transmit() {
+		channel.transmit(message);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void transmitConcurrently() {
+		channel.transmit(message);
+	}
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.io;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures transmission through a Pipe with a growing number of filters.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PipeBenchmark {
+
+	@Param({"0", "1", "4"})
+	public int nrofFilters;
+
+	private Pipe pipe;
+	private Integer message = 42;
+
+	@Setup
+	public void setUp(Blackhole blackhole) {
+		FilterChain chain = new FilterChain();
+		for (int i = 0; i < nrofFilters; i++) {
+			chain.add(new Filter<Integer>() {
+				public Integer filter(Integer input) {
+					return input;
+				}
+			});
+		}
+		pipe = Pipe.withFilterChain(new BlackholeReceiver(blackhole), chain);
+	}
+
+	@Benchmark
+	public void transmit() {
+		pipe.transmit(message);
+	}
+}
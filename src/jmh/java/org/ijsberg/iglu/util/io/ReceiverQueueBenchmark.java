@@ -0,0 +1,72 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.io;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures throughput of a producer and a consumer sharing a queue.
+ * Queues are limited and discard messages when full, so that a fast producer cannot exhaust memory.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ReceiverQueueBenchmark {
+
+	private static final int LIMIT = 1024;
+
+	private ReceiverQueue receiverQueue;
+	private BoundedReceiverQueue boundedQueue;
+	private final Object message = "message";
+
+	@Setup
+	public void setUp() {
+		receiverQueue = new ReceiverQueue(LIMIT);
+		boundedQueue = new BoundedReceiverQueue(LIMIT, BoundedReceiverQueue.DROP_OLDEST);
+	}
+
+	@Benchmark
+	@Group("receiverQueue")
+	public void receiverQueueProduce() {
+		receiverQueue.onReceive(message);
+	}
+
+	@Benchmark
+	@Group("receiverQueue")
+	public Object receiverQueueConsume() {
+		return receiverQueue.read();
+	}
+
+	@Benchmark
+	@Group("boundedReceiverQueue")
+	public void boundedQueueProduce() {
+		boundedQueue.onReceive(message);
+	}
+
+	@Benchmark
+	@Group("boundedReceiverQueue")
+	public Object boundedQueueConsume() {
+		return boundedQueue.read();
+	}
+}
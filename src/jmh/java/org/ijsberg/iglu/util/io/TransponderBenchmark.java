@@ -0,0 +1,58 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.io;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time it takes a message to pass a Transponder,
+ * from onReceive until it can be taken from the receiving queue.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class TransponderBenchmark {
+
+	private Transponder transponder;
+	private ReceiverQueue output;
+	private final Object message = "message";
+
+	@Setup
+	public void setUp() {
+		output = new ReceiverQueue();
+		transponder = new Transponder(new Pipe(output));
+		transponder.start();
+	}
+
+	@TearDown
+	public void tearDown() {
+		transponder.stop();
+	}
+
+	@Benchmark
+	public Object roundTrip() throws InterruptedException {
+		transponder.onReceive(message);
+		return output.take(1000);
+	}
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.collection;
+
+import org.ijsberg.iglu.util.misc.StripedCounter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Thread safe cache with a limited number of entries, which evicts the least recently used entry if full.
+ * <p/>
+ * Large caches are divided into segments, each guarded by its own lock and holding an equal share
+ * of the entries, so that threads accessing different keys rarely contend.
+ * Eviction is per segment, which makes it approximately least recently used for the cache as a whole.
+ * Hits, misses and evictions are counted.
+ */
+public class LRUCache<K, V> {
+
+	public static final int DEFAULT_NROF_SEGMENTS = 16;
+	//caches smaller than this consist of a single segment
+	private static final int MIN_SEGMENT_CAPACITY = 16;
+
+	private final Segment<K, V>[] segments;
+	private final int capacity;
+	private final StripedCounter nrofHits = new StripedCounter();
+	private final StripedCounter nrofMisses = new StripedCounter();
+	private final StripedCounter nrofEvictions = new StripedCounter();
+
+	/**
+	 * Entries in access order; guarded by itself.
+	 */
+	private static class Segment<K, V> extends LinkedHashMap<K, V> {
+		private static final long serialVersionUID = 1L;
+		private final int capacity;
+		private final StripedCounter nrofEvictions;
+
+		private Segment(int capacity, StripedCounter nrofEvictions) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+			this.nrofEvictions = nrofEvictions;
+		}
+
+		protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+			if (size() > capacity) {
+				nrofEvictions.increment();
+				return true;
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * @param capacity maximum number of entries
+	 */
+	public LRUCache(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity must be greater than 0");
+		}
+		int nrofSegments = 1;
+		while (nrofSegments < DEFAULT_NROF_SEGMENTS && capacity / (nrofSegments * 2) >= MIN_SEGMENT_CAPACITY) {
+			nrofSegments *= 2;
+		}
+		this.capacity = capacity;
+		//generic arrays can not be created; all elements are created below with the right types
+		@SuppressWarnings("unchecked")
+		Segment<K, V>[] segments = (Segment<K, V>[]) new Segment<?, ?>[nrofSegments];
+		this.segments = segments;
+		for (int i = 0; i < nrofSegments; i++) {
+			//the remainder is spread over the first segments
+			int segmentCapacity = capacity / nrofSegments + (i < capacity % nrofSegments ? 1 : 0);
+			segments[i] = new Segment<K, V>(segmentCapacity, nrofEvictions);
+		}
+	}
+
+	private Segment<K, V> getSegment(Object key) {
+		int hash = key.hashCode();
+		hash ^= (hash >>> 16);
+		return segments[hash & (segments.length - 1)];
+	}
+
+	/**
+	 * @param key
+	 * @return the cached value or null if absent
+	 */
+	public V get(K key) {
+		Segment<K, V> segment = getSegment(key);
+		V value;
+		synchronized (segment) {
+			value = segment.get(key);
+		}
+		if (value != null) {
+			nrofHits.increment();
+		}
+		else {
+			nrofMisses.increment();
+		}
+		return value;
+	}
+
+	/**
+	 * Adds an entry, evicting the least recently used entry if the cache is full.
+	 *
+	 * @param key
+	 * @param value
+	 * @return the previously cached value or null
+	 */
+	public V put(K key, V value) {
+		if (key == null || value == null) {
+			throw new IllegalArgumentException("key and value may not be null");
+		}
+		Segment<K, V> segment = getSegment(key);
+		synchronized (segment) {
+			return segment.put(key, value);
+		}
+	}
+
+	/**
+	 * @param key
+	 * @return the removed value or null
+	 */
+	public V remove(K key) {
+		Segment<K, V> segment = getSegment(key);
+		synchronized (segment) {
+			return segment.remove(key);
+		}
+	}
+
+	/**
+	 * Removes all entries. Statistics are not reset.
+	 */
+	public void clear() {
+		for (int i = 0; i < segments.length; i++) {
+			synchronized (segments[i]) {
+				segments[i].clear();
+			}
+		}
+	}
+
+	/**
+	 * @return number of cached entries
+	 */
+	public int size() {
+		int size = 0;
+		for (int i = 0; i < segments.length; i++) {
+			synchronized (segments[i]) {
+				size += segments[i].size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * @return maximum number of entries
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return number of lookups that found a value
+	 */
+	public long getNrofHits() {
+		return nrofHits.get();
+	}
+
+	/**
+	 * @return number of lookups that found no value
+	 */
+	public long getNrofMisses() {
+		return nrofMisses.get();
+	}
+
+	/**
+	 * @return number of entries evicted to make room for new ones
+	 */
+	public long getNrofEvictions() {
+		return nrofEvictions.get();
+	}
+
+	/**
+	 * @return fraction of lookups that found a value or 0 if there have been no lookups
+	 */
+	public double getHitRatio() {
+		long hits = getNrofHits();
+		long lookups = hits + getNrofMisses();
+		return lookups == 0 ? 0 : (double) hits / lookups;
+	}
+
+	/**
+	 * Resets hit, miss and eviction counts.
+	 */
+	public void resetStatistics() {
+		nrofHits.reset();
+		nrofMisses.reset();
+		nrofEvictions.reset();
+	}
+
+	/**
+	 * @return size and statistics of the cache
+	 */
+	public String toString() {
+		return "LRUCache: " + size() + "/" + capacity + " entries, hits=" + getNrofHits() +
+				" misses=" + getNrofMisses() + " evictions=" + getNrofEvictions();
+	}
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.execution;
+
+/**
+ * Thrown when a command ends with a non-zero exit code.
+ */
+public class CommandFailedException extends Exception {
+
+	private static final long serialVersionUID = 1L;
+
+	private final CommandResult result;
+
+	/**
+	 * @param result
+	 */
+	public CommandFailedException(CommandResult result) {
+		super("command failed with exit code " + result.getExitCode() + " in " + result.getWorkingDir());
+		this.result = result;
+	}
+
+	/**
+	 * @return result of the failed command
+	 */
+	public CommandResult getResult() {
+		return result;
+	}
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.execution;
+
+import org.ijsberg.iglu.util.collection.ArraySupport;
+import org.ijsberg.iglu.util.io.OutputCollector;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Outcome of a command executed by CommandShell.
+ * <p/>
+ * Output is held by OutputCollectors, which keep head and tail in memory
+ * and spill large output to a temporary file.
+ * The temporary file is deleted once the output has been loaded by getOutput() or getErrorOutput().
+ * Invoke delete() to remove temporary files of output that is streamed or not read at all.
+ */
+public class CommandResult {
+
+	private final String[] commandArray;
+	private final File workingDir;
+	private final int exitCode;
+	private final OutputCollector output;
+	private final OutputCollector errorOutput;
+	//complete output, once loaded
+	private byte[] loadedOutput;
+	private byte[] loadedErrorOutput;
+	private final long startTime;
+	private final long endTime;
+
+	/**
+	 * @param commandArray command and arguments
+	 * @param workingDir directory the command was executed in
+	 * @param exitCode exit code of the process
+	 * @param output captured standard output
+	 * @param errorOutput captured error output
+	 * @param startTime time in ms the process was started
+	 * @param endTime time in ms the process was found to have ended
+	 */
+	public CommandResult(String[] commandArray, File workingDir, int exitCode, byte[] output, byte[] errorOutput, long startTime, long endTime) {
+		this(commandArray, workingDir, exitCode, collect(output), collect(errorOutput), startTime, endTime);
+	}
+
+	/**
+	 * @param commandArray command and arguments
+	 * @param workingDir directory the command was executed in
+	 * @param exitCode exit code of the process
+	 * @param output collected standard output
+	 * @param errorOutput collected error output
+	 * @param startTime time in ms the process was started
+	 * @param endTime time in ms the process was found to have ended
+	 */
+	public CommandResult(String[] commandArray, File workingDir, int exitCode, OutputCollector output, OutputCollector errorOutput, long startTime, long endTime) {
+		this.commandArray = commandArray;
+		this.workingDir = workingDir;
+		this.exitCode = exitCode;
+		this.output = output;
+		this.errorOutput = errorOutput;
+		this.startTime = startTime;
+		this.endTime = endTime;
+	}
+
+	/**
+	 * @return command and arguments
+	 */
+	public String[] getCommandArray() {
+		return commandArray;
+	}
+
+	/**
+	 * @return directory the command was executed in
+	 */
+	public File getWorkingDir() {
+		return workingDir;
+	}
+
+	/**
+	 * @return exit code of the process
+	 */
+	public int getExitCode() {
+		return exitCode;
+	}
+
+	private static OutputCollector collect(byte[] bytes) {
+		OutputCollector collector = new OutputCollector(bytes.length, 0);
+		collector.write(bytes, 0, bytes.length);
+		collector.onTransmissionClose();
+		return collector;
+	}
+
+	private static byte[] load(OutputCollector collector) {
+		try {
+			return collector.toByteArray();
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("can not read spilled output", e);
+		}
+	}
+
+	/**
+	 * Loads the complete standard output in memory and deletes the temporary file it was spilled to.
+	 * Use getOutputCollector() to stream large output.
+	 *
+	 * @return captured standard output
+	 * @throws IllegalStateException if spilled output can not be read
+	 */
+	public synchronized byte[] getOutput() {
+		if (loadedOutput == null) {
+			loadedOutput = load(output);
+			output.delete();
+		}
+		return loadedOutput;
+	}
+
+	/**
+	 * Loads the complete error output in memory and deletes the temporary file it was spilled to.
+	 * Use getErrorOutputCollector() to stream large output.
+	 *
+	 * @return captured error output
+	 * @throws IllegalStateException if spilled output can not be read
+	 */
+	public synchronized byte[] getErrorOutput() {
+		if (loadedErrorOutput == null) {
+			loadedErrorOutput = load(errorOutput);
+			errorOutput.delete();
+		}
+		return loadedErrorOutput;
+	}
+
+	/**
+	 * Spilled output can no longer be streamed once getOutput() has been invoked.
+	 *
+	 * @return collected standard output
+	 */
+	public OutputCollector getOutputCollector() {
+		return output;
+	}
+
+	/**
+	 * Spilled output can no longer be streamed once getErrorOutput() has been invoked.
+	 *
+	 * @return collected error output
+	 */
+	public OutputCollector getErrorOutputCollector() {
+		return errorOutput;
+	}
+
+	/**
+	 * Deletes temporary files holding spilled output.
+	 */
+	public void delete() {
+		output.delete();
+		errorOutput.delete();
+	}
+
+	/**
+	 * @return time in ms the process was started
+	 */
+	public long getStartTime() {
+		return startTime;
+	}
+
+	/**
+	 * @return time in ms the process was found to have ended
+	 */
+	public long getEndTime() {
+		return endTime;
+	}
+
+	/**
+	 * @return running time of the process in ms
+	 */
+	public long getDuration() {
+		return endTime - startTime;
+	}
+
+	/**
+	 * @return a summary of the result
+	 */
+	public String toString() {
+		return "[" + ArraySupport.format(commandArray, " ") + "] in " + workingDir + ": exit code " + exitCode + " after " + getDuration() + " ms, " +
+				output.getNrofBytes() + " bytes output, " + errorOutput.getNrofBytes() + " bytes error output";
+	}
+}
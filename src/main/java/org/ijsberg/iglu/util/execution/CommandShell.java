@@ -21,10 +21,10 @@ package org.ijsberg.iglu.util.execution;
 
 import org.ijsberg.iglu.util.collection.ArraySupport;
 import org.ijsberg.iglu.util.io.*;
-import org.ijsberg.iglu.util.misc.StringSupport;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
 
@@ -35,8 +35,16 @@ import java.util.Iterator;
  * Input may be passed by invoking transmit().
  * Output can be obtained by passing registering a receiver
  * by invoking open(Listener).
+ * <p/>
+ * Single commands may be executed synchronously by invoking execute()
+ * or asynchronously by invoking executeAsync().
  */
 public class CommandShell implements Transceiver {
+
+	//error modes of recursive execution
+	public static final int FAIL_FAST = 0;
+	public static final int COLLECT_ALL = 1;
+
 	//shell process
 	private Process proc;
 	//output receiver
@@ -52,6 +60,9 @@ public class CommandShell implements Transceiver {
 
 	private StringBuffer command = new StringBuffer();
 
+	//reads output of asynchronously executed commands
+	private static ProcessMonitor processMonitor;
+
 	/**
 	 * @param shellCommandArray
 	 * @param alternativeEnvVars
@@ -162,15 +173,47 @@ public class CommandShell implements Transceiver {
 	}
 
 	/**
-	 *
+	 * Converts line endings (CR, LF or CRLF) in a byte stream to CRLF.
+	 * <p/>
+	 * Works on the bytes directly and remembers a trailing CR,
+	 * so that a CRLF split over two chunks is converted correctly.
+	 * Use one instance per stream.
 	 */
 	public static class NewLineFilter implements Filter<byte[]> {
-		public byte[] filter(byte[] input) {
-			StringBuffer temp = new StringBuffer(new String(input));
-			StringSupport.replaceAll(temp, "\r\n", "\n");
-			StringSupport.replaceAll(temp, "\r", "\n");
-			StringSupport.replaceAll(temp, "\n", "\r\n");
-			return temp.toString().getBytes();
+		private static final byte CR = 13;
+		private static final byte LF = 10;
+		//last byte of previous chunk was CR, so a leading LF has already been written
+		private boolean pendingCarriageReturn;
+
+		public synchronized byte[] filter(byte[] input) {
+			//most chunks contain few line endings; the buffer grows if they contain many
+			byte[] output = new byte[input.length + (input.length >> 4) + 2];
+			boolean afterCarriageReturn = pendingCarriageReturn;
+			int length = 0;
+			for (int i = 0; i < input.length; i++) {
+				if (length + 2 > output.length) {
+					output = Arrays.copyOf(output, Math.max(output.length * 2, length + 2));
+				}
+				byte b = input[i];
+				if (b == LF) {
+					if (!afterCarriageReturn) {
+						output[length++] = CR;
+						output[length++] = LF;
+					}
+					afterCarriageReturn = false;
+				}
+				else if (b == CR) {
+					output[length++] = CR;
+					output[length++] = LF;
+					afterCarriageReturn = true;
+				}
+				else {
+					output[length++] = b;
+					afterCarriageReturn = false;
+				}
+			}
+			pendingCarriageReturn = afterCarriageReturn;
+			return length == output.length ? output : Arrays.copyOf(output, length);
 		}
 	}
 
@@ -248,6 +291,51 @@ public class CommandShell implements Transceiver {
 		return -1;
 	}
 
+	private static synchronized ProcessMonitor getProcessMonitor() {
+		if (processMonitor == null) {
+			processMonitor = new ProcessMonitor("CommandShell output reader", ProcessMonitor.DEFAULT_NROF_THREADS);
+		}
+		return processMonitor;
+	}
+
+	/**
+	 * Starts a command without waiting for it to end.
+	 * The command receives no input. Its output is read by a small set of threads
+	 * that is shared by all asynchronously executed commands.
+	 * <p/>
+	 * The returned executable completes once the process has ended.
+	 * Its return value is a CommandResult containing exit code, captured output and timing.
+	 * Interrupting the executable destroys the process.
+	 *
+	 * @param commandArray command and arguments
+	 * @param alternativeEnvVars environment variables; null means the environment of the current process
+	 * @param workingDir
+	 * @param outputReceiver receives standard and error output as byte arrays while the command runs; may be null
+	 * @return completion handle
+	 * @throws IOException if the command can not be started
+	 */
+	public static Executable executeAsync(String[] commandArray, String[] alternativeEnvVars, File workingDir, Receiver outputReceiver) throws IOException {
+		long startTime = System.currentTimeMillis();
+		Process proc = Runtime.getRuntime().exec(commandArray, alternativeEnvVars, workingDir);
+		proc.getOutputStream().close();
+		ProcessExecution execution = new ProcessExecution(commandArray, workingDir, proc, outputReceiver, startTime);
+		getProcessMonitor().monitor(execution);
+		return execution;
+	}
+
+	/**
+	 * Starts a command in the shell of the current OS without waiting for it to end.
+	 *
+	 * @param command
+	 * @param dir
+	 * @return completion handle that returns a CommandResult
+	 * @throws IOException if the command can not be started
+	 * @see #executeAsync(String[], String[], File, Receiver)
+	 */
+	public static Executable executeAsync(String command, File dir) throws IOException {
+		return executeAsync(getCommandArrayForCurrentOS(command), null, dir, null);
+	}
+
 	/**
 	 * @param command
 	 * @param dir
@@ -276,7 +364,7 @@ public class CommandShell implements Transceiver {
 		return execute(getCommandArrayForCurrentOS(command), envVars, dir, new Forwarder(System.out));
 	}
 
-	private static String[] getCommandArrayForCurrentOS(String command) {
+	static String[] getCommandArrayForCurrentOS(String command) {
 		String osName = System.getProperty("os.name");
 		String[] cmd;
 		if ("Windows 95".equals(osName)) {
@@ -323,6 +411,38 @@ public class CommandShell implements Transceiver {
 		}
 	}
 
+	/**
+	 * Executes a command in every directory of a directory tree, including the root.
+	 * The tree is walked concurrently and commands run in parallel,
+	 * with at most maxNrofProcesses commands running at the same time.
+	 * <p/>
+	 * A command fails if it ends with a non-zero exit code or can not be started.
+	 * In case of FAIL_FAST, the first failure stops the walk, commands that have not started are discarded
+	 * and the returned executable fails with the exception (a CommandFailedException for a non-zero exit code).
+	 * In case of COLLECT_ALL, all commands are executed and the return value is a list of all exceptions,
+	 * which is empty if every command succeeded.
+	 *
+	 * @param command command for the shell of the current OS
+	 * @param rootdir root of the directory tree
+	 * @param maxNrofProcesses maximum number of commands running at the same time
+	 * @param errorMode FAIL_FAST or COLLECT_ALL
+	 * @param resultReceiver receives a CommandResult as soon as the command in a directory has ended; may be null
+	 * @return completion handle
+	 */
+	public static Executable executeRecursive(String command, String rootdir, int maxNrofProcesses, int errorMode, Receiver resultReceiver) {
+		File root = new File(rootdir);
+		if (!root.exists() || !root.isDirectory()) {
+			throw new IllegalArgumentException("root dir '" + rootdir + "' not valid");
+		}
+		if (errorMode != FAIL_FAST && errorMode != COLLECT_ALL) {
+			throw new IllegalArgumentException("unknown error mode " + errorMode);
+		}
+		RecursiveExecution execution = new RecursiveExecution(getCommandArrayForCurrentOS(command), maxNrofProcesses,
+				errorMode, resultReceiver, Executable.getDefaultExecutor());
+		execution.visit(root);
+		return execution;
+	}
+
 	/**
 	 * Runs test dialog.
 	 *
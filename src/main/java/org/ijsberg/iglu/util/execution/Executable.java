@@ -19,6 +19,16 @@
 
 package org.ijsberg.iglu.util.execution;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Subclasses implement a piece of code that should be executed in a special way, such as:
  * <ul>
@@ -32,39 +42,521 @@ package org.ijsberg.iglu.util.execution;
  * <code>
  * new Executable(){protected Object execute(){System.out.println("this message is printed asynchronously");return null;}}.executeAsync();
  * </code>
+ * <p/>
+ * Asynchronous executions run on an executor, which is a shared pool of at most DEFAULT_MAX_NROF_THREADS threads
+ * unless another executor is passed to the constructor or set as default.
+ * Threads of the shared pool are no daemon threads, so the JVM does not exit before
+ * asynchronous executions, such as the one above, have ended.
+ * If all threads are busy, executions wait in line. Executables that wait for other executables
+ * to finish must therefore not share a pool with them: if all threads wait,
+ * the executables they wait for never start. Give such executables an executor of their own.
+ * Delays and timeouts are handled by a single shared TimerWheel,
+ * so a timed or delayed execution does not occupy an extra thread.
+ * <p/>
+ * Instead of waiting for an execution to finish, callers may register an ExecutionListener,
+ * start another executable once this one has succeeded or combine executables
+ * with allOf and anyOf.
+ * <p/>
+ * An ExecutionMonitor, set per executable or as default for all executables,
+ * is notified of start, end, timeout and interruption with timings in nanoseconds.
+ * Executables can be labeled, so that statistics can be aggregated per type of task.
  */
 public abstract class Executable implements Runnable {
 
-	private boolean finished;
-	private boolean aborted;
-	private Throwable execException;
-	private Thread executeThread;
-	private Object retval;
-	private Executable helperExecutable;
+	public static final int DEFAULT_MAX_NROF_THREADS = 64;
+	//time in ms an idle pool thread is kept alive
+	private static final long THREAD_KEEP_ALIVE = 60000;
+	//time in ms an idle non-daemon thread is kept alive, which delays exit of the JVM
+	private static final long NON_DAEMON_THREAD_KEEP_ALIVE = 1000;
+
+	private static Executor defaultExecutor;
+	private static TimerWheel timerWheel;
+	private static volatile ExecutionMonitor defaultMonitor;
+
+	private final Executor executor;
+	private final Object lock = new Object();
+	private boolean started;
+	private boolean completed;
+	private volatile boolean finished;
+	private volatile boolean aborted;
+	private volatile Throwable execException;
+	private volatile Thread executeThread;
+	private volatile Object retval;
+	private volatile ExecutionMonitor monitor;
+	private volatile String label;
+	//System.nanoTime() at submission; only measured if monitored
+	private volatile long submitTime;
+	//pending delay or timeout
+	private TimerWheel.Timeout scheduledTimeout;
+	//null once listeners have been notified
+	private List<ExecutionListener> listeners = new ArrayList<ExecutionListener>(2);
 
 	/**
+	 * Constructs an executable that runs on the default executor if invoked asynchronously.
 	 */
 	public Executable() {
+		this(null);
+	}
+
+	/**
+	 * @param executor executor that runs this executable if invoked asynchronously;
+	 *                 null means the default executor
+	 */
+	public Executable(Executor executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * @return the executor that runs executables for which no executor is specified
+	 */
+	public static synchronized Executor getDefaultExecutor() {
+		if (defaultExecutor == null) {
+			defaultExecutor = createExecutor(DEFAULT_MAX_NROF_THREADS, false);
+		}
+		return defaultExecutor;
+	}
+
+	/**
+	 * Replaces the executor that runs executables for which no executor is specified.
+	 * A previous default executor is not shut down.
+	 *
+	 * @param executor
+	 */
+	public static synchronized void setDefaultExecutor(Executor executor) {
+		if (executor == null) {
+			throw new IllegalArgumentException("executor may not be null");
+		}
+		defaultExecutor = executor;
+	}
+
+	/**
+	 * Creates a pool of non-daemon threads.
+	 *
+	 * @param maxNrofThreads maximum number of threads
+	 * @return a new executor
+	 * @see #createExecutor(int, boolean)
+	 */
+	public static ThreadPoolExecutor createExecutor(int maxNrofThreads) {
+		return createExecutor(maxNrofThreads, false);
+	}
+
+	/**
+	 * Creates a pool of threads. Threads are created as needed and stopped if idle.
+	 * If all threads are busy, executables wait in line,
+	 * so executables that wait for each other should not share the pool.
+	 * <p/>
+	 * Daemon threads do not keep the JVM alive, which means that executions
+	 * that have not ended at exit are dropped.
+	 * Idle non-daemon threads are stopped sooner, since they delay exit.
+	 *
+	 * @param maxNrofThreads maximum number of threads
+	 * @param daemon true if threads are daemon threads
+	 * @return a new executor
+	 */
+	public static ThreadPoolExecutor createExecutor(int maxNrofThreads, final boolean daemon) {
+		if (maxNrofThreads <= 0) {
+			throw new IllegalArgumentException("maximum number of threads must be greater than 0");
+		}
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(maxNrofThreads, maxNrofThreads,
+				daemon ? THREAD_KEEP_ALIVE : NON_DAEMON_THREAD_KEEP_ALIVE, TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "Executable");
+				thread.setDaemon(daemon);
+				return thread;
+			}
+		});
+		pool.allowCoreThreadTimeOut(true);
+		return pool;
+	}
+
+	/**
+	 * @return the timer wheel that handles delays and timeouts of all executables
+	 */
+	public static synchronized TimerWheel getTimerWheel() {
+		if (timerWheel == null) {
+			timerWheel = new TimerWheel("Executable timer");
+		}
+		return timerWheel;
+	}
+
+	/**
+	 * @return the monitor of executables for which no monitor is set; may be null
+	 */
+	public static ExecutionMonitor getDefaultMonitor() {
+		return defaultMonitor;
+	}
+
+	/**
+	 * Sets a monitor that is notified of the life cycle events of executables for which no monitor is set.
+	 *
+	 * @param monitor monitor or null to stop monitoring
+	 */
+	public static void setDefaultMonitor(ExecutionMonitor monitor) {
+		defaultMonitor = monitor;
+	}
+
+	/**
+	 * Sets a monitor that is notified of the life cycle events of this executable.
+	 * Must be invoked before execution starts.
+	 *
+	 * @param monitor monitor or null to use the default monitor
+	 * @return this executable for convenience
+	 */
+	public Executable setMonitor(ExecutionMonitor monitor) {
+		this.monitor = monitor;
+		return this;
+	}
+
+	/**
+	 * @return the monitor that is notified of the life cycle events of this executable; may be null
+	 */
+	public ExecutionMonitor getMonitor() {
+		return monitor != null ? monitor : defaultMonitor;
+	}
+
+	/**
+	 * Sets a label that identifies the type of task, for instance in ExecutionStatistics.
+	 *
+	 * @param label
+	 * @return this executable for convenience
+	 */
+	public Executable setLabel(String label) {
+		this.label = label;
+		return this;
+	}
+
+	/**
+	 * @return the label of this executable; the class name if no label is set
+	 */
+	public String getLabel() {
+		return label != null ? label : getClass().getName();
 	}
 
+	/**
+	 * @return time in ns since submission or 0 if the time of submission is unknown
+	 */
+	private long getTimeSinceSubmission(long now) {
+		return submitTime != 0 ? now - submitTime : 0;
+	}
 
 	/**
 	 * Used to invoke executable asynchronously.
 	 */
 	public void run() {
-		try {
-			Object result = execute();
-			if (!aborted) {
-				this.retval = result;
-				finished = true;
+		boolean cancelled;
+		synchronized (lock) {
+			//timed out or interrupted before execution started
+			cancelled = completed || aborted;
+			if (cancelled) {
+				complete();
 			}
+			else {
+				executeThread = Thread.currentThread();
+			}
+		}
+		if (cancelled) {
+			notifyListeners();
+			return;
+		}
+		ExecutionMonitor currentMonitor = getMonitor();
+		long startTime = 0;
+		if (currentMonitor != null) {
+			startTime = System.nanoTime();
+			try {
+				currentMonitor.onStart(this, getTimeSinceSubmission(startTime));
+			}
+			catch (Throwable t) {
+				t.printStackTrace();
+			}
+		}
+		Object result = null;
+		Throwable exception = null;
+		try {
+			result = execute();
 		}
 		catch (InterruptedException ie) {
 			//
 		}
 		catch (Throwable t) {
-			execException = t;
+			exception = t;
+		}
+		if (currentMonitor != null) {
+			try {
+				currentMonitor.onEnd(this, System.nanoTime() - startTime, exception);
+			}
+			catch (Throwable t) {
+				t.printStackTrace();
+			}
+		}
+		synchronized (lock) {
+			executeThread = null;
+			if (aborted) {
+				//clear interrupt that may have been meant for this executable
+				Thread.interrupted();
+			}
+			else if (exception != null) {
+				execException = exception;
+				finished = true;
+			}
+			else {
+				retval = result;
+				finished = true;
+			}
+			complete();
+		}
+		notifyListeners();
+	}
+
+	/**
+	 * Must be invoked while holding the lock.
+	 */
+	private void complete() {
+		if (!completed) {
+			completed = true;
+			if (scheduledTimeout != null) {
+				scheduledTimeout.cancel();
+				scheduledTimeout = null;
+			}
+			lock.notifyAll();
+		}
+	}
+
+	/**
+	 * Notifies registered listeners once execution has completed.
+	 * Must be invoked without holding the lock.
+	 */
+	private void notifyListeners() {
+		List<ExecutionListener> listenersToNotify;
+		synchronized (lock) {
+			if (!completed || listeners == null) {
+				return;
+			}
+			listenersToNotify = listeners;
+			listeners = null;
+		}
+		for (int i = 0; i < listenersToNotify.size(); i++) {
+			notifyListener(listenersToNotify.get(i));
+		}
+	}
+
+	private void notifyListener(ExecutionListener listener) {
+		Throwable exception = execException;
+		try {
+			if (exception instanceof TimeOutException) {
+				listener.onTimeOut(this, (TimeOutException) exception);
+			}
+			else if (exception != null) {
+				listener.onFailure(this, exception);
+			}
+			else if (finished) {
+				listener.onSuccess(this, retval);
+			}
+			else {
+				listener.onFailure(this, new InterruptedException("execution interrupted"));
+			}
+		}
+		catch (Throwable t) {
+			//a failing listener must not affect the thread that completes execution
+			t.printStackTrace();
+		}
+	}
+
+	/**
+	 * Registers a listener that is notified once execution has completed.
+	 * The listener is invoked by the thread that completes execution,
+	 * or immediately by the current thread if execution has already completed.
+	 * Listeners should therefore return quickly.
+	 *
+	 * @param listener
+	 * @return this executable for convenience
+	 */
+	public Executable addListener(ExecutionListener listener) {
+		if (listener == null) {
+			throw new IllegalArgumentException("listener may not be null");
+		}
+		synchronized (lock) {
+			if (listeners != null) {
+				listeners.add(listener);
+				return this;
+			}
+		}
+		notifyListener(listener);
+		return this;
+	}
+
+	/**
+	 * Completes execution with a result without executing.
+	 *
+	 * @param result
+	 */
+	void succeed(Object result) {
+		synchronized (lock) {
+			if (completed) {
+				return;
+			}
+			started = true;
+			retval = result;
 			finished = true;
+			complete();
+		}
+		notifyListeners();
+	}
+
+	/**
+	 * Completes execution with an exception without executing.
+	 *
+	 * @param exception
+	 */
+	void fail(Throwable exception) {
+		synchronized (lock) {
+			if (completed) {
+				return;
+			}
+			started = true;
+			execException = exception;
+			complete();
+		}
+		notifyListeners();
+	}
+
+	/**
+	 * Executes another executable asynchronously as soon as this one has finished successfully.
+	 * If this executable fails, times out or is interrupted, the next one is not executed
+	 * but completes with the same exception.
+	 * The next executable must not be started by the caller.
+	 * It may obtain the result of this executable by invoking getReturnValue().
+	 *
+	 * @param next executable to execute after this one
+	 * @return the next executable, so that calls can be chained
+	 */
+	public Executable thenExecute(final Executable next) {
+		addListener(new ExecutionListener() {
+			public void onSuccess(Executable executable, Object result) {
+				next.executeAsync();
+			}
+
+			public void onFailure(Executable executable, Throwable exception) {
+				next.fail(exception);
+			}
+
+			public void onTimeOut(Executable executable, TimeOutException exception) {
+				next.fail(exception);
+			}
+		});
+		return next;
+	}
+
+	/**
+	 * Combines executables that are started by the caller.
+	 * The returned executable finishes as soon as all executables have finished successfully;
+	 * its return value is an array with their return values.
+	 * It fails as soon as one of the executables fails or times out.
+	 *
+	 * @param executables
+	 * @return an executable that completes when all executables have completed
+	 */
+	public static Executable allOf(Executable... executables) {
+		final Executable all = new CompositeExecutable();
+		final Object[] results = new Object[executables.length];
+		final AtomicInteger nrofPending = new AtomicInteger(executables.length);
+		if (executables.length == 0) {
+			all.succeed(results);
+		}
+		for (int i = 0; i < executables.length; i++) {
+			final int index = i;
+			executables[i].addListener(new ExecutionListener() {
+				public void onSuccess(Executable executable, Object result) {
+					results[index] = result;
+					if (nrofPending.decrementAndGet() == 0) {
+						all.succeed(results);
+					}
+				}
+
+				public void onFailure(Executable executable, Throwable exception) {
+					all.fail(exception);
+				}
+
+				public void onTimeOut(Executable executable, TimeOutException exception) {
+					all.fail(exception);
+				}
+			});
+		}
+		return all;
+	}
+
+	/**
+	 * Combines executables that are started by the caller.
+	 * The returned executable completes as soon as the first of the executables completes,
+	 * with the same return value or exception.
+	 *
+	 * @param executables
+	 * @return an executable that completes when one of the executables has completed
+	 */
+	public static Executable anyOf(Executable... executables) {
+		if (executables.length == 0) {
+			throw new IllegalArgumentException("at least one executable must be specified");
+		}
+		final Executable any = new CompositeExecutable();
+		for (int i = 0; i < executables.length; i++) {
+			executables[i].addListener(new ExecutionListener() {
+				public void onSuccess(Executable executable, Object result) {
+					any.succeed(result);
+				}
+
+				public void onFailure(Executable executable, Throwable exception) {
+					any.fail(exception);
+				}
+
+				public void onTimeOut(Executable executable, TimeOutException exception) {
+					any.fail(exception);
+				}
+			});
+		}
+		return any;
+	}
+
+	/**
+	 * Completed by other executables instead of by executing code.
+	 */
+	private static class CompositeExecutable extends Executable {
+		private CompositeExecutable() {
+			super.start();
+		}
+
+		protected Object execute() throws Throwable {
+			throw new IllegalStateException("composite executable can not be executed");
+		}
+	}
+
+	/**
+	 * Marks the executable as started, so that it can not be executed again.
+	 * Executables that are completed by invoking succeed or fail must be started first.
+	 */
+	void start() {
+		synchronized (lock) {
+			if (started) {
+				throw new IllegalStateException("use executable once per call");
+			}
+			started = true;
+		}
+	}
+
+	private void submit() {
+		if (getMonitor() != null) {
+			submitTime = System.nanoTime();
+		}
+		try {
+			(executor != null ? executor : getDefaultExecutor()).execute(this);
+		}
+		catch (RejectedExecutionException ree) {
+			synchronized (lock) {
+				if (!completed) {
+					execException = ree;
+					complete();
+				}
+			}
+			notifyListeners();
 		}
 	}
 
@@ -72,11 +564,8 @@ public abstract class Executable implements Runnable {
 	 * Executes asynchronously.
 	 */
 	public void executeAsync() {
-		if (executeThread != null) {
-			throw new IllegalStateException("use executable once per call");
-		}
-		executeThread = new Thread(this);
-		executeThread.start();
+		start();
+		submit();
 	}
 
 
@@ -84,19 +573,20 @@ public abstract class Executable implements Runnable {
 	 * Executes asynchronously.
 	 * After <emph>timeout</emph> ms the abort method is invoked if the executable has not finished processing
 	 *
-	 * @param timeout timeout value in milliseconds
+	 * @param timeout timeout value in milliseconds; 0 means no timeout
 	 */
 	public void executeAsyncTimed(final long timeout) {
-		if (executeThread != null) {
-			throw new IllegalStateException("use executable once per call");
-		}
-		final Executable nestedExec = this;
-		helperExecutable = new Executable() {
-			public Object execute() throws Throwable {
-				return nestedExec.executeTimed(timeout);
+		start();
+		if (timeout > 0) {
+			synchronized (lock) {
+				scheduledTimeout = getTimerWheel().schedule(new Runnable() {
+					public void run() {
+						timeOut(timeout);
+					}
+				}, timeout);
 			}
-		};
-		helperExecutable.executeAsync();
+		}
+		submit();
 	}
 
 
@@ -105,37 +595,70 @@ public abstract class Executable implements Runnable {
 	 *
 	 * @param delay
 	 */
-	public void executeAsyncDelayed(final long delay) {
-		final Executable nestedExec = this;
-		helperExecutable = new Executable() {
-			public Object execute() throws Throwable {
-				return nestedExec.executeDelayed(delay);
+	public void executeAsyncDelayed(long delay) {
+		start();
+		synchronized (lock) {
+			scheduledTimeout = getTimerWheel().schedule(new Runnable() {
+				public void run() {
+					submit();
+				}
+			}, delay);
+		}
+	}
+
+	/**
+	 * Aborts execution with a TimeOutException if the executable has not finished yet.
+	 *
+	 * @param timeout
+	 */
+	private void timeOut(long timeout) {
+		boolean timedOut = false;
+		synchronized (lock) {
+			if (!completed) {
+				execException = new TimeOutException("execution timed out (" + timeout + "ms)");
+				abort();
+				complete();
+				timedOut = true;
 			}
-		};
-		helperExecutable.executeAsync();
+		}
+		ExecutionMonitor currentMonitor = getMonitor();
+		if (timedOut && currentMonitor != null) {
+			try {
+				currentMonitor.onTimeOut(this, getTimeSinceSubmission(System.nanoTime()));
+			}
+			catch (Throwable t) {
+				t.printStackTrace();
+			}
+		}
+		notifyListeners();
 	}
 
 	/**
-	 * Executes synchronously.
-	 * After <emph>timeout</emph> ms the abort method is invoked if the executable has not finished processing.
+	 * Executes synchronously in the current thread.
+	 * After <emph>timeout</emph> ms the abort method is invoked if the executable has not finished processing,
+	 * which interrupts the current thread.
+	 * Since no other thread is involved, executables may be executed this way by executables
+	 * that run on a pool without waiting for a thread of that pool.
+	 * Code that does not respond to interruption delays the return of this method beyond the timeout.
 	 *
-	 * @param timeout timeout value in milliseconds
+	 * @param timeout timeout value in milliseconds; 0 means no timeout
 	 * @return
 	 * @throws TimeOutException	 in case the call is timed out
 	 * @throws InterruptedException if execution was interrupted before timeout
 	 * @throws Throwable			in case the executable throws
 	 */
-	public Object executeTimed(long timeout) throws TimeOutException, InterruptedException, Throwable {
-		//TODO this also executes asynchronously, yet the current thread waits for it to execute
-		executeAsync();
-		executeThread.join(timeout);
-		if (execException == null && !finished) {
-			interrupt();
-			if (!finished)//execution could still have been finished by now
-			{
-				execException = new TimeOutException("execution timed out (" + timeout + "ms)");
+	public Object executeTimed(final long timeout) throws TimeOutException, InterruptedException, Throwable {
+		start();
+		if (timeout > 0) {
+			synchronized (lock) {
+				scheduledTimeout = getTimerWheel().schedule(new Runnable() {
+					public void run() {
+						timeOut(timeout);
+					}
+				}, timeout);
 			}
 		}
+		run();
 		if (execException != null) {
 			throw execException;
 		}
@@ -170,28 +693,74 @@ public abstract class Executable implements Runnable {
 	/**
 	 * Tries to interrupt execution.
 	 * Execution code is interrupted if it sleeps once in a while.
+	 * Execution that has not started yet is cancelled.
 	 */
 	public void interrupt() {
-		if (!aborted) {
-			aborted = true;
-			if (executeThread != null) {
-				executeThread.interrupt();
+		boolean interrupted = false;
+		synchronized (lock) {
+			if (!aborted) {
+				interrupted = !completed;
+				abort();
+				if (started && executeThread == null) {
+					complete();
+				}
+			}
+		}
+		ExecutionMonitor currentMonitor = getMonitor();
+		if (interrupted && currentMonitor != null) {
+			try {
+				currentMonitor.onInterrupt(this, getTimeSinceSubmission(System.nanoTime()));
 			}
-			if(helperExecutable != null) {
-				helperExecutable.interrupt();
+			catch (Throwable t) {
+				t.printStackTrace();
 			}
 		}
+		notifyListeners();
 	}
 
 	/**
-	 * Joins execution thread
+	 * Must be invoked while holding the lock.
 	 */
-	public void waitUntilFinished() throws InterruptedException {
+	private void abort() {
+		aborted = true;
 		if (executeThread != null) {
-			executeThread.join();
+			executeThread.interrupt();
 		}
 	}
 
+	/**
+	 * Waits until execution has finished, has been aborted or has timed out.
+	 *
+	 * @param timeout maximum time to wait in ms; 0 means indefinitely
+	 * @return true if execution has completed
+	 * @throws InterruptedException
+	 */
+	private boolean awaitCompletion(long timeout) throws InterruptedException {
+		long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : 0;
+		synchronized (lock) {
+			while (started && !completed) {
+				if (deadline == 0) {
+					lock.wait();
+				}
+				else {
+					long remaining = deadline - System.currentTimeMillis();
+					if (remaining <= 0) {
+						return false;
+					}
+					lock.wait(remaining);
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Waits until execution has finished, has been aborted or has timed out.
+	 */
+	public void waitUntilFinished() throws InterruptedException {
+		awaitCompletion(0);
+	}
+
 	/**
 	 * @return the (runtime) exception that may have occurred during execution
 	 */
@@ -200,6 +769,15 @@ public abstract class Executable implements Runnable {
 	}
 
 
+	/**
+	 * @return true if execution has finished, has been aborted or has timed out
+	 */
+	boolean isCompleted() {
+		synchronized (lock) {
+			return completed;
+		}
+	}
+
 	/**
 	 * @return true if execution has been finished (un)successfully
 	 */
@@ -208,7 +786,7 @@ public abstract class Executable implements Runnable {
 	}
 
 	/**
-	 * @return
+	 * @return the thread that is currently executing, or null if execution has not started or has ended
 	 */
 	public Thread getExecutionThread() {
 		return executeThread;
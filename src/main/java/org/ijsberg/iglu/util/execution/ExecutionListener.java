@@ -0,0 +1,49 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.execution;
+
+/**
+ * Is notified once an Executable has completed.
+ * Exactly one of the methods is invoked per execution.
+ *
+ * @see Executable#addListener(ExecutionListener)
+ */
+public interface ExecutionListener {
+
+	/**
+	 * @param executable
+	 * @param result return value of the execution
+	 */
+	void onSuccess(Executable executable, Object result);
+
+	/**
+	 * Invoked if execution threw an exception, was interrupted or could not be started.
+	 *
+	 * @param executable
+	 * @param exception
+	 */
+	void onFailure(Executable executable, Throwable exception);
+
+	/**
+	 * @param executable
+	 * @param exception
+	 */
+	void onTimeOut(Executable executable, TimeOutException exception);
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.execution;
+
+/**
+ * Is notified of the life cycle events of an Executable, for instance to collect statistics.
+ * Times are measured in nanoseconds.
+ * Events are delivered by the thread that causes them, so implementations should return quickly.
+ *
+ * @see Executable#setMonitor(ExecutionMonitor)
+ * @see Executable#setDefaultMonitor(ExecutionMonitor)
+ * @see ExecutionStatistics
+ */
+public interface ExecutionMonitor {
+
+	/**
+	 * Invoked just before code is executed.
+	 *
+	 * @param executable
+	 * @param queueTime time in ns between submission and start of execution; 0 if executed synchronously
+	 */
+	void onStart(Executable executable, long queueTime);
+
+	/**
+	 * Invoked after code has been executed, also if execution has timed out or has been interrupted meanwhile.
+	 *
+	 * @param executable
+	 * @param runTime time in ns the code was executing
+	 * @param exception exception thrown by the code or null
+	 */
+	void onEnd(Executable executable, long runTime, Throwable exception);
+
+	/**
+	 * @param executable
+	 * @param elapsedTime time in ns between submission and timeout
+	 */
+	void onTimeOut(Executable executable, long elapsedTime);
+
+	/**
+	 * @param executable
+	 * @param elapsedTime time in ns between submission and interruption
+	 */
+	void onInterrupt(Executable executable, long elapsedTime);
+}
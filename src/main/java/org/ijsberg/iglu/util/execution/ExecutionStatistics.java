@@ -0,0 +1,198 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.execution;
+
+import org.ijsberg.iglu.util.misc.Histogram;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Aggregates timings of executables per label, so that slow or failing types of tasks can be spotted.
+ * <p/>
+ * Per label, the distribution of queue and run times is recorded in histograms
+ * and the number of started, failed, timed out and interrupted executions is counted.
+ * E.g.:
+ * <code>
+ * ExecutionStatistics statistics = new ExecutionStatistics();
+ * Executable.setDefaultMonitor(statistics);
+ * ...
+ * System.out.println(statistics);
+ * </code>
+ */
+public class ExecutionStatistics implements ExecutionMonitor {
+
+	private final ConcurrentHashMap<String, TaskStatistics> statisticsByLabel = new ConcurrentHashMap<String, TaskStatistics>();
+
+	/**
+	 * Statistics of executables with the same label.
+	 */
+	public static class TaskStatistics {
+		private final String label;
+		private final Histogram queueTimes = new Histogram();
+		private final Histogram runTimes = new Histogram();
+		private final AtomicLong nrofFailures = new AtomicLong();
+		private final AtomicLong nrofTimeOuts = new AtomicLong();
+		private final AtomicLong nrofInterruptions = new AtomicLong();
+
+		private TaskStatistics(String label) {
+			this.label = label;
+		}
+
+		/**
+		 * @return label of the executables
+		 */
+		public String getLabel() {
+			return label;
+		}
+
+		/**
+		 * @return distribution of time in ns between submission and start of execution
+		 */
+		public Histogram getQueueTimes() {
+			return queueTimes;
+		}
+
+		/**
+		 * @return distribution of time in ns code was executing
+		 */
+		public Histogram getRunTimes() {
+			return runTimes;
+		}
+
+		/**
+		 * @return number of executions that have started
+		 */
+		public long getNrofExecutions() {
+			return queueTimes.getCount();
+		}
+
+		/**
+		 * @return number of executions that threw an exception
+		 */
+		public long getNrofFailures() {
+			return nrofFailures.get();
+		}
+
+		/**
+		 * @return number of executions that timed out
+		 */
+		public long getNrofTimeOuts() {
+			return nrofTimeOuts.get();
+		}
+
+		/**
+		 * @return number of executions that were interrupted
+		 */
+		public long getNrofInterruptions() {
+			return nrofInterruptions.get();
+		}
+
+		private void reset() {
+			queueTimes.reset();
+			runTimes.reset();
+			nrofFailures.set(0);
+			nrofTimeOuts.set(0);
+			nrofInterruptions.set(0);
+		}
+
+		/**
+		 * @return summary of the statistics
+		 */
+		public String toString() {
+			return label + ": executions=" + getNrofExecutions() + " failures=" + getNrofFailures() +
+					" timeouts=" + getNrofTimeOuts() + " interruptions=" + getNrofInterruptions() +
+					"\n  queue time (ns): " + queueTimes + "\n  run time (ns): " + runTimes;
+		}
+	}
+
+	private TaskStatistics getOrCreateStatistics(Executable executable) {
+		String label = executable.getLabel();
+		TaskStatistics statistics = statisticsByLabel.get(label);
+		if (statistics == null) {
+			statistics = new TaskStatistics(label);
+			TaskStatistics existing = statisticsByLabel.putIfAbsent(label, statistics);
+			if (existing != null) {
+				statistics = existing;
+			}
+		}
+		return statistics;
+	}
+
+	public void onStart(Executable executable, long queueTime) {
+		getOrCreateStatistics(executable).queueTimes.record(queueTime);
+	}
+
+	public void onEnd(Executable executable, long runTime, Throwable exception) {
+		TaskStatistics statistics = getOrCreateStatistics(executable);
+		statistics.runTimes.record(runTime);
+		if (exception != null) {
+			statistics.nrofFailures.incrementAndGet();
+		}
+	}
+
+	public void onTimeOut(Executable executable, long elapsedTime) {
+		getOrCreateStatistics(executable).nrofTimeOuts.incrementAndGet();
+	}
+
+	public void onInterrupt(Executable executable, long elapsedTime) {
+		getOrCreateStatistics(executable).nrofInterruptions.incrementAndGet();
+	}
+
+	/**
+	 * @param label
+	 * @return statistics of executables with the given label or null if none have been monitored
+	 */
+	public TaskStatistics getStatistics(String label) {
+		return statisticsByLabel.get(label);
+	}
+
+	/**
+	 * @return labels of monitored executables in alphabetical order
+	 */
+	public List<String> getLabels() {
+		List<String> labels = new ArrayList<String>(statisticsByLabel.keySet());
+		Collections.sort(labels);
+		return labels;
+	}
+
+	/**
+	 * Discards all recorded statistics.
+	 */
+	public void reset() {
+		for (TaskStatistics statistics : statisticsByLabel.values()) {
+			statistics.reset();
+		}
+	}
+
+	/**
+	 * @return statistics per label
+	 */
+	public String toString() {
+		StringBuffer result = new StringBuffer("ExecutionStatistics:\n");
+		for (String label : getLabels()) {
+			result.append(statisticsByLabel.get(label)).append('\n');
+		}
+		return result.toString();
+	}
+}
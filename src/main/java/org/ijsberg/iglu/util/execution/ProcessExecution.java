@@ -0,0 +1,255 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.execution;
+
+import org.ijsberg.iglu.util.io.OutputCollector;
+import org.ijsberg.iglu.util.io.Receiver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Completion handle of a process that is started by CommandShell.
+ * Output of the process is read by a ProcessMonitor,
+ * which completes the execution with a CommandResult once the process has ended.
+ * Interrupting the execution destroys the process;
+ * execution then completes with an InterruptedException once the process has actually ended.
+ */
+class ProcessExecution extends Executable {
+
+	private final String[] commandArray;
+	private final File workingDir;
+	private final Process process;
+	private final Receiver outputReceiver;
+	private final InputStream output;
+	private final InputStream errorOutput;
+	private final OutputCollector capturedOutput = new OutputCollector();
+	private final OutputCollector capturedErrorOutput = new OutputCollector();
+	private final long startTime;
+	private int exitCode;
+	private volatile boolean destroyed;
+
+	/**
+	 * @param commandArray command and arguments
+	 * @param workingDir directory the command is executed in
+	 * @param process started process
+	 * @param outputReceiver receives standard and error output as byte arrays; may be null
+	 * @param startTime time in ms the process was started
+	 */
+	ProcessExecution(String[] commandArray, File workingDir, Process process, Receiver outputReceiver, long startTime) {
+		start();
+		this.commandArray = commandArray;
+		this.workingDir = workingDir;
+		this.process = process;
+		this.outputReceiver = outputReceiver;
+		this.output = process.getInputStream();
+		this.errorOutput = process.getErrorStream();
+		this.startTime = startTime;
+	}
+
+	protected Object execute() throws Throwable {
+		throw new IllegalStateException("process execution can not be executed");
+	}
+
+	/**
+	 * Interrupts execution by destroying the process.
+	 */
+	public void interrupt() {
+		destroyed = true;
+		process.destroy();
+	}
+
+	/**
+	 * Interrupts execution by destroying the process and, as far as they can be found,
+	 * the processes it has started, such as the command started by a shell.
+	 * <p/>
+	 * Descendants are found by process id, which is available through Process.pid()
+	 * or the private pid field of the Unix process implementation.
+	 * On Unix, descendants are looked up with pgrep and killed; on Windows the tree is killed with taskkill.
+	 * If the process id or these tools are not available, only the process itself is destroyed.
+	 */
+	void destroyProcessTree() {
+		destroyed = true;
+		long pid = getPid(process);
+		if (pid > 0) {
+			try {
+				if (System.getProperty("os.name").startsWith("Windows")) {
+					runQuietly(new String[]{"taskkill", "/F", "/T", "/PID", "" + pid});
+				}
+				else {
+					List<String> descendants = new ArrayList<String>();
+					collectDescendants("" + pid, descendants);
+					if (!descendants.isEmpty()) {
+						descendants.add(0, "-9");
+						descendants.add(0, "kill");
+						runQuietly(descendants.toArray(new String[descendants.size()]));
+					}
+				}
+			}
+			catch (IOException e) {
+				//tools not available: destroy process only
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		process.destroy();
+	}
+
+	/**
+	 * @return the process id or -1 if it can not be obtained
+	 */
+	private static long getPid(Process process) {
+		try {
+			return ((Number) Process.class.getMethod("pid").invoke(process)).longValue();
+		}
+		catch (Exception noPidMethod) {
+			//Java 8 or older
+		}
+		try {
+			Field field = process.getClass().getDeclaredField("pid");
+			field.setAccessible(true);
+			return field.getInt(process);
+		}
+		catch (Exception noPidField) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Collects descendants before any of them is killed, since orphans are adopted by another process.
+	 */
+	private static void collectDescendants(String pid, List<String> descendants) throws IOException, InterruptedException {
+		String children = runQuietly(new String[]{"pgrep", "-P", pid});
+		for (String child : children.trim().split("\\s+")) {
+			if (child.length() > 0) {
+				descendants.add(child);
+				collectDescendants(child, descendants);
+			}
+		}
+	}
+
+	private static String runQuietly(String[] commandArray) throws IOException, InterruptedException {
+		Process helper = Runtime.getRuntime().exec(commandArray);
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		InputStream input = helper.getInputStream();
+		try {
+			byte[] buffer = new byte[1024];
+			int count;
+			while ((count = input.read(buffer)) >= 0) {
+				result.write(buffer, 0, count);
+			}
+		}
+		finally {
+			input.close();
+			helper.getErrorStream().close();
+			helper.getOutputStream().close();
+		}
+		helper.waitFor();
+		return result.toString();
+	}
+
+	/**
+	 * Reads output that is available without blocking.
+	 *
+	 * @param buffer
+	 * @return the number of bytes read
+	 * @throws IOException
+	 */
+	int readAvailableOutput(byte[] buffer) throws IOException {
+		return read(output, capturedOutput, buffer) + read(errorOutput, capturedErrorOutput, buffer);
+	}
+
+	private int read(InputStream input, OutputCollector capture, byte[] buffer) throws IOException {
+		int nrofBytesRead = 0;
+		int available;
+		while ((available = input.available()) > 0) {
+			int count = input.read(buffer, 0, Math.min(available, buffer.length));
+			if (count < 0) {
+				break;
+			}
+			capture.write(buffer, 0, count);
+			if (outputReceiver != null) {
+				byte[] chunk = new byte[count];
+				System.arraycopy(buffer, 0, chunk, 0, count);
+				outputReceiver.onReceive(chunk);
+			}
+			nrofBytesRead += count;
+		}
+		return nrofBytesRead;
+	}
+
+	/**
+	 * @return true if the process has ended
+	 */
+	boolean hasEnded() {
+		try {
+			exitCode = process.exitValue();
+			return true;
+		}
+		catch (IllegalThreadStateException stillRunning) {
+			return false;
+		}
+	}
+
+	/**
+	 * Completes execution once the process has ended and its output has been read.
+	 */
+	void onEnd() {
+		closeStreams();
+		capturedOutput.onTransmissionClose();
+		capturedErrorOutput.onTransmissionClose();
+		if (destroyed) {
+			capturedOutput.delete();
+			capturedErrorOutput.delete();
+			fail(new InterruptedException("process destroyed"));
+			return;
+		}
+		succeed(new CommandResult(commandArray, workingDir, exitCode, capturedOutput,
+				capturedErrorOutput, startTime, System.currentTimeMillis()));
+	}
+
+	/**
+	 * Destroys the process and completes execution with an exception.
+	 *
+	 * @param exception
+	 */
+	void onFailure(Throwable exception) {
+		process.destroy();
+		closeStreams();
+		capturedOutput.delete();
+		capturedErrorOutput.delete();
+		fail(exception);
+	}
+
+	private void closeStreams() {
+		try {
+			output.close();
+			errorOutput.close();
+		}
+		catch (IOException ignore) {
+		}
+	}
+}
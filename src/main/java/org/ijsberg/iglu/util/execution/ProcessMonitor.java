@@ -0,0 +1,154 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.execution;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads the output of many processes using a small, fixed number of threads.
+ * <p/>
+ * Process streams can not be selected on, so each thread visits its processes in turn
+ * and only reads output that is available without blocking.
+ * If none of its processes produced output, a thread backs off for at most MAX_IDLE_WAIT ms.
+ */
+class ProcessMonitor {
+
+	public static final int DEFAULT_NROF_THREADS = 2;
+	//maximum time in ms a thread waits if none of its processes is active
+	private static final long MAX_IDLE_WAIT = 16;
+
+	private final Reader[] readers;
+
+	/**
+	 * @param name name of the reader threads
+	 * @param nrofThreads number of reader threads
+	 */
+	ProcessMonitor(String name, int nrofThreads) {
+		if (nrofThreads <= 0) {
+			throw new IllegalArgumentException("number of threads must be greater than 0");
+		}
+		readers = new Reader[nrofThreads];
+		for (int i = 0; i < nrofThreads; i++) {
+			readers[i] = new Reader();
+			Thread thread = new Thread(readers[i], name + " " + i);
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	/**
+	 * Reads the output of a process until it ends.
+	 *
+	 * @param execution
+	 */
+	void monitor(ProcessExecution execution) {
+		Reader leastBusyReader = readers[0];
+		for (int i = 1; i < readers.length; i++) {
+			if (readers[i].nrofExecutions.get() < leastBusyReader.nrofExecutions.get()) {
+				leastBusyReader = readers[i];
+			}
+		}
+		leastBusyReader.add(execution);
+	}
+
+	/**
+	 * @return the number of processes that have not ended yet
+	 */
+	int getNrofMonitoredProcesses() {
+		int nrofProcesses = 0;
+		for (int i = 0; i < readers.length; i++) {
+			nrofProcesses += readers[i].nrofExecutions.get();
+		}
+		return nrofProcesses;
+	}
+
+	private static class Reader implements Runnable {
+		//only accessed by the reader thread
+		private final List<ProcessExecution> executions = new ArrayList<ProcessExecution>();
+		private final byte[] buffer = new byte[8192];
+		private final Queue<ProcessExecution> addedExecutions = new ConcurrentLinkedQueue<ProcessExecution>();
+		private final AtomicInteger nrofExecutions = new AtomicInteger();
+
+		private void add(ProcessExecution execution) {
+			nrofExecutions.incrementAndGet();
+			addedExecutions.add(execution);
+			synchronized (this) {
+				notifyAll();
+			}
+		}
+
+		public void run() {
+			long idleWait = 1;
+			while (true) {
+				ProcessExecution added;
+				while ((added = addedExecutions.poll()) != null) {
+					executions.add(added);
+				}
+				boolean active = false;
+				Iterator<ProcessExecution> i = executions.iterator();
+				while (i.hasNext()) {
+					ProcessExecution execution = i.next();
+					try {
+						if (execution.readAvailableOutput(buffer) > 0) {
+							active = true;
+						}
+						else if (execution.hasEnded()) {
+							//output may have arrived just before the process ended
+							execution.readAvailableOutput(buffer);
+							execution.onEnd();
+							i.remove();
+							nrofExecutions.decrementAndGet();
+						}
+					}
+					catch (Throwable t) {
+						execution.onFailure(t);
+						i.remove();
+						nrofExecutions.decrementAndGet();
+					}
+				}
+				if (active) {
+					idleWait = 1;
+					continue;
+				}
+				synchronized (this) {
+					if (addedExecutions.isEmpty()) {
+						try {
+							if (executions.isEmpty()) {
+								wait();
+							}
+							else {
+								wait(idleWait);
+							}
+						}
+						catch (InterruptedException ie) {
+							return;
+						}
+					}
+				}
+				idleWait = Math.min(idleWait * 2, MAX_IDLE_WAIT);
+			}
+		}
+	}
+}
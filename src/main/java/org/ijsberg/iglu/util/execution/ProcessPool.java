@@ -0,0 +1,392 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.execution;
+
+import org.ijsberg.iglu.util.io.Receiver;
+import org.ijsberg.iglu.util.misc.Histogram;
+
+import java.io.File;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executes commands with a limited number of concurrent child processes.
+ * <p/>
+ * Commands that can not start right away wait in a queue, ordered by priority
+ * and, within the same priority, by time of submission.
+ * A command may be given a timeout, after which its process is destroyed.
+ * The time commands spend waiting in the queue and running is recorded separately.
+ * <p/>
+ * If a command times out or is interrupted, the processes it has started are destroyed as well,
+ * as far as the platform allows them to be found (see ProcessExecution.destroyProcessTree).
+ * Where they can not be found, only the direct child process is destroyed
+ * and the maximum number of processes applies to direct child processes only.
+ *
+ * @see CommandShell#executeAsync(String[], String[], File, Receiver)
+ */
+public class ProcessPool {
+
+	public static final int DEFAULT_PRIORITY = 0;
+	public static final long NO_TIMEOUT = 0;
+
+	private final int maxNrofProcesses;
+	private final PriorityQueue<PooledCommand> queue = new PriorityQueue<PooledCommand>(16, new Comparator<PooledCommand>() {
+		public int compare(PooledCommand command1, PooledCommand command2) {
+			if (command1.priority != command2.priority) {
+				return command1.priority > command2.priority ? -1 : 1;
+			}
+			return command1.sequenceNumber < command2.sequenceNumber ? -1 : 1;
+		}
+	});
+	private long nrofSubmittedCommands;
+	private int nrofRunningProcesses;
+	private boolean shutDown;
+	//true while a thread starts waiting commands
+	private boolean draining;
+
+	private final Histogram queueWaitTimes = new Histogram();
+	private final Histogram runTimes = new Histogram();
+	private final AtomicLong nrofTimedOutCommands = new AtomicLong();
+
+	/**
+	 * @param maxNrofProcesses maximum number of child processes running at the same time
+	 */
+	public ProcessPool(int maxNrofProcesses) {
+		if (maxNrofProcesses <= 0) {
+			throw new IllegalArgumentException("maximum number of processes must be greater than 0");
+		}
+		this.maxNrofProcesses = maxNrofProcesses;
+	}
+
+	/**
+	 * Completion handle of a submitted command.
+	 */
+	private class PooledCommand extends Executable {
+		private final String[] commandArray;
+		private final String[] envVars;
+		private final File workingDir;
+		private final Receiver outputReceiver;
+		private final int priority;
+		private final long timeout;
+		private final long sequenceNumber;
+		private final long submitTime = System.currentTimeMillis();
+		private long startTime;
+		//guarded by this
+		private ProcessExecution execution;
+		private boolean cancelled;
+
+		private PooledCommand(String[] commandArray, String[] envVars, File workingDir, Receiver outputReceiver,
+				int priority, long timeout, long sequenceNumber) {
+			start();
+			this.commandArray = commandArray;
+			this.envVars = envVars;
+			this.workingDir = workingDir;
+			this.outputReceiver = outputReceiver;
+			this.priority = priority;
+			this.timeout = timeout;
+			this.sequenceNumber = sequenceNumber;
+		}
+
+		protected Object execute() throws Throwable {
+			throw new IllegalStateException("pooled command can not be executed");
+		}
+
+		/**
+		 * Removes a waiting command from the queue or destroys the process of a running command.
+		 */
+		public void interrupt() {
+			super.interrupt();
+			ProcessExecution runningExecution;
+			synchronized (this) {
+				cancelled = true;
+				runningExecution = execution;
+			}
+			if (runningExecution != null) {
+				destroyInBackground(runningExecution);
+			}
+		}
+
+		/**
+		 * Starts the process. Invoked once a process slot is available.
+		 */
+		private void startProcess() {
+			startTime = System.currentTimeMillis();
+			queueWaitTimes.record(startTime - submitTime);
+			ProcessExecution startedExecution;
+			try {
+				startedExecution = (ProcessExecution) CommandShell.executeAsync(commandArray, envVars, workingDir, outputReceiver);
+			}
+			catch (Exception e) {
+				//command could not be started
+				releaseProcessSlot();
+				fail(e);
+				startWaitingCommands();
+				return;
+			}
+			boolean cancelledWhileStarting;
+			synchronized (this) {
+				execution = startedExecution;
+				cancelledWhileStarting = cancelled;
+			}
+			if (cancelledWhileStarting) {
+				destroyInBackground(startedExecution);
+			}
+			final TimerWheel.Timeout scheduledTimeout = timeout > 0 ? Executable.getTimerWheel().schedule(new Runnable() {
+				public void run() {
+					timeOut();
+				}
+			}, timeout) : null;
+			startedExecution.addListener(new ExecutionListener() {
+				public void onSuccess(Executable executable, Object result) {
+					onCompletion(scheduledTimeout);
+					releaseProcessSlot();
+					succeed(result);
+					startWaitingCommands();
+				}
+
+				public void onFailure(Executable executable, Throwable exception) {
+					onCompletion(scheduledTimeout);
+					releaseProcessSlot();
+					fail(exception);
+					startWaitingCommands();
+				}
+
+				public void onTimeOut(Executable executable, TimeOutException exception) {
+					onCompletion(scheduledTimeout);
+					releaseProcessSlot();
+					fail(exception);
+					startWaitingCommands();
+				}
+			});
+		}
+
+		private void onCompletion(TimerWheel.Timeout scheduledTimeout) {
+			if (scheduledTimeout != null) {
+				scheduledTimeout.cancel();
+			}
+			runTimes.record(System.currentTimeMillis() - startTime);
+		}
+
+		/**
+		 * Invoked by the timer wheel, so the process tree is destroyed by another thread.
+		 */
+		private void timeOut() {
+			nrofTimedOutCommands.incrementAndGet();
+			fail(new TimeOutException("command timed out (" + timeout + "ms)"));
+			ProcessExecution runningExecution;
+			synchronized (this) {
+				runningExecution = execution;
+			}
+			destroyInBackground(runningExecution);
+		}
+	}
+
+	/**
+	 * Destroys a process tree on the default executor, since finding descendants takes helper processes.
+	 * If the executor does not accept the task, only the process itself is destroyed.
+	 *
+	 * @param execution
+	 */
+	private static void destroyInBackground(final ProcessExecution execution) {
+		try {
+			Executable.getDefaultExecutor().execute(new Runnable() {
+				public void run() {
+					execution.destroyProcessTree();
+				}
+			});
+		}
+		catch (RejectedExecutionException e) {
+			execution.interrupt();
+		}
+	}
+
+	/**
+	 * Submits a command that is executed as soon as the number of running processes allows.
+	 * The returned executable completes once the process has ended, times out or could not be started.
+	 * Its return value is a CommandResult.
+	 * Interrupting the executable removes a waiting command from the queue, or destroys its process.
+	 *
+	 * @param commandArray command and arguments
+	 * @param envVars environment variables; null means the environment of the current process
+	 * @param workingDir
+	 * @param outputReceiver receives output while the command runs; may be null
+	 * @param priority commands with a higher priority are started first
+	 * @param timeout maximum running time in ms, after which the process is destroyed; NO_TIMEOUT means no limit
+	 * @return completion handle
+	 */
+	public Executable submit(String[] commandArray, String[] envVars, File workingDir, Receiver outputReceiver, int priority, long timeout) {
+		if (timeout < 0) {
+			throw new IllegalArgumentException("timeout may not be negative");
+		}
+		PooledCommand command;
+		synchronized (this) {
+			if (shutDown) {
+				throw new IllegalStateException("process pool is shut down");
+			}
+			command = new PooledCommand(commandArray, envVars, workingDir, outputReceiver, priority, timeout, nrofSubmittedCommands++);
+			queue.add(command);
+		}
+		startWaitingCommands();
+		return command;
+	}
+
+	/**
+	 * Submits a command for the shell of the current OS with default priority and no timeout.
+	 *
+	 * @param command
+	 * @param dir
+	 * @return completion handle that returns a CommandResult
+	 */
+	public Executable submit(String command, File dir) {
+		return submit(command, dir, DEFAULT_PRIORITY, NO_TIMEOUT);
+	}
+
+	/**
+	 * Submits a command for the shell of the current OS.
+	 *
+	 * @param command
+	 * @param dir
+	 * @param priority commands with a higher priority are started first
+	 * @param timeout maximum running time in ms; NO_TIMEOUT means no limit
+	 * @return completion handle that returns a CommandResult
+	 */
+	public Executable submit(String command, File dir, int priority, long timeout) {
+		return submit(CommandShell.getCommandArrayForCurrentOS(command), null, dir, null, priority, timeout);
+	}
+
+	/**
+	 * Starts commands while process slots are available.
+	 * Only one thread at a time starts commands; slots released meanwhile,
+	 * possibly by the same thread, are picked up by the loop of that thread.
+	 */
+	private void startWaitingCommands() {
+		synchronized (this) {
+			if (draining) {
+				return;
+			}
+			draining = true;
+		}
+		boolean drained = false;
+		try {
+			while (true) {
+				PooledCommand command;
+				synchronized (this) {
+					if (nrofRunningProcesses >= maxNrofProcesses || queue.isEmpty()) {
+						draining = false;
+						drained = true;
+						return;
+					}
+					command = queue.poll();
+					if (command.isCompleted()) {
+						//interrupted while waiting
+						continue;
+					}
+					nrofRunningProcesses++;
+				}
+				command.startProcess();
+			}
+		}
+		finally {
+			if (!drained) {
+				synchronized (this) {
+					draining = false;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Releases a slot before the command completes, so that the slot is free once callers see the command finish.
+	 * The slot is taken by a subsequent call to startWaitingCommands.
+	 */
+	private synchronized void releaseProcessSlot() {
+		nrofRunningProcesses--;
+	}
+
+	/**
+	 * Stops accepting commands and interrupts commands that are still waiting.
+	 * Running processes are not affected.
+	 */
+	public void shutdown() {
+		PooledCommand[] waitingCommands;
+		synchronized (this) {
+			shutDown = true;
+			waitingCommands = queue.toArray(new PooledCommand[queue.size()]);
+			queue.clear();
+		}
+		for (int i = 0; i < waitingCommands.length; i++) {
+			waitingCommands[i].interrupt();
+		}
+	}
+
+	/**
+	 * @return the maximum number of child processes running at the same time
+	 */
+	public int getMaxNrofProcesses() {
+		return maxNrofProcesses;
+	}
+
+	/**
+	 * @return the number of child processes currently running
+	 */
+	public synchronized int getNrofRunningProcesses() {
+		return nrofRunningProcesses;
+	}
+
+	/**
+	 * @return the number of commands waiting for a process slot
+	 */
+	public synchronized int getNrofWaitingCommands() {
+		return queue.size();
+	}
+
+	/**
+	 * @return the number of commands that were destroyed because they timed out
+	 */
+	public long getNrofTimedOutCommands() {
+		return nrofTimedOutCommands.get();
+	}
+
+	/**
+	 * @return distribution of the time in ms commands waited for a process slot
+	 */
+	public Histogram getQueueWaitTimes() {
+		return queueWaitTimes;
+	}
+
+	/**
+	 * @return distribution of the time in ms processes were running
+	 */
+	public Histogram getRunTimes() {
+		return runTimes;
+	}
+
+	/**
+	 * @return a summary of the state of the pool
+	 */
+	public String toString() {
+		return "ProcessPool: " + getNrofRunningProcesses() + "/" + maxNrofProcesses + " running, " +
+				getNrofWaitingCommands() + " waiting, " + nrofTimedOutCommands.get() + " timed out\n" +
+				"- queue wait (ms): " + queueWaitTimes + "\n" +
+				"- run time (ms): " + runTimes + "\n";
+	}
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.execution;
+
+import org.ijsberg.iglu.util.io.Receiver;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executes a command in every directory of a directory tree.
+ * <p/>
+ * The tree is walked concurrently by an executor; each directory found is submitted
+ * to a ProcessPool, which limits the number of commands running at the same time.
+ * Execution completes once every directory has been visited and every command has ended.
+ *
+ * @see CommandShell#executeRecursive(String, String, int, int, Receiver)
+ */
+class RecursiveExecution extends Executable {
+
+	private static final FileFilter DIRECTORY_FILTER = new FileFilter() {
+		public boolean accept(File file) {
+			return file.isDirectory();
+		}
+	};
+
+	private final String[] commandArray;
+	private final ProcessPool processPool;
+	private final int errorMode;
+	private final Receiver resultReceiver;
+	private final Executor walker;
+	//directories still to be listed plus commands that have not ended
+	private final AtomicInteger nrofPendingTasks = new AtomicInteger(1);
+	private final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+	private volatile boolean stopped;
+
+	/**
+	 * @param commandArray command and arguments
+	 * @param maxNrofProcesses maximum number of commands running at the same time
+	 * @param errorMode CommandShell.FAIL_FAST or CommandShell.COLLECT_ALL
+	 * @param resultReceiver receives a CommandResult as soon as the command in a directory has ended; may be null
+	 * @param walker executor that lists directories
+	 */
+	RecursiveExecution(String[] commandArray, int maxNrofProcesses, int errorMode, Receiver resultReceiver, Executor walker) {
+		start();
+		this.commandArray = commandArray;
+		this.processPool = new ProcessPool(maxNrofProcesses);
+		this.errorMode = errorMode;
+		this.resultReceiver = resultReceiver;
+		this.walker = walker;
+	}
+
+	protected Object execute() throws Throwable {
+		throw new IllegalStateException("recursive execution can not be executed");
+	}
+
+	/**
+	 * Stops walking the tree and starting commands.
+	 * Commands that are already running are not interrupted.
+	 */
+	public void interrupt() {
+		stopped = true;
+		processPool.shutdown();
+		super.interrupt();
+	}
+
+	/**
+	 * Schedules listing a directory and executing the command in it.
+	 * A task must have been counted as pending for the directory, which is released
+	 * if the task can not be scheduled.
+	 *
+	 * @param root root of the directory tree
+	 */
+	void visit(final File root) {
+		try {
+			scheduleVisit(root);
+		}
+		catch (RuntimeException e) {
+			//walker does not accept the task, for instance because it is shut down
+			onError(e);
+			onTaskDone();
+		}
+	}
+
+	private void scheduleVisit(final File root) {
+		walker.execute(new Runnable() {
+			public void run() {
+				try {
+					if (!stopped) {
+						File[] subdirs = root.listFiles(DIRECTORY_FILTER);
+						int nrofSubdirs = subdirs != null ? subdirs.length : 0;
+						nrofPendingTasks.addAndGet(nrofSubdirs + 1);
+						submit(root);
+						for (int i = 0; i < nrofSubdirs; i++) {
+							visit(subdirs[i]);
+						}
+					}
+				}
+				catch (Throwable t) {
+					onError(t);
+				}
+				finally {
+					onTaskDone();
+				}
+			}
+		});
+	}
+
+	private void submit(File dir) {
+		Executable execution;
+		try {
+			execution = processPool.submit(commandArray, null, dir, null, ProcessPool.DEFAULT_PRIORITY, ProcessPool.NO_TIMEOUT);
+		}
+		catch (IllegalStateException shutDown) {
+			onTaskDone();
+			return;
+		}
+		execution.addListener(new ExecutionListener() {
+			public void onSuccess(Executable executable, Object result) {
+				try {
+					CommandResult commandResult = (CommandResult) result;
+					if (resultReceiver != null) {
+						resultReceiver.onReceive(commandResult);
+					}
+					if (commandResult.getExitCode() != 0) {
+						onError(new CommandFailedException(commandResult));
+					}
+					else if (resultReceiver == null) {
+						//output is not read by anyone
+						commandResult.delete();
+					}
+				}
+				catch (Throwable t) {
+					//thrown by result receiver
+					onError(t);
+				}
+				finally {
+					onTaskDone();
+				}
+			}
+
+			public void onFailure(Executable executable, Throwable exception) {
+				try {
+					if (!stopped) {
+						onError(exception);
+					}
+				}
+				finally {
+					onTaskDone();
+				}
+			}
+
+			public void onTimeOut(Executable executable, TimeOutException exception) {
+				try {
+					onError(exception);
+				}
+				finally {
+					onTaskDone();
+				}
+			}
+		});
+	}
+
+	private void onError(Throwable exception) {
+		if (errorMode == CommandShell.FAIL_FAST) {
+			stopped = true;
+			processPool.shutdown();
+			fail(exception);
+		}
+		else {
+			errors.add(exception);
+		}
+	}
+
+	private void onTaskDone() {
+		if (nrofPendingTasks.decrementAndGet() == 0) {
+			processPool.shutdown();
+			synchronized (errors) {
+				succeed(new ArrayList<Throwable>(errors));
+			}
+		}
+	}
+}
@@ -0,0 +1,378 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.execution;
+
+import org.ijsberg.iglu.util.time.SchedulingSupport;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs jobs in a cron-like manner, at the start of intervals that divide a day in a round number of events.
+ * <p/>
+ * A single timing thread keeps track of the schedule and hands jobs over to an executor
+ * that runs them. Run times are always calculated from the schedule, never from the time a job finished,
+ * so a slow job does not make the schedule drift. A job never runs concurrently with itself.
+ * <p/>
+ * If a job is still running when its next run is due, or if runs were missed
+ * because the system was suspended, the missed run policy determines what happens:
+ * <ul>
+ * <li>SKIP: missed runs are discarded and the job runs again at the next regular interval start</li>
+ * <li>COALESCE: missed runs are combined into a single run, which takes place as soon as possible</li>
+ * <li>CATCH_UP: every missed run takes place, one after another, as soon as possible</li>
+ * </ul>
+ * Pending runs are processed one after another by the thread that ran the job.
+ * If the executor does not accept a run, the run is treated as missed and the timing thread
+ * retries pending runs periodically.
+ *
+ * @see SchedulingSupport
+ */
+public class Scheduler {
+
+	public static final int SKIP = 0;
+	public static final int COALESCE = 1;
+	public static final int CATCH_UP = 2;
+
+	//maximum time the timing thread waits, so that changes of the system clock are noticed
+	private static final long MAX_WAIT = SchedulingSupport.MINUTE_IN_MS;
+	//time in ms after which a pending run that the executor did not accept is retried
+	private static final long RETRY_INTERVAL = 1000;
+
+	private final String name;
+	private final Executor executor;
+	private final List<Job> jobs = new ArrayList<Job>();
+	private Thread timingThread;
+	private boolean stopped;
+
+	/**
+	 * Constructs a scheduler that runs jobs on the default executor of Executable.
+	 *
+	 * @param name name of the timing thread
+	 */
+	public Scheduler(String name) {
+		this(name, null);
+	}
+
+	/**
+	 * @param name name of the timing thread
+	 * @param executor executor that runs jobs; null means the default executor of Executable
+	 */
+	public Scheduler(String name, Executor executor) {
+		this.name = name;
+		this.executor = executor;
+	}
+
+	/**
+	 * A scheduled job.
+	 */
+	public final class Job {
+		private final Runnable task;
+		private final int intervalInMinutes;
+		private final int offsetInMinutes;
+		private final int missedRunPolicy;
+		//guarded by scheduler
+		private long nextRunTime;
+		private boolean running;
+		private boolean cancelled;
+		private long nrofPendingRuns;
+		private long nrofRuns;
+		private long nrofSkippedRuns;
+
+		private Job(Runnable task, int intervalInMinutes, int offsetInMinutes, int missedRunPolicy, long time) {
+			this.task = task;
+			this.intervalInMinutes = intervalInMinutes;
+			this.offsetInMinutes = offsetInMinutes;
+			this.missedRunPolicy = missedRunPolicy;
+			this.nextRunTime = SchedulingSupport.getNextIntervalStart(time, intervalInMinutes, offsetInMinutes);
+		}
+
+		/**
+		 * Invoked by the timing thread while holding the lock if the next run is due.
+		 *
+		 * @param time current time
+		 */
+		private void onRunDue(long time) {
+			long intervalInMs = (long) intervalInMinutes * SchedulingSupport.MINUTE_IN_MS;
+			long nrofDueRuns = 1 + (time - nextRunTime) / intervalInMs;
+			nextRunTime = SchedulingSupport.getNextIntervalStart(time, intervalInMinutes, offsetInMinutes);
+			if (!running) {
+				nrofDueRuns--;
+				start();
+			}
+			switch (missedRunPolicy) {
+				case SKIP:
+					nrofSkippedRuns += nrofDueRuns;
+					break;
+				case COALESCE:
+					if (nrofDueRuns > 0 && nrofPendingRuns == 0) {
+						nrofPendingRuns = 1;
+						nrofDueRuns--;
+					}
+					nrofSkippedRuns += nrofDueRuns;
+					break;
+				default:
+					nrofPendingRuns += nrofDueRuns;
+			}
+		}
+
+		/**
+		 * Must be invoked while holding the lock.
+		 */
+		private void start() {
+			running = true;
+			nrofRuns++;
+			try {
+				(executor != null ? executor : Executable.getDefaultExecutor()).execute(new Runnable() {
+					public void run() {
+						runTask();
+					}
+				});
+			}
+			catch (RejectedExecutionException e) {
+				//the timing thread retries pending runs
+				running = false;
+				nrofRuns--;
+				onRunMissed();
+			}
+		}
+
+		/**
+		 * Must be invoked while holding the lock.
+		 */
+		private void onRunMissed() {
+			switch (missedRunPolicy) {
+				case SKIP:
+					nrofSkippedRuns++;
+					break;
+				case COALESCE:
+					if (nrofPendingRuns == 0) {
+						nrofPendingRuns = 1;
+					}
+					else {
+						nrofSkippedRuns++;
+					}
+					break;
+				default:
+					nrofPendingRuns++;
+			}
+		}
+
+		/**
+		 * Must be invoked while holding the lock.
+		 */
+		private void startPendingRun() {
+			nrofPendingRuns--;
+			start();
+		}
+
+		/**
+		 * Runs the task and any runs that became pending meanwhile.
+		 */
+		private void runTask() {
+			boolean runAgain = true;
+			while (runAgain) {
+				try {
+					task.run();
+				}
+				catch (Throwable t) {
+					t.printStackTrace();
+				}
+				synchronized (Scheduler.this) {
+					runAgain = nrofPendingRuns > 0 && !cancelled && !stopped;
+					if (runAgain) {
+						nrofPendingRuns--;
+						nrofRuns++;
+					}
+					else {
+						running = false;
+					}
+				}
+			}
+		}
+
+		/**
+		 * @return true if the job has runs pending that are not processed by a running task
+		 */
+		private boolean hasWaitingPendingRuns() {
+			return !running && nrofPendingRuns > 0;
+		}
+
+		/**
+		 * Removes the job from the schedule. A run in progress is not interrupted.
+		 */
+		public void cancel() {
+			synchronized (Scheduler.this) {
+				cancelled = true;
+				nrofPendingRuns = 0;
+				jobs.remove(this);
+			}
+		}
+
+		/**
+		 * @return the time in ms the job is due to run next
+		 */
+		public long getNextRunTime() {
+			synchronized (Scheduler.this) {
+				return nextRunTime;
+			}
+		}
+
+		/**
+		 * @return true if the job is currently running
+		 */
+		public boolean isRunning() {
+			synchronized (Scheduler.this) {
+				return running;
+			}
+		}
+
+		/**
+		 * @return the number of times the job was started
+		 */
+		public long getNrofRuns() {
+			synchronized (Scheduler.this) {
+				return nrofRuns;
+			}
+		}
+
+		/**
+		 * @return the number of missed runs that were discarded
+		 */
+		public long getNrofSkippedRuns() {
+			synchronized (Scheduler.this) {
+				return nrofSkippedRuns;
+			}
+		}
+
+		/**
+		 * @return the number of missed runs that will take place as soon as possible
+		 */
+		public long getNrofPendingRuns() {
+			synchronized (Scheduler.this) {
+				return nrofPendingRuns;
+			}
+		}
+	}
+
+	/**
+	 * Schedules a task to run at the start of every interval.
+	 * The timing thread is started by the first invocation.
+	 *
+	 * @param task
+	 * @param intervalInMinutes must divide a day in a round number of intervals
+	 * @param offsetInMinutes offset of the intervals, relative to midnight local time
+	 * @param missedRunPolicy SKIP, COALESCE or CATCH_UP
+	 * @return the scheduled job
+	 */
+	public synchronized Job schedule(Runnable task, int intervalInMinutes, int offsetInMinutes, int missedRunPolicy) {
+		if (task == null) {
+			throw new IllegalArgumentException("task may not be null");
+		}
+		if (intervalInMinutes <= 0 || !SchedulingSupport.isIntervalRegularDaily(intervalInMinutes)) {
+			throw new IllegalArgumentException("interval of " + intervalInMinutes + " minutes does not divide a day");
+		}
+		if (missedRunPolicy < SKIP || missedRunPolicy > CATCH_UP) {
+			throw new IllegalArgumentException("unknown missed run policy " + missedRunPolicy);
+		}
+		if (stopped) {
+			throw new IllegalStateException("scheduler " + name + " is stopped");
+		}
+		Job job = new Job(task, intervalInMinutes, offsetInMinutes, missedRunPolicy, getCurrentTime());
+		jobs.add(job);
+		if (timingThread == null) {
+			timingThread = new Thread(new Runnable() {
+				public void run() {
+					runSchedule();
+				}
+			}, name);
+			timingThread.setDaemon(true);
+			timingThread.start();
+		}
+		else {
+			notifyAll();
+		}
+		return job;
+	}
+
+	/**
+	 * Stops the timing thread. Jobs in progress are not interrupted.
+	 */
+	public synchronized void stop() {
+		stopped = true;
+		jobs.clear();
+		notifyAll();
+	}
+
+	/**
+	 * @return true if the scheduler is stopped
+	 */
+	public synchronized boolean isStopped() {
+		return stopped;
+	}
+
+	/**
+	 * @return the number of scheduled jobs
+	 */
+	public synchronized int getNrofJobs() {
+		return jobs.size();
+	}
+
+	/**
+	 * @return the current time in ms
+	 */
+	protected long getCurrentTime() {
+		return System.currentTimeMillis();
+	}
+
+	/**
+	 * Makes the timing thread reconsider the schedule, for instance after the current time was changed.
+	 */
+	synchronized void wakeUp() {
+		notifyAll();
+	}
+
+	private synchronized void runSchedule() {
+		while (!stopped) {
+			long time = getCurrentTime();
+			long waitTime = MAX_WAIT;
+			for (int i = 0; i < jobs.size(); i++) {
+				Job job = jobs.get(i);
+				if (job.nextRunTime <= time) {
+					job.onRunDue(time);
+				}
+				else if (job.hasWaitingPendingRuns()) {
+					job.startPendingRun();
+				}
+				waitTime = Math.min(waitTime, job.nextRunTime - time);
+				if (job.hasWaitingPendingRuns()) {
+					waitTime = Math.min(waitTime, RETRY_INTERVAL);
+				}
+			}
+			try {
+				wait(Math.max(waitTime, 1));
+			}
+			catch (InterruptedException ie) {
+				return;
+			}
+		}
+	}
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.execution;
+
+import org.ijsberg.iglu.util.io.Receiver;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * A command shell that stays open to execute a series of commands.
+ * <p/>
+ * After each command the shell is made to print a marker line holding a unique sentinel and the exit code,
+ * so that the output of consecutive commands can be told apart.
+ * Error output is redirected to standard output, so that it is part of the output of the command.
+ * On Unix this includes errors of the shell itself, such as syntax errors, since the error output
+ * of the shell is redirected at startup. On Windows, errors of cmd.exe itself are reported separately
+ * and may therefore arrive out of order.
+ * Commands must fit on a single line and must not read input.
+ *
+ * @see ShellSessionPool
+ */
+public class ShellSession {
+
+	private static final String CRLF = "\r\n";
+	private static final String NO_OP_COMMAND = System.getProperty("os.name").startsWith("Windows") ? "rem" : ":";
+
+	private final String name;
+	private final File workingDir;
+	private final CommandShell shell;
+	private final boolean isWindows;
+	//output received from the shell that has not been assigned to a command yet; guarded by itself
+	private final StringBuffer pendingOutput = new StringBuffer();
+	//decodes output in the default character set; keeps characters split over chunks; guarded by pendingOutput
+	private final CharsetDecoder decoder = Charset.defaultCharset().newDecoder()
+			.onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+	private byte[] undecodedBytes = new byte[0];
+	private volatile boolean closed;
+	private boolean broken;
+	private int nrofCommands;
+	private int nrofSentinels;
+	private long lastUseTime;
+
+	/**
+	 * Starts a shell for the current OS and waits until it is ready to accept commands.
+	 *
+	 * @param name used in sentinels
+	 * @param workingDir
+	 * @param startupTimeout maximum time in ms to wait for the shell to become ready
+	 * @throws IOException if the shell can not be started
+	 * @throws TimeOutException if the shell does not respond in time
+	 * @throws InterruptedException
+	 */
+	public ShellSession(String name, File workingDir, long startupTimeout) throws IOException, TimeOutException, InterruptedException {
+		this.name = name;
+		this.workingDir = workingDir;
+		this.isWindows = System.getProperty("os.name").startsWith("Windows");
+		//delayed expansion makes cmd.exe evaluate !errorlevel! after the command instead of before
+		this.shell = new CommandShell(isWindows ? new String[]{"cmd.exe", "/V:ON", "/Q"} : new String[]{"/bin/sh"}, workingDir);
+		try {
+			shell.open(new Receiver() {
+				public void onReceive(Object message) {
+					synchronized (pendingOutput) {
+						decode((byte[]) message, false);
+						pendingOutput.notifyAll();
+					}
+				}
+
+				public void onTransmissionClose() {
+					synchronized (pendingOutput) {
+						decode(new byte[0], true);
+						closed = true;
+						pendingOutput.notifyAll();
+					}
+				}
+			});
+		}
+		catch (RuntimeException e) {
+			throw new IOException("can not start shell session " + name + ": " + e.getMessage());
+		}
+		try {
+			if (!isWindows) {
+				//errors of the shell itself are then ordered with respect to sentinels
+				shell.transmit("exec 2>&1\n".getBytes());
+			}
+			//discards any banner printed by the shell
+			run(NO_OP_COMMAND, startupTimeout);
+		}
+		catch (IOException e) {
+			close();
+			throw e;
+		}
+		catch (TimeOutException e) {
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Appends decoded output to the pending output.
+	 * Bytes of a character that is not complete yet are kept until the next chunk arrives.
+	 *
+	 * @param bytes
+	 * @param endOfOutput true if no more output follows
+	 */
+	private void decode(byte[] bytes, boolean endOfOutput) {
+		ByteBuffer input = ByteBuffer.allocate(undecodedBytes.length + bytes.length);
+		input.put(undecodedBytes);
+		input.put(bytes);
+		input.flip();
+		CharBuffer output = CharBuffer.allocate((int) (input.remaining() * decoder.maxCharsPerByte()) + 2);
+		decoder.decode(input, output, endOfOutput);
+		if (endOfOutput) {
+			decoder.flush(output);
+		}
+		output.flip();
+		pendingOutput.append(output);
+		undecodedBytes = new byte[input.remaining()];
+		input.get(undecodedBytes);
+	}
+
+	/**
+	 * Executes a command and waits for it to end.
+	 * If the command does not end in time, the session is no longer usable.
+	 *
+	 * @param command single line command
+	 * @param timeout maximum time in ms to wait for the command to end; 0 means indefinitely
+	 * @return exit code and output of the command
+	 * @throws IOException if the session is closed
+	 * @throws TimeOutException if the command did not end in time
+	 * @throws InterruptedException
+	 */
+	public synchronized CommandResult execute(String command, long timeout) throws IOException, TimeOutException, InterruptedException {
+		if (command.indexOf('\n') >= 0 || command.indexOf('\r') >= 0) {
+			throw new IllegalArgumentException("command must fit on a single line");
+		}
+		nrofCommands++;
+		return run(command, timeout);
+	}
+
+	private CommandResult run(String command, long timeout) throws IOException, TimeOutException, InterruptedException {
+		if (closed || broken) {
+			throw new IOException("shell session " + name + " is " + (closed ? "closed" : "broken"));
+		}
+		String sentinel = "--" + name + ":" + (++nrofSentinels) + "--";
+		long startTime = System.currentTimeMillis();
+		//until the sentinel is received, output of this command could be taken for output of the next
+		broken = true;
+		if (isWindows) {
+			shell.transmit(("(" + command + ") 2>&1 & echo " + sentinel + " !errorlevel!\n").getBytes());
+		}
+		else {
+			//CommandShell transmits one line at a time
+			shell.transmit(("{ " + command + "\n").getBytes());
+			shell.transmit(("} 2>&1; echo " + sentinel + " $?\n").getBytes());
+		}
+		String output;
+		int exitCode;
+		synchronized (pendingOutput) {
+			long deadline = timeout > 0 ? startTime + timeout : 0;
+			int markerStart;
+			int markerEnd;
+			while ((markerStart = pendingOutput.indexOf(sentinel)) < 0 ||
+					(markerEnd = pendingOutput.indexOf(CRLF, markerStart)) < 0) {
+				if (closed) {
+					throw new IOException("shell session " + name + " closed while executing " + command);
+				}
+				if (deadline == 0) {
+					pendingOutput.wait();
+				}
+				else {
+					long remaining = deadline - System.currentTimeMillis();
+					if (remaining <= 0) {
+						throw new TimeOutException("command timed out (" + timeout + "ms): " + command);
+					}
+					pendingOutput.wait(remaining);
+				}
+			}
+			output = pendingOutput.substring(0, markerStart);
+			try {
+				exitCode = Integer.parseInt(pendingOutput.substring(markerStart + sentinel.length(), markerEnd).trim());
+			}
+			catch (NumberFormatException e) {
+				throw new IOException("unexpected output of shell session " + name + ": " + pendingOutput.substring(markerStart, markerEnd));
+			}
+			pendingOutput.delete(0, markerEnd + CRLF.length());
+		}
+		broken = false;
+		lastUseTime = System.currentTimeMillis();
+		return new CommandResult(new String[]{command}, workingDir, exitCode, output.getBytes(), new byte[0], startTime, lastUseTime);
+	}
+
+	/**
+	 * Transmits a no-op command to check whether the shell still responds.
+	 *
+	 * @param timeout maximum time in ms to wait for a response
+	 * @return true if the shell responded in time
+	 */
+	public synchronized boolean isHealthy(long timeout) {
+		try {
+			run(NO_OP_COMMAND, timeout);
+			return true;
+		}
+		catch (Exception e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Closes the shell.
+	 */
+	public void close() {
+		closed = true;
+		shell.close();
+	}
+
+	/**
+	 * @return false if the shell is closed or a command did not end in time
+	 */
+	public synchronized boolean isUsable() {
+		return !closed && !broken;
+	}
+
+	/**
+	 * @return the number of commands executed
+	 */
+	public synchronized int getNrofCommands() {
+		return nrofCommands;
+	}
+
+	/**
+	 * @return time in ms the last command ended
+	 */
+	public synchronized long getLastUseTime() {
+		return lastUseTime;
+	}
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.execution;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedList;
+
+/**
+ * Keeps a number of shell sessions open, so that short commands do not pay for starting a shell.
+ * <p/>
+ * Sessions are leased, used to execute one or more commands, and released.
+ * A session is closed instead of reused if it has executed its maximum number of commands,
+ * or if a command did not end properly. If a session has been idle for a while,
+ * it is checked for responsiveness before it is leased again.
+ * The pool replaces closed sessions in the background, so that a minimum number of sessions stays warm.
+ *
+ * @see ShellSession
+ */
+public class ShellSessionPool {
+
+	public static final long DEFAULT_STARTUP_TIMEOUT = 10000;
+	public static final long DEFAULT_HEALTH_CHECK_TIMEOUT = 1000;
+	//sessions idle for longer than this are checked before they are leased
+	public static final long DEFAULT_MAX_UNCHECKED_IDLE_TIME = 10000;
+
+	private final String name;
+	private final File workingDir;
+	private final int minNrofSessions;
+	private final int maxNrofSessions;
+	private final int maxUses;
+	//most recently used session last
+	private final LinkedList<ShellSession> idleSessions = new LinkedList<ShellSession>();
+	//idle, leased and starting sessions
+	private int nrofSessions;
+	private int nrofCreatedSessions;
+	private long nrofRecycledSessions;
+	private boolean closed;
+
+	/**
+	 * Starts the minimum number of sessions before returning.
+	 *
+	 * @param name name of the pool
+	 * @param workingDir working directory of the shells
+	 * @param minNrofSessions number of sessions kept open, even if idle
+	 * @param maxNrofSessions maximum number of sessions open at the same time
+	 * @param maxUses maximum number of commands a session executes before it is replaced
+	 * @throws IOException if a shell can not be started
+	 * @throws TimeOutException if a shell does not respond in time
+	 * @throws InterruptedException
+	 */
+	public ShellSessionPool(String name, File workingDir, int minNrofSessions, int maxNrofSessions, int maxUses)
+			throws IOException, TimeOutException, InterruptedException {
+		if (minNrofSessions < 0 || maxNrofSessions <= 0 || minNrofSessions > maxNrofSessions) {
+			throw new IllegalArgumentException("numbers of sessions must satisfy 0 <= minimum <= maximum and maximum > 0");
+		}
+		if (maxUses <= 0) {
+			throw new IllegalArgumentException("maximum number of uses must be greater than 0");
+		}
+		this.name = name;
+		this.workingDir = workingDir;
+		this.minNrofSessions = minNrofSessions;
+		this.maxNrofSessions = maxNrofSessions;
+		this.maxUses = maxUses;
+		boolean started = false;
+		try {
+			for (int i = 0; i < minNrofSessions; i++) {
+				synchronized (this) {
+					nrofSessions++;
+				}
+				ShellSession session = createSession();
+				synchronized (this) {
+					idleSessions.addLast(session);
+				}
+			}
+			started = true;
+		}
+		finally {
+			if (!started) {
+				close();
+			}
+		}
+	}
+
+	private ShellSession createSession() throws IOException, TimeOutException, InterruptedException {
+		String sessionName;
+		synchronized (this) {
+			sessionName = name + "-" + (nrofCreatedSessions++);
+		}
+		boolean started = false;
+		try {
+			ShellSession session = new ShellSession(sessionName, workingDir, DEFAULT_STARTUP_TIMEOUT);
+			started = true;
+			return session;
+		}
+		finally {
+			if (!started) {
+				synchronized (this) {
+					nrofSessions--;
+					notifyAll();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Leases a session, starting a new one if none is idle and the maximum has not been reached.
+	 *
+	 * @param timeout maximum time in ms to wait for a session to become available; 0 means indefinitely
+	 * @return a session that must be released after use
+	 * @throws IOException if a shell can not be started
+	 * @throws TimeOutException if no session became available in time
+	 * @throws InterruptedException
+	 */
+	public ShellSession lease(long timeout) throws IOException, TimeOutException, InterruptedException {
+		long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : 0;
+		while (true) {
+			ShellSession session = null;
+			synchronized (this) {
+				while (!closed && idleSessions.isEmpty() && nrofSessions >= maxNrofSessions) {
+					if (deadline == 0) {
+						wait();
+					}
+					else {
+						long remaining = deadline - System.currentTimeMillis();
+						if (remaining <= 0) {
+							throw new TimeOutException("no shell session available within " + timeout + " ms");
+						}
+						wait(remaining);
+					}
+				}
+				if (closed) {
+					throw new IllegalStateException("shell session pool " + name + " is closed");
+				}
+				if (!idleSessions.isEmpty()) {
+					session = idleSessions.removeLast();
+				}
+				else {
+					nrofSessions++;
+				}
+			}
+			if (session == null) {
+				return createSession();
+			}
+			if (System.currentTimeMillis() - session.getLastUseTime() <= DEFAULT_MAX_UNCHECKED_IDLE_TIME ||
+					session.isHealthy(DEFAULT_HEALTH_CHECK_TIMEOUT)) {
+				return session;
+			}
+			discard(session);
+		}
+	}
+
+	/**
+	 * Returns a session to the pool.
+	 *
+	 * @param session leased session
+	 */
+	public void release(ShellSession session) {
+		synchronized (this) {
+			if (!closed && session.isUsable() && session.getNrofCommands() < maxUses) {
+				idleSessions.addLast(session);
+				notifyAll();
+				return;
+			}
+		}
+		discard(session);
+	}
+
+	/**
+	 * Leases a session, executes a command and releases the session.
+	 *
+	 * @param command single line command
+	 * @param timeout maximum time in ms to wait for a session and for the command to end; 0 means indefinitely
+	 * @return exit code and output of the command
+	 * @throws IOException
+	 * @throws TimeOutException
+	 * @throws InterruptedException
+	 */
+	public CommandResult execute(String command, long timeout) throws IOException, TimeOutException, InterruptedException {
+		ShellSession session = lease(timeout);
+		try {
+			return session.execute(command, timeout);
+		}
+		finally {
+			release(session);
+		}
+	}
+
+	private void discard(ShellSession session) {
+		session.close();
+		boolean replenish;
+		synchronized (this) {
+			nrofRecycledSessions++;
+			nrofSessions--;
+			notifyAll();
+			replenish = !closed && nrofSessions < minNrofSessions;
+			if (replenish) {
+				nrofSessions++;
+			}
+		}
+		if (replenish) {
+			new Executable() {
+				protected Object execute() throws Throwable {
+					ShellSession session = createSession();
+					boolean poolClosed;
+					synchronized (ShellSessionPool.this) {
+						poolClosed = closed;
+						if (poolClosed) {
+							//closed while the session was starting
+							nrofSessions--;
+						}
+						else {
+							idleSessions.addLast(session);
+						}
+						ShellSessionPool.this.notifyAll();
+					}
+					if (poolClosed) {
+						session.close();
+					}
+					return session;
+				}
+			}.executeAsync();
+		}
+	}
+
+	/**
+	 * Closes idle sessions. Leased sessions are closed as soon as they are released.
+	 */
+	public void close() {
+		ShellSession[] sessions;
+		synchronized (this) {
+			closed = true;
+			sessions = idleSessions.toArray(new ShellSession[idleSessions.size()]);
+			idleSessions.clear();
+			nrofSessions -= sessions.length;
+			notifyAll();
+		}
+		for (int i = 0; i < sessions.length; i++) {
+			sessions[i].close();
+		}
+	}
+
+	/**
+	 * @return the number of open sessions, including leased ones
+	 */
+	public synchronized int getNrofSessions() {
+		return nrofSessions;
+	}
+
+	/**
+	 * @return the number of sessions available for lease
+	 */
+	public synchronized int getNrofIdleSessions() {
+		return idleSessions.size();
+	}
+
+	/**
+	 * @return the number of sessions closed because they were used up or no longer usable
+	 */
+	public synchronized long getNrofRecycledSessions() {
+		return nrofRecycledSessions;
+	}
+}
@@ -0,0 +1,345 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.execution;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs tasks after a delay, using a hashed timer wheel.
+ * <p/>
+ * The wheel is a circular array of buckets, each of which represents one tick.
+ * A task is placed in the bucket of the tick in which it expires, together with the number
+ * of full rotations that must pass first. A single thread advances the wheel
+ * each tick and runs the tasks that have expired.
+ * Scheduling and cancelling therefore take constant time, regardless of the number of waiting tasks.
+ * <p/>
+ * Tasks never run early, but may run up to one tick late.
+ * They are run by the timer thread and must return quickly;
+ * longer work should be handed over to an executor.
+ */
+public class TimerWheel {
+
+	public static final long DEFAULT_TICK_DURATION = 10;//ms
+	public static final int DEFAULT_NROF_BUCKETS = 512;
+	//maximum number of newly scheduled tasks placed in the wheel per tick
+	private static final int MAX_TRANSFERS_PER_TICK = 100000;
+
+	private static final int WAITING = 0;
+	private static final int CANCELLED = 1;
+	private static final int EXPIRED = 2;
+
+	private final String name;
+	private final long tickDuration;
+	private final Bucket[] buckets;
+	private final int mask;
+	private final Queue<Timeout> scheduledTimeouts = new ConcurrentLinkedQueue<Timeout>();
+	private final Queue<Timeout> cancelledTimeouts = new ConcurrentLinkedQueue<Timeout>();
+	private final AtomicLong nrofWaitingTimeouts = new AtomicLong();
+
+	private Thread timerThread;
+	private volatile long startTime;
+	private volatile boolean stopped;
+	//only used by the timer thread
+	private long tick;
+
+	/**
+	 * Constructs a timer wheel with a tick duration of 10 ms and 512 buckets.
+	 *
+	 * @param name name of the timer thread
+	 */
+	public TimerWheel(String name) {
+		this(name, DEFAULT_TICK_DURATION, DEFAULT_NROF_BUCKETS);
+	}
+
+	/**
+	 * @param name name of the timer thread
+	 * @param tickDuration duration of a tick in ms, which determines the accuracy of the timer
+	 * @param nrofBuckets number of buckets, rounded up to a power of 2
+	 */
+	public TimerWheel(String name, long tickDuration, int nrofBuckets) {
+		if (tickDuration <= 0) {
+			throw new IllegalArgumentException("tick duration must be greater than 0");
+		}
+		if (nrofBuckets <= 0 || nrofBuckets > (1 << 30)) {
+			throw new IllegalArgumentException("number of buckets must be between 1 and 2^30");
+		}
+		int size = 1;
+		while (size < nrofBuckets) {
+			size <<= 1;
+		}
+		this.name = name;
+		this.tickDuration = tickDuration * 1000000;
+		this.buckets = new Bucket[size];
+		for (int i = 0; i < size; i++) {
+			buckets[i] = new Bucket();
+		}
+		this.mask = size - 1;
+	}
+
+	/**
+	 * Handle to a scheduled task.
+	 */
+	public static final class Timeout {
+		private final TimerWheel wheel;
+		private final Runnable task;
+		//in ns, relative to the start time of the wheel
+		private final long deadline;
+		private final AtomicInteger state = new AtomicInteger(WAITING);
+		//only used by the timer thread
+		private long remainingRounds;
+		private Bucket bucket;
+		private Timeout previous;
+		private Timeout next;
+
+		private Timeout(TimerWheel wheel, Runnable task, long deadline) {
+			this.wheel = wheel;
+			this.task = task;
+			this.deadline = deadline;
+		}
+
+		/**
+		 * Prevents the task from running.
+		 *
+		 * @return false if the task has already run or was cancelled before
+		 */
+		public boolean cancel() {
+			if (!state.compareAndSet(WAITING, CANCELLED)) {
+				return false;
+			}
+			wheel.nrofWaitingTimeouts.decrementAndGet();
+			wheel.cancelledTimeouts.add(this);
+			return true;
+		}
+
+		/**
+		 * @return true if the task was cancelled before it ran
+		 */
+		public boolean isCancelled() {
+			return state.get() == CANCELLED;
+		}
+
+		/**
+		 * @return true if the task has run or is running
+		 */
+		public boolean isExpired() {
+			return state.get() == EXPIRED;
+		}
+
+		private void expire() {
+			if (state.compareAndSet(WAITING, EXPIRED)) {
+				wheel.nrofWaitingTimeouts.decrementAndGet();
+				try {
+					task.run();
+				}
+				catch (Throwable t) {
+					//a failing task must not stop the timer
+					t.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Doubly linked list of timeouts that expire in the same tick of a rotation.
+	 * Only accessed by the timer thread.
+	 */
+	private static final class Bucket {
+		private Timeout head;
+		private Timeout tail;
+
+		private void add(Timeout timeout) {
+			timeout.bucket = this;
+			if (head == null) {
+				head = tail = timeout;
+			}
+			else {
+				tail.next = timeout;
+				timeout.previous = tail;
+				tail = timeout;
+			}
+		}
+
+		private void remove(Timeout timeout) {
+			if (timeout.previous != null) {
+				timeout.previous.next = timeout.next;
+			}
+			else {
+				head = timeout.next;
+			}
+			if (timeout.next != null) {
+				timeout.next.previous = timeout.previous;
+			}
+			else {
+				tail = timeout.previous;
+			}
+			timeout.previous = null;
+			timeout.next = null;
+			timeout.bucket = null;
+		}
+
+		private void expireTimeouts() {
+			Timeout timeout = head;
+			while (timeout != null) {
+				Timeout next = timeout.next;
+				if (timeout.remainingRounds <= 0) {
+					remove(timeout);
+					timeout.expire();
+				}
+				else if (timeout.isCancelled()) {
+					remove(timeout);
+				}
+				else {
+					timeout.remainingRounds--;
+				}
+				timeout = next;
+			}
+		}
+	}
+
+	/**
+	 * Schedules a task to run once after a delay.
+	 * The timer thread is started by the first invocation.
+	 *
+	 * @param task
+	 * @param delay delay in ms
+	 * @return handle by which the task can be cancelled
+	 * @throws IllegalStateException if the timer wheel is stopped
+	 */
+	public Timeout schedule(Runnable task, long delay) {
+		if (task == null) {
+			throw new IllegalArgumentException("task may not be null");
+		}
+		start();
+		long deadline = System.nanoTime() - startTime + Math.max(delay, 0) * 1000000;
+		Timeout timeout = new Timeout(this, task, deadline);
+		nrofWaitingTimeouts.incrementAndGet();
+		scheduledTimeouts.add(timeout);
+		return timeout;
+	}
+
+	private synchronized void start() {
+		if (stopped) {
+			throw new IllegalStateException("timer wheel " + name + " is stopped");
+		}
+		if (timerThread == null) {
+			startTime = System.nanoTime();
+			timerThread = new Thread(new Runnable() {
+				public void run() {
+					advance();
+				}
+			}, name);
+			timerThread.setDaemon(true);
+			timerThread.start();
+		}
+	}
+
+	/**
+	 * Stops the timer thread. Tasks that are still waiting will not run.
+	 */
+	public synchronized void stop() {
+		stopped = true;
+		if (timerThread != null) {
+			timerThread.interrupt();
+		}
+	}
+
+	/**
+	 * @return true if the timer wheel is stopped
+	 */
+	public boolean isStopped() {
+		return stopped;
+	}
+
+	/**
+	 * @return the number of tasks that have neither run nor been cancelled
+	 */
+	public long getNrofWaitingTimeouts() {
+		return nrofWaitingTimeouts.get();
+	}
+
+	/**
+	 * @return the duration of a tick in ms
+	 */
+	public long getTickDuration() {
+		return tickDuration / 1000000;
+	}
+
+	private void advance() {
+		while (!stopped) {
+			if (!waitForNextTick()) {
+				break;
+			}
+			removeCancelledTimeouts();
+			transferScheduledTimeouts();
+			buckets[(int) (tick & mask)].expireTimeouts();
+			tick++;
+		}
+	}
+
+	/**
+	 * @return false if the wheel was stopped
+	 */
+	private boolean waitForNextTick() {
+		long deadline = tickDuration * (tick + 1);
+		while (true) {
+			long currentTime = System.nanoTime() - startTime;
+			long sleepTime = (deadline - currentTime + 999999) / 1000000;
+			if (sleepTime <= 0) {
+				return true;
+			}
+			try {
+				Thread.sleep(sleepTime);
+			}
+			catch (InterruptedException ie) {
+				if (stopped) {
+					return false;
+				}
+			}
+		}
+	}
+
+	private void removeCancelledTimeouts() {
+		Timeout timeout;
+		while ((timeout = cancelledTimeouts.poll()) != null) {
+			if (timeout.bucket != null) {
+				timeout.bucket.remove(timeout);
+			}
+		}
+	}
+
+	private void transferScheduledTimeouts() {
+		for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+			Timeout timeout = scheduledTimeouts.poll();
+			if (timeout == null) {
+				return;
+			}
+			if (timeout.isCancelled()) {
+				continue;
+			}
+			long expirationTick = timeout.deadline / tickDuration;
+			timeout.remainingRounds = (expirationTick - tick) / buckets.length;
+			//a timeout that should have expired already, is placed in the current bucket
+			buckets[(int) (Math.max(expirationTick, tick) & mask)].add(timeout);
+		}
+	}
+}
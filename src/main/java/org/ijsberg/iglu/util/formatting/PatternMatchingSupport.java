@@ -19,20 +19,64 @@
 
 package org.ijsberg.iglu.util.formatting;
 
-import org.ijsberg.iglu.util.misc.StringSupport;
+import org.ijsberg.iglu.util.collection.LRUCache;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
  * Helper class that validates formats of values.
+ * <p/>
+ * Compiled regular and wildcard expressions are kept in bounded caches that are safe for concurrent use.
  */
 public abstract class PatternMatchingSupport {
 
-	private static HashMap<String, Pattern> cache = new HashMap<String, Pattern>();
+	public static final int DEFAULT_CACHE_CAPACITY = 1024;
+
+	private static final LRUCache<String, Pattern> cache = new LRUCache<String, Pattern>(DEFAULT_CACHE_CAPACITY);
+	private static final LRUCache<String, WildcardMatcher> wildcardCache = new LRUCache<String, WildcardMatcher>(DEFAULT_CACHE_CAPACITY);
+
+	/**
+	 * @param regexp regular expression
+	 * @return the compiled expression, taken from cache if it has been compiled recently
+	 */
+	public static Pattern getPattern(String regexp) {
+		Pattern p = cache.get(regexp);
+		if(p == null) {
+			p = Pattern.compile(regexp);
+			cache.put(regexp, p);
+		}
+		return p;
+	}
+
+	/**
+	 * @param exp wildcard expression
+	 * @return the compiled expression, taken from cache if it has been compiled recently
+	 */
+	public static WildcardMatcher getWildcardMatcher(String exp) {
+		WildcardMatcher matcher = wildcardCache.get(exp);
+		if(matcher == null) {
+			matcher = new WildcardMatcher(exp);
+			wildcardCache.put(exp, matcher);
+		}
+		return matcher;
+	}
+
+	/**
+	 * @return cache of compiled regular expressions, which holds hit and miss statistics
+	 */
+	public static LRUCache<String, Pattern> getPatternCache() {
+		return cache;
+	}
+
+	/**
+	 * @return cache of compiled wildcard expressions, which holds hit and miss statistics
+	 */
+	public static LRUCache<String, WildcardMatcher> getWildcardMatcherCache() {
+		return wildcardCache;
+	}
 
 
 	/**
@@ -44,12 +88,7 @@ public abstract class PatternMatchingSupport {
 	 * @return true if val matches regular expression regexp
 	 */
 	public static boolean valueMatchesRegularExpression(String val, String regexp) {
-		Pattern p = cache.get(regexp);
-		if(p == null) {
-			p = Pattern.compile(regexp);
-			cache.put(regexp, p);
-		}
-		return valueMatchesRegularExpression(val, p);
+		return valueMatchesRegularExpression(val, getPattern(regexp));
 	}
 
 	/**
@@ -78,7 +117,7 @@ public abstract class PatternMatchingSupport {
 
 		List<int[]> retval = new ArrayList<int[]>();
 		
-		Pattern p = Pattern.compile(regexp);
+		Pattern p = getPattern(regexp);
 		Matcher matcher = p.matcher(val);
 
 		while (matcher.find()) {
@@ -97,19 +136,16 @@ public abstract class PatternMatchingSupport {
 	 * Matches DOS-type wildcardexpressions rather than regular expressions.
 	 * The function adds one little but handy feature of regular expressions:
 	 * The '|'-character is regarded as a boolean OR that separates multiple expressions.
+	 * Compiled expressions are cached; callers that match the same expression repeatedly
+	 * may also keep the WildcardMatcher themselves.
 	 *
 	 * @param val string value that may match the expression
 	 * @param exp expression that may contain wild cards
 	 * @return
+	 * @see WildcardMatcher
 	 */
 	public static boolean valueMatchesWildcardExpression(String val, String exp) {
-		//replace [\^$.|?*+() to make regexp do wildcard match
-		String expCopy = StringSupport.replaceAll(
-				exp,
-				new String[]{"[", 	"\\", 	"^", 	"$", ".",	"?", "*", "+", "(", ")"},
-				new String[]{"\\[", "\\\\", "\\^", "\\$", "\\.",".?", ".*", "\\+", "\\(", "\\)"});
-
-		return (valueMatchesRegularExpression(val, expCopy));
+		return getWildcardMatcher(exp).matches(val);
 	}
 	
 
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.formatting;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Matches values against a compiled wildcard expression.
+ * <p/>
+ * Expressions are interpreted as by PatternMatchingSupport.valueMatchesWildcardExpression:
+ * <ul>
+ * <li>'*' matches any sequence of characters</li>
+ * <li>'?' matches at most one character</li>
+ * <li>'|' separates alternative expressions</li>
+ * </ul>
+ * Other characters match themselves.
+ * <p/>
+ * Each alternative is compiled into a nondeterministic automaton of which all states are tracked at once
+ * in the bits of a long, so matching takes time proportional to the length of the value,
+ * does not backtrack and does not allocate memory.
+ * Alternatives of more than 63 characters are matched by an equivalent regular expression.
+ * A matcher is immutable and may be shared by threads.
+ *
+ * @see PatternMatchingSupport#valueMatchesWildcardExpression(String, String)
+ */
+public class WildcardMatcher {
+
+	private static final int MAX_NROF_STATES = 64;
+	private static final int ASCII_SIZE = 128;
+
+	private final String expression;
+	private final Alternative[] alternatives;
+
+	/**
+	 * Compiled form of an expression without '|'.
+	 * State i means that the first i characters of the expression have been matched.
+	 */
+	private static class Alternative {
+		private final long acceptMask;
+		//states that advance on any character ('?')
+		private final long anyMask;
+		//states that stay on any character ('*')
+		private final long starMask;
+		//states that may advance without consuming a character ('*' and '?')
+		private final long skipMask;
+		//states that advance on a particular character
+		private final long[] asciiMasks = new long[ASCII_SIZE];
+		private final char[] otherChars;
+		private final long[] otherMasks;
+		private final long initialStates;
+		private final Pattern pattern;
+
+		private Alternative(String expression) {
+			if (expression.length() >= MAX_NROF_STATES) {
+				pattern = Pattern.compile(toRegularExpression(expression), Pattern.DOTALL);
+				acceptMask = anyMask = starMask = skipMask = initialStates = 0;
+				otherChars = new char[0];
+				otherMasks = new long[0];
+				return;
+			}
+			pattern = null;
+			long any = 0;
+			long star = 0;
+			StringBuffer others = new StringBuffer();
+			List<Long> masks = new ArrayList<Long>();
+			for (int i = 0; i < expression.length(); i++) {
+				char c = expression.charAt(i);
+				long bit = 1L << i;
+				if (c == '*') {
+					star |= bit;
+				}
+				else if (c == '?') {
+					any |= bit;
+				}
+				else if (c < ASCII_SIZE) {
+					asciiMasks[c] |= bit;
+				}
+				else {
+					int index = others.indexOf(String.valueOf(c));
+					if (index < 0) {
+						others.append(c);
+						masks.add(bit);
+					}
+					else {
+						masks.set(index, masks.get(index) | bit);
+					}
+				}
+			}
+			anyMask = any;
+			starMask = star;
+			skipMask = any | star;
+			acceptMask = 1L << expression.length();
+			otherChars = others.toString().toCharArray();
+			otherMasks = new long[masks.size()];
+			for (int i = 0; i < otherMasks.length; i++) {
+				otherMasks[i] = masks.get(i);
+			}
+			initialStates = closure(1L);
+		}
+
+		/**
+		 * @return states plus the states that can be reached without consuming a character
+		 */
+		private long closure(long states) {
+			long reachable = states | ((states & skipMask) << 1);
+			while (reachable != states) {
+				states = reachable;
+				reachable = states | ((states & skipMask) << 1);
+			}
+			return states;
+		}
+
+		private long getMask(char c) {
+			if (c < ASCII_SIZE) {
+				return asciiMasks[c];
+			}
+			for (int i = 0; i < otherChars.length; i++) {
+				if (otherChars[i] == c) {
+					return otherMasks[i];
+				}
+			}
+			return 0;
+		}
+
+		private boolean matches(String value) {
+			if (pattern != null) {
+				return pattern.matcher(value).matches();
+			}
+			long states = initialStates;
+			for (int i = 0; i < value.length() && states != 0; i++) {
+				long advancing = states & (getMask(value.charAt(i)) | anyMask);
+				states = closure((advancing << 1) | (states & starMask));
+			}
+			return (states & acceptMask) != 0;
+		}
+	}
+
+	/**
+	 * @param expression wildcard expression
+	 */
+	public WildcardMatcher(String expression) {
+		if (expression == null) {
+			throw new IllegalArgumentException("expression may not be null");
+		}
+		this.expression = expression;
+		List<Alternative> compiled = new ArrayList<Alternative>();
+		int start = 0;
+		for (int i = 0; i <= expression.length(); i++) {
+			if (i == expression.length() || expression.charAt(i) == '|') {
+				compiled.add(new Alternative(expression.substring(start, i)));
+				start = i + 1;
+			}
+		}
+		alternatives = compiled.toArray(new Alternative[compiled.size()]);
+	}
+
+	private static String toRegularExpression(String expression) {
+		StringBuffer result = new StringBuffer();
+		int start = 0;
+		for (int i = 0; i < expression.length(); i++) {
+			char c = expression.charAt(i);
+			if (c == '*' || c == '?') {
+				if (i > start) {
+					result.append(Pattern.quote(expression.substring(start, i)));
+				}
+				result.append(c == '*' ? ".*" : ".?");
+				start = i + 1;
+			}
+		}
+		if (start < expression.length()) {
+			result.append(Pattern.quote(expression.substring(start)));
+		}
+		return result.toString();
+	}
+
+	/**
+	 * @param value
+	 * @return true if the value matches one of the alternatives of the expression entirely
+	 */
+	public boolean matches(String value) {
+		for (int i = 0; i < alternatives.length; i++) {
+			if (alternatives[i].matches(value)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the wildcard expression
+	 */
+	public String getExpression() {
+		return expression;
+	}
+
+	public String toString() {
+		return expression;
+	}
+}
@@ -0,0 +1,370 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.io;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Transmits messages to a number of Receivers asynchronously.
+ * <p/>
+ * Each receiver gets its own bounded lane. Transmitting a message only places it in the lanes;
+ * lanes are emptied by a pool of worker threads that is shared by all receivers.
+ * A slow receiver therefore does not delay the transmitter or other receivers,
+ * unless the slow consumer policy is BLOCK.
+ * <p/>
+ * If a lane is full, the slow consumer policy determines what happens:
+ * <ul>
+ * <li>DROP: the message is discarded for that receiver</li>
+ * <li>BLOCK: the transmitter waits until the lane has room</li>
+ * <li>DISCONNECT: the receiver is removed from the channel and its transmission is closed</li>
+ * </ul>
+ *
+ * @see BasicChannel
+ */
+public class AsynchronousChannel implements Channel, BatchTransmitter {
+
+	public static final int DROP = 0;
+	public static final int BLOCK = 1;
+	public static final int DISCONNECT = 2;
+
+	public static final int DEFAULT_LANE_CAPACITY = 1000;
+	public static final int DEFAULT_NROF_WORKERS = 2;
+	//maximum number of messages delivered before a worker moves to another lane
+	private static final int MAX_DELIVERIES_PER_RUN = 100;
+
+	private static final Lane[] NO_LANES = new Lane[0];
+
+	private volatile Lane[] lanes = NO_LANES;
+	private final Object lanesLock = new Object();
+	private final String name;
+	private final int laneCapacity;
+	private final int slowConsumerPolicy;
+	private final ExecutorService executor;
+	private final boolean ownsExecutor;
+	private volatile boolean closed;
+
+	/**
+	 * Constructs a channel with default lane capacity, a DROP policy
+	 * and its own pool of worker threads.
+	 *
+	 * @param name name
+	 */
+	public AsynchronousChannel(String name) {
+		this(name, DEFAULT_LANE_CAPACITY, DROP);
+	}
+
+	/**
+	 * Constructs a channel with its own pool of worker threads.
+	 *
+	 * @param name name
+	 * @param laneCapacity maximum number of messages waiting per receiver
+	 * @param slowConsumerPolicy DROP, BLOCK or DISCONNECT
+	 */
+	public AsynchronousChannel(String name, int laneCapacity, int slowConsumerPolicy) {
+		this(name, laneCapacity, slowConsumerPolicy, createExecutor(name, DEFAULT_NROF_WORKERS), true);
+	}
+
+	/**
+	 * Constructs a channel that delivers messages using an existing executor.
+	 * The executor is not shut down if the channel closes.
+	 *
+	 * @param name name
+	 * @param laneCapacity maximum number of messages waiting per receiver
+	 * @param slowConsumerPolicy DROP, BLOCK or DISCONNECT
+	 * @param executor executor that runs delivery to receivers
+	 */
+	public AsynchronousChannel(String name, int laneCapacity, int slowConsumerPolicy, ExecutorService executor) {
+		this(name, laneCapacity, slowConsumerPolicy, executor, false);
+	}
+
+	private AsynchronousChannel(String name, int laneCapacity, int slowConsumerPolicy, ExecutorService executor, boolean ownsExecutor) {
+		if (laneCapacity <= 0) {
+			throw new IllegalArgumentException("lane capacity must be greater than 0");
+		}
+		if (slowConsumerPolicy < DROP || slowConsumerPolicy > DISCONNECT) {
+			throw new IllegalArgumentException("unknown slow consumer policy " + slowConsumerPolicy);
+		}
+		if (executor == null) {
+			throw new IllegalArgumentException("executor may not be null");
+		}
+		this.name = name;
+		this.laneCapacity = laneCapacity;
+		this.slowConsumerPolicy = slowConsumerPolicy;
+		this.executor = executor;
+		this.ownsExecutor = ownsExecutor;
+	}
+
+	private static ExecutorService createExecutor(final String name, int nrofWorkers) {
+		return Executors.newFixedThreadPool(nrofWorkers, new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "AsynchronousChannel " + name);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Queues messages for a single receiver and delivers them in a worker thread.
+	 */
+	private class Lane implements Runnable {
+		private final Receiver receiver;
+		private final BoundedReceiverQueue queue;
+		//true while a worker is scheduled to empty this lane
+		private final AtomicBoolean scheduled = new AtomicBoolean();
+		private final AtomicBoolean transmissionClosed = new AtomicBoolean();
+		//only used by the worker that has scheduled the lane
+		private final ArrayList<Object> batch = new ArrayList<Object>(MAX_DELIVERIES_PER_RUN);
+
+		private Lane(Receiver receiver) {
+			this.receiver = receiver;
+			this.queue = new BoundedReceiverQueue(laneCapacity,
+					slowConsumerPolicy == DROP ? BoundedReceiverQueue.DROP_NEWEST :
+					slowConsumerPolicy == BLOCK ? BoundedReceiverQueue.BLOCK :
+					BoundedReceiverQueue.FAIL);
+		}
+
+		private void offer(Object message) {
+			try {
+				queue.onReceive(message);
+			}
+			catch (IllegalStateException full) {
+				disconnect(this);
+				return;
+			}
+			schedule();
+		}
+
+		private void offer(List<?> messages) {
+			try {
+				queue.onReceiveBatch(messages);
+			}
+			catch (IllegalStateException full) {
+				disconnect(this);
+				return;
+			}
+			schedule();
+		}
+
+		private void schedule() {
+			if (scheduled.compareAndSet(false, true) && !submit()) {
+				run();
+			}
+		}
+
+		/**
+		 * @return false if the executor no longer accepts tasks
+		 */
+		private boolean submit() {
+			try {
+				executor.execute(this);
+				return true;
+			}
+			catch (RejectedExecutionException ree) {
+				//executor is shut down: deliver in current thread
+				return false;
+			}
+		}
+
+		public void run() {
+			while (true) {
+				try {
+					if (queue.drainTo(batch, MAX_DELIVERIES_PER_RUN) > 0) {
+						BatchSupport.deliver(receiver, batch);
+					}
+				}
+				finally {
+					batch.clear();
+					scheduled.set(false);
+				}
+				if (queue.available() == 0 && !queue.isClosed()) {
+					return;
+				}
+				if (!scheduled.compareAndSet(false, true)) {
+					//another worker has taken over
+					return;
+				}
+				if (queue.available() == 0) {
+					try {
+						if (transmissionClosed.compareAndSet(false, true)) {
+							receiver.onTransmissionClose();
+						}
+					}
+					finally {
+						scheduled.set(false);
+					}
+					return;
+				}
+				if (submit()) {
+					//give other lanes a turn
+					return;
+				}
+			}
+		}
+
+		private void close() {
+			queue.close();
+			schedule();
+		}
+	}
+
+	/**
+	 * Places a message in the lanes of all receivers.
+	 *
+	 * @param message the object to dispatch
+	 */
+	public void transmit(Object message) {
+		if (!closed) {
+			Lane[] currentLanes = lanes;
+			for (int i = 0; i < currentLanes.length; i++) {
+				currentLanes[i].offer(message);
+			}
+		}
+	}
+
+	/**
+	 * Places a number of messages in the lanes of all receivers.
+	 *
+	 * @param messages the objects to dispatch
+	 */
+	public void transmitBatch(List<?> messages) {
+		if (!closed) {
+			Lane[] currentLanes = lanes;
+			for (int i = 0; i < currentLanes.length; i++) {
+				currentLanes[i].offer(messages);
+			}
+		}
+	}
+
+	/**
+	 * Adds a receiver so that it will receive transmitted messages.
+	 *
+	 * @param receiver
+	 * @return the registered receiver for convenience or null if the channel is closed
+	 */
+	public Receiver registerReceiver(Receiver receiver) {
+		synchronized (lanesLock) {
+			if (closed) {
+				return null;
+			}
+			Lane[] currentLanes = lanes;
+			Lane[] newLanes = new Lane[currentLanes.length + 1];
+			System.arraycopy(currentLanes, 0, newLanes, 0, currentLanes.length);
+			newLanes[currentLanes.length] = new Lane(receiver);
+			lanes = newLanes;
+			return receiver;
+		}
+	}
+
+	private void disconnect(Lane lane) {
+		synchronized (lanesLock) {
+			Lane[] currentLanes = lanes;
+			for (int i = 0; i < currentLanes.length; i++) {
+				if (currentLanes[i] == lane) {
+					Lane[] newLanes = new Lane[currentLanes.length - 1];
+					System.arraycopy(currentLanes, 0, newLanes, 0, i);
+					System.arraycopy(currentLanes, i + 1, newLanes, i, currentLanes.length - i - 1);
+					lanes = newLanes;
+					break;
+				}
+			}
+		}
+		lane.queue.clear();
+		lane.close();
+	}
+
+	/**
+	 * @return the number of listening receivers
+	 */
+	public int getNrofReceivers() {
+		return lanes.length;
+	}
+
+	/**
+	 * @return the number of messages discarded for receivers that are still connected
+	 */
+	public long getNrofDroppedMessages() {
+		long nrofDroppedMessages = 0;
+		Lane[] currentLanes = lanes;
+		for (int i = 0; i < currentLanes.length; i++) {
+			nrofDroppedMessages += currentLanes[i].queue.getNrofDroppedMessages();
+		}
+		return nrofDroppedMessages;
+	}
+
+	/**
+	 * Closes the channel. Messages already queued are still delivered,
+	 * after which the transmission of each receiver is closed.
+	 */
+	public void close() {
+		Lane[] closedLanes;
+		synchronized (lanesLock) {
+			closed = true;
+			closedLanes = lanes;
+			lanes = NO_LANES;
+		}
+		for (int i = 0; i < closedLanes.length; i++) {
+			closedLanes[i].close();
+		}
+		if (ownsExecutor) {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * @return true if the channel is closed
+	 */
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * @return the name of the channel
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the maximum number of messages waiting per receiver
+	 */
+	public int getLaneCapacity() {
+		return laneCapacity;
+	}
+
+	/**
+	 * @return a string representation of the channel including the number of messages waiting per receiver
+	 */
+	public String toString() {
+		StringBuffer result = new StringBuffer("AsynchronousChannel: " + name + "\n");
+		Lane[] currentLanes = lanes;
+		for (int i = 0; i < currentLanes.length; i++) {
+			result.append("- r: " + currentLanes[i].queue.available() + " queued\n");
+		}
+		return result.toString();
+	}
+}
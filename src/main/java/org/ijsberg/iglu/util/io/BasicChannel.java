@@ -19,20 +19,34 @@
 
 package org.ijsberg.iglu.util.io;
 
-import java.util.ArrayList;
-import java.util.Iterator;
+import org.ijsberg.iglu.util.misc.StripedCounter;
 
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Transmits messages to a number of Receivers.
+ * <p/>
+ * Receivers are kept in a copy-on-write array, so that concurrent transmitters
+ * can dispatch messages without locking the channel.
+ * Closed receiver queues are skipped during transmission and removed afterwards.
  */
-public class BasicChannel implements Channel, Transmitter {
-	private ArrayList<Receiver> receivers = new ArrayList<Receiver>();
+public class BasicChannel implements Channel, BatchTransmitter {
+	private static final Receiver[] NO_RECEIVERS = new Receiver[0];
+
+	//replaced, never modified, when receivers are added or removed
+	private volatile Receiver[] receivers = NO_RECEIVERS;
+	//guards modification of receivers
+	private final Object receiversLock = new Object();
+	private volatile boolean cleanupNeeded;
 	private int maxNrofReceivers;//unlimited
 	//echo input to transceivers
 	private boolean echo;
 	private String name;
-	private boolean closed;
+	private volatile boolean closed;
+	//statistics that can be updated by concurrent transmitters without contention
+	private final StripedCounter nrofTransmittedMessages = new StripedCounter();
+	private final StripedCounter nrofDeliveredMessages = new StripedCounter();
 
 
 	/**
@@ -99,25 +113,85 @@ public class BasicChannel implements Channel, Transmitter {
 	 * @param o the object to dispatch
 	 * @param t the transceiver sending the object
 	 */
-	public synchronized void transmit(Object o, ReceiverQueue t) {
+	public void transmit(Object o, ReceiverQueue t) {
 		if (!closed) {
-			ArrayList<Receiver> toBeRemoved = new ArrayList<Receiver>();
-			for (Receiver r : receivers) {
-				//cleanup
-				//TODO separate cleanup from transmit
-				//
-				if (r instanceof ReceiverQueue && ((ReceiverQueue)r).isClosed()) {
-					toBeRemoved.add(r);
+			Receiver[] currentReceivers = receivers;
+			int nrofDeliveries = 0;
+			for (int i = 0; i < currentReceivers.length; i++) {
+				Receiver r = currentReceivers[i];
+				if (isClosedQueue(r)) {
+					cleanupNeeded = true;
+				}
+				else if (echo || r != t) {
+					r.onReceive(o);
+					nrofDeliveries++;
+				}
+			}
+			nrofTransmittedMessages.increment();
+			nrofDeliveredMessages.add(nrofDeliveries);
+			if (cleanupNeeded) {
+				removeClosedReceivers();
+			}
+		}
+	}
+
+	/**
+	 * Dispatches a number of objects to all connected receivers.
+	 * Receivers that support batches receive them in one call.
+	 *
+	 * @param messages the objects to dispatch
+	 */
+	public void transmitBatch(List<?> messages) {
+		if (!closed) {
+			Receiver[] currentReceivers = receivers;
+			int nrofDeliveries = 0;
+			for (int i = 0; i < currentReceivers.length; i++) {
+				Receiver r = currentReceivers[i];
+				if (isClosedQueue(r)) {
+					cleanupNeeded = true;
 				}
 				else {
-					if (echo || r != t) {
-						r.onReceive(o);
-					}
+					BatchSupport.deliver(r, messages);
+					nrofDeliveries += messages.size();
+				}
+			}
+			nrofTransmittedMessages.add(messages.size());
+			nrofDeliveredMessages.add(nrofDeliveries);
+			if (cleanupNeeded) {
+				removeClosedReceivers();
+			}
+		}
+	}
+
+	private static boolean isClosedQueue(Receiver r) {
+		return r instanceof Queue && ((Queue) r).isClosed();
+	}
+
+	/**
+	 * Removes receivers that have been closed.
+	 * Is invoked lazily after a transmission encountered a closed receiver.
+	 */
+	public void removeClosedReceivers() {
+		synchronized (receiversLock) {
+			cleanupNeeded = false;
+			Receiver[] currentReceivers = receivers;
+			int nrofOpenReceivers = 0;
+			for (int i = 0; i < currentReceivers.length; i++) {
+				if (!isClosedQueue(currentReceivers[i])) {
+					nrofOpenReceivers++;
 				}
 			}
-			for (Receiver r : toBeRemoved) {
-				receivers.remove(r);
+			if (nrofOpenReceivers == currentReceivers.length) {
+				return;
+			}
+			Receiver[] openReceivers = new Receiver[nrofOpenReceivers];
+			int j = 0;
+			for (int i = 0; i < currentReceivers.length; i++) {
+				if (!isClosedQueue(currentReceivers[i])) {
+					openReceivers[j++] = currentReceivers[i];
+				}
 			}
+			receivers = openReceivers;
 		}
 	}
 
@@ -126,7 +200,7 @@ public class BasicChannel implements Channel, Transmitter {
 	 * @return the number of listening receivers
 	 */
 	public int getNrofReceivers() {
-		return receivers.size();
+		return receivers.length;
 	}
 
 	/**
@@ -146,14 +220,11 @@ public class BasicChannel implements Channel, Transmitter {
 	 * @return a receiver
 	 */
 	public ReceiverQueue createReceiver(int limit) {
-		synchronized (receivers) {
-			ReceiverQueue q = null;
-			if (!closed && (maxNrofReceivers == 0 || receivers.size() < maxNrofReceivers)) {
-				q = new ReceiverQueue(/*this, */limit);
-				receivers.add(q);
-			}
-			return q;
+		ReceiverQueue q = new ReceiverQueue(/*this, */limit);
+		if (registerReceiver(q) == null) {
+			return null;
 		}
+		return q;
 	}
 
 	/**
@@ -164,9 +235,13 @@ public class BasicChannel implements Channel, Transmitter {
 	 *         number of receivers is reached
 	 */
 	public Receiver registerReceiver(Receiver receiver) {
-		synchronized (receivers) {
-			if (!closed && (maxNrofReceivers == 0 || receivers.size() < maxNrofReceivers)) {
-				receivers.add(receiver);
+		synchronized (receiversLock) {
+			Receiver[] currentReceivers = receivers;
+			if (!closed && (maxNrofReceivers == 0 || currentReceivers.length < maxNrofReceivers)) {
+				Receiver[] newReceivers = new Receiver[currentReceivers.length + 1];
+				System.arraycopy(currentReceivers, 0, newReceivers, 0, currentReceivers.length);
+				newReceivers[currentReceivers.length] = receiver;
+				receivers = newReceivers;
 			}
 			else {
 				return null;
@@ -180,14 +255,14 @@ public class BasicChannel implements Channel, Transmitter {
 	 * Closes the channel and all receivers.
 	 */
 	public void close() {
-		synchronized (receivers) {
-			Iterator i = receivers.iterator();
-			while (i.hasNext()) {
-				ReceiverQueue r = (ReceiverQueue) i.next();
-				r.onTransmissionClose();
-			}
+		Receiver[] closedReceivers;
+		synchronized (receiversLock) {
 			closed = true;
-			receivers.clear();
+			closedReceivers = receivers;
+			receivers = NO_RECEIVERS;
+		}
+		for (int i = 0; i < closedReceivers.length; i++) {
+			closedReceivers[i].onTransmissionClose();
 		}
 	}
 
@@ -209,19 +284,56 @@ public class BasicChannel implements Channel, Transmitter {
 
 
 	/**
-	 * Returns a string representation of a channel object including all connected receivers and queue sizes.
+	 * @return number of messages transmitted via this channel
+	 */
+	public long getNrofTransmittedMessages() {
+		return nrofTransmittedMessages.get();
+	}
+
+	/**
+	 * @return number of messages handed to receivers, which is the number of
+	 *         transmitted messages times the number of receivers at the time
+	 */
+	public long getNrofDeliveredMessages() {
+		return nrofDeliveredMessages.get();
+	}
+
+	/**
+	 * @return statistics of connected receivers that keep them
+	 */
+	public List<QueueMetrics> getReceiverMetrics() {
+		Receiver[] currentReceivers = receivers;
+		List<QueueMetrics> result = new ArrayList<QueueMetrics>(currentReceivers.length);
+		for (int i = 0; i < currentReceivers.length; i++) {
+			if (currentReceivers[i] instanceof MeteredQueue) {
+				result.add(((MeteredQueue) currentReceivers[i]).getMetrics());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns a string representation of a channel object including all connected receivers, queue sizes
+	 * and statistics.
 	 *
 	 * @return a string representation of a channel object
 	 */
 	public String toString() {
-		StringBuffer result = new StringBuffer("Pipe: " + name + "\n");
-		synchronized (receivers) {
-			Iterator i = receivers.iterator();
-			while (i.hasNext()) {
-				ReceiverQueue r = (ReceiverQueue) i.next();
-				result.append("- r: " + r.getNrofQueuedMessages() + " queued\n");
+		StringBuffer result = new StringBuffer("Pipe: " + name + " (transmitted: " + nrofTransmittedMessages +
+				", delivered: " + nrofDeliveredMessages + ")\n");
+		Receiver[] currentReceivers = receivers;
+		for (int i = 0; i < currentReceivers.length; i++) {
+			Receiver r = currentReceivers[i];
+			if (r instanceof MeteredQueue) {
+				result.append("- r: " + ((Queue) r).available() + " queued, " + ((MeteredQueue) r).getMetrics() + "\n");
+			}
+			else if (r instanceof Queue) {
+				result.append("- r: " + ((Queue) r).available() + " queued\n");
+			}
+			else {
+				result.append("- r: " + r + "\n");
 			}
-			return result.toString();
 		}
+		return result.toString();
 	}
 }
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.io;
+
+import java.util.List;
+
+/**
+ * Helper methods that pass batches of messages to transmitters and receivers,
+ * regardless of whether they support batches themselves.
+ */
+public abstract class BatchSupport {
+
+	/**
+	 * Transmits messages as a batch if the transmitter supports it,
+	 * or one by one otherwise.
+	 *
+	 * @param transmitter
+	 * @param messages
+	 */
+	public static void transmit(Transmitter transmitter, List<?> messages) {
+		if (transmitter instanceof BatchTransmitter) {
+			((BatchTransmitter) transmitter).transmitBatch(messages);
+		}
+		else {
+			for (int i = 0; i < messages.size(); i++) {
+				transmitter.transmit(messages.get(i));
+			}
+		}
+	}
+
+	/**
+	 * Delivers messages as a batch if the receiver supports it,
+	 * or one by one otherwise.
+	 *
+	 * @param receiver
+	 * @param messages
+	 */
+	public static void deliver(Receiver receiver, List<?> messages) {
+		if (receiver instanceof BatchReceiver) {
+			((BatchReceiver) receiver).onReceiveBatch(messages);
+		}
+		else {
+			for (int i = 0; i < messages.size(); i++) {
+				receiver.onReceive(messages.get(i));
+			}
+		}
+	}
+}
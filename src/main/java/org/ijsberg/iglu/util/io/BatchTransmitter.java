@@ -0,0 +1,37 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.io;
+
+import java.util.List;
+
+/**
+ * Transmitter that is able to transmit a number of messages in one call.
+ *
+ * @see BatchSupport#transmit(Transmitter, List)
+ */
+public interface BatchTransmitter extends Transmitter {
+	/**
+	 * Transmits messages in the order of the list.
+	 * The list may be reused by the caller after this method returns.
+	 *
+	 * @param messages
+	 */
+	void transmitBatch(List<?> messages);
+}
@@ -0,0 +1,330 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.io;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A message queue with a fixed capacity, backed by a ring buffer.
+ * <p/>
+ * Unlike ReceiverQueue, the behaviour in case the queue is full can be selected:
+ * <ul>
+ * <li>BLOCK: the transmitting thread waits until space is available or a timeout occurs</li>
+ * <li>DROP_NEWEST: the incoming message is discarded</li>
+ * <li>DROP_OLDEST: the first message in the queue is discarded</li>
+ * <li>FAIL: an IllegalStateException is thrown to the transmitter</li>
+ * </ul>
+ * Discarded messages are counted.
+ * Consumers may wait for messages by invoking take() instead of polling read().
+ *
+ * @see ReceiverQueue
+ */
+public class BoundedReceiverQueue implements BatchReceiver, WaitableQueue, MeteredQueue {
+
+	public static final int BLOCK = 0;
+	public static final int DROP_NEWEST = 1;
+	public static final int DROP_OLDEST = 2;
+	public static final int FAIL = 3;
+
+	public static final long DEFAULT_BLOCK_TIMEOUT = 0;//wait indefinitely
+
+	private final MessageBuffer buffer;
+	private final int overflowPolicy;
+	private final long blockTimeout;
+	private volatile boolean closed;
+	private final QueueMetrics metrics = new QueueMetrics();
+
+	/**
+	 * Constructs a queue that blocks transmitters if the capacity is exceeded.
+	 *
+	 * @param capacity maximum queue size
+	 */
+	public BoundedReceiverQueue(int capacity) {
+		this(capacity, BLOCK, DEFAULT_BLOCK_TIMEOUT);
+	}
+
+	/**
+	 * @param capacity maximum queue size
+	 * @param overflowPolicy BLOCK, DROP_NEWEST, DROP_OLDEST or FAIL
+	 */
+	public BoundedReceiverQueue(int capacity, int overflowPolicy) {
+		this(capacity, overflowPolicy, DEFAULT_BLOCK_TIMEOUT);
+	}
+
+	/**
+	 * @param capacity maximum queue size
+	 * @param overflowPolicy BLOCK, DROP_NEWEST, DROP_OLDEST or FAIL
+	 * @param blockTimeout maximum time in ms a transmitter is blocked, after which the message is discarded;
+	 *                     0 means indefinitely
+	 */
+	public BoundedReceiverQueue(int capacity, int overflowPolicy, long blockTimeout) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity must be greater than 0");
+		}
+		if (overflowPolicy < BLOCK || overflowPolicy > FAIL) {
+			throw new IllegalArgumentException("unknown overflow policy " + overflowPolicy);
+		}
+		if (blockTimeout < 0) {
+			throw new IllegalArgumentException("block timeout may not be negative");
+		}
+		this.buffer = new MessageBuffer(capacity);
+		this.overflowPolicy = overflowPolicy;
+		this.blockTimeout = blockTimeout;
+	}
+
+	/**
+	 * Receives an object from a channel.
+	 * If the queue is full, the overflow policy is applied.
+	 *
+	 * @param object
+	 * @throws IllegalStateException if the queue is full and the overflow policy is FAIL
+	 */
+	public void onReceive(Object object) {
+		if (closed || object == null) {
+			return;
+		}
+		synchronized (buffer) {
+			if (buffer.isFull()) {
+				switch (overflowPolicy) {
+					case BLOCK:
+						if (!awaitSpace()) {
+							metrics.onDrop();
+							return;
+						}
+						break;
+					case DROP_NEWEST:
+						metrics.onDrop();
+						return;
+					case DROP_OLDEST:
+						buffer.removeFirst();
+						metrics.onDrop();
+						break;
+					default:
+						metrics.onDrop();
+						throw new IllegalStateException("queue is full (" + buffer.capacity() + " messages)");
+				}
+			}
+			buffer.addLast(object, metrics.getTime());
+			metrics.onEnqueue(buffer.size());
+			buffer.notifyAll();
+		}
+	}
+
+	/**
+	 * Receives a number of objects from a channel.
+	 * The overflow policy is applied to each object that does not fit.
+	 *
+	 * @param messages
+	 * @throws IllegalStateException if the queue is full and the overflow policy is FAIL
+	 */
+	public void onReceiveBatch(List<?> messages) {
+		synchronized (buffer) {
+			for (int i = 0; i < messages.size(); i++) {
+				onReceive(messages.get(i));
+			}
+		}
+	}
+
+	/**
+	 * Waits until space is available, the queue is closed or the block timeout expires.
+	 * Must be invoked while holding the buffer lock.
+	 *
+	 * @return true if space became available
+	 */
+	private boolean awaitSpace() {
+		long deadline = blockTimeout > 0 ? System.currentTimeMillis() + blockTimeout : 0;
+		try {
+			while (buffer.isFull() && !closed) {
+				if (deadline == 0) {
+					buffer.wait();
+				}
+				else {
+					long remaining = deadline - System.currentTimeMillis();
+					if (remaining <= 0) {
+						return false;
+					}
+					buffer.wait(remaining);
+				}
+			}
+		}
+		catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		return !closed;
+	}
+
+	private Object dequeue(long now) {
+		Object object = buffer.removeFirst();
+		metrics.onDequeue(buffer.getLastEnqueueTime(), now);
+		return object;
+	}
+
+	/**
+	 * Retrieves and removes the first object from the queue.
+	 *
+	 * @return the first object from the queue or null if the queue is empty
+	 */
+	public Object read() {
+		synchronized (buffer) {
+			if (buffer.isEmpty()) {
+				return null;
+			}
+			Object object = dequeue(metrics.getTime());
+			buffer.notifyAll();
+			return object;
+		}
+	}
+
+	/**
+	 * Retrieves and removes the first object from the queue,
+	 * waiting until an object arrives if the queue is empty.
+	 *
+	 * @param timeout maximum time to wait in ms; 0 means indefinitely
+	 * @return the first object from the queue or null if the timeout expired
+	 *         or the queue was closed while empty
+	 * @throws InterruptedException
+	 */
+	public Object take(long timeout) throws InterruptedException {
+		long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : 0;
+		synchronized (buffer) {
+			while (buffer.isEmpty()) {
+				if (closed) {
+					return null;
+				}
+				if (deadline == 0) {
+					buffer.wait();
+				}
+				else {
+					long remaining = deadline - System.currentTimeMillis();
+					if (remaining <= 0) {
+						return null;
+					}
+					buffer.wait(remaining);
+				}
+			}
+			Object object = dequeue(metrics.getTime());
+			buffer.notifyAll();
+			return object;
+		}
+	}
+
+	/**
+	 * Removes at most maxNrofMessages objects from the queue and adds them to a collection.
+	 *
+	 * @param collection
+	 * @param maxNrofMessages
+	 * @return the number of objects transferred
+	 */
+	public int drainTo(Collection<Object> collection, int maxNrofMessages) {
+		synchronized (buffer) {
+			int nrofMessages = 0;
+			long now = buffer.isEmpty() ? 0 : metrics.getTime();
+			while (!buffer.isEmpty() && nrofMessages < maxNrofMessages) {
+				collection.add(dequeue(now));
+				nrofMessages++;
+			}
+			if (nrofMessages > 0) {
+				buffer.notifyAll();
+			}
+			return nrofMessages;
+		}
+	}
+
+	/**
+	 * @return true if there are more objects waiting on the queue.
+	 */
+	public boolean hasNext() {
+		return available() > 0;
+	}
+
+	/**
+	 * Closes the receiver (for incoming messages) but does <em>not</em> clear the queue.
+	 * Blocked transmitters and waiting consumers are released.
+	 */
+	public void close() {
+		synchronized (buffer) {
+			closed = true;
+			buffer.notifyAll();
+		}
+	}
+
+	/**
+	 * Queue is closed when transmission closes.
+	 */
+	public void onTransmissionClose() {
+		close();
+	}
+
+	/**
+	 * @return true if the receiver is closed
+	 */
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * Clears the queue.
+	 */
+	public void clear() {
+		synchronized (buffer) {
+			buffer.clear();
+			buffer.notifyAll();
+		}
+	}
+
+	/**
+	 * @return queue size
+	 */
+	public int available() {
+		synchronized (buffer) {
+			return buffer.size();
+		}
+	}
+
+	/**
+	 * @return maximum number of queued messages
+	 */
+	public int getCapacity() {
+		return buffer.capacity();
+	}
+
+	/**
+	 * @return the overflow policy
+	 */
+	public int getOverflowPolicy() {
+		return overflowPolicy;
+	}
+
+	/**
+	 * @return the number of messages discarded because the queue was full
+	 */
+	public long getNrofDroppedMessages() {
+		return metrics.getNrofDroppedMessages();
+	}
+
+	/**
+	 * @return statistics of this queue
+	 */
+	public QueueMetrics getMetrics() {
+		return metrics;
+	}
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.io;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Message containing a number of bytes in a reusable array that is borrowed from a ByteSlicePool.
+ * <p/>
+ * A slice is only valid while it is being transmitted.
+ * Receivers that keep a slice beyond onReceive (for instance by queueing it)
+ * must invoke retain() and must invoke release() once they are done with it.
+ * A slice that is no longer retained returns to its pool and will be overwritten.
+ *
+ * @see ByteSlicePool
+ */
+public class ByteSlice {
+	private final byte[] bytes;
+	private int length;
+	private final ByteSlicePool pool;
+	private final AtomicInteger referenceCount = new AtomicInteger();
+
+	ByteSlice(int capacity, ByteSlicePool pool) {
+		this.bytes = new byte[capacity];
+		this.pool = pool;
+	}
+
+	/**
+	 * Prepares slice for use by a new owner.
+	 */
+	void acquire() {
+		length = 0;
+		referenceCount.set(1);
+	}
+
+	/**
+	 * @param length number of valid bytes
+	 */
+	void setLength(int length) {
+		if (length < 0 || length > bytes.length) {
+			throw new IllegalArgumentException("length " + length + " out of bounds");
+		}
+		this.length = length;
+	}
+
+	/**
+	 * @return the underlying array, of which the first getLength() bytes are valid
+	 */
+	public byte[] getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * @return number of valid bytes
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * Prevents the slice from returning to its pool until release() is invoked.
+	 *
+	 * @return this slice for convenience
+	 */
+	public ByteSlice retain() {
+		if (referenceCount.getAndIncrement() <= 0) {
+			referenceCount.decrementAndGet();
+			throw new IllegalStateException("slice has already been released");
+		}
+		return this;
+	}
+
+	/**
+	 * Gives up a reference to the slice. The slice returns to its pool
+	 * once all references are given up.
+	 */
+	public void release() {
+		int count = referenceCount.decrementAndGet();
+		if (count == 0) {
+			pool.release(this);
+		}
+		else if (count < 0) {
+			referenceCount.incrementAndGet();
+			throw new IllegalStateException("slice has already been released");
+		}
+	}
+
+	/**
+	 * @return a copy of the valid bytes
+	 */
+	public byte[] toByteArray() {
+		byte[] result = new byte[length];
+		System.arraycopy(bytes, 0, result, 0, length);
+		return result;
+	}
+
+	/**
+	 * @return the valid bytes decoded with the default character set
+	 */
+	public String toString() {
+		return new String(bytes, 0, length);
+	}
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.io;
+
+/**
+ * Keeps byte slices of a fixed capacity for reuse, so that forwarding streams
+ * does not allocate a new array for every read.
+ *
+ * @see ByteSlice
+ * @see Transponder#Transponder(java.io.InputStream, Transmitter, ByteSlicePool)
+ */
+public class ByteSlicePool {
+
+	public static final int DEFAULT_SLICE_CAPACITY = 8192;
+	public static final int DEFAULT_MAX_POOLED_SLICES = 16;
+
+	private final int sliceCapacity;
+	private final ByteSlice[] freeSlices;
+	private int nrofFreeSlices;
+	private long nrofCreatedSlices;
+
+	/**
+	 * Creates a pool of 8 kB slices.
+	 */
+	public ByteSlicePool() {
+		this(DEFAULT_SLICE_CAPACITY, DEFAULT_MAX_POOLED_SLICES);
+	}
+
+	/**
+	 * @param sliceCapacity number of bytes a slice can hold
+	 * @param maxPooledSlices maximum number of released slices kept for reuse
+	 */
+	public ByteSlicePool(int sliceCapacity, int maxPooledSlices) {
+		if (sliceCapacity <= 0) {
+			throw new IllegalArgumentException("slice capacity must be greater than 0");
+		}
+		if (maxPooledSlices < 0) {
+			throw new IllegalArgumentException("maximum number of pooled slices may not be negative");
+		}
+		this.sliceCapacity = sliceCapacity;
+		this.freeSlices = new ByteSlice[maxPooledSlices];
+	}
+
+	/**
+	 * Obtains a slice from the pool or creates one if the pool is empty.
+	 * The caller owns the slice and must release it.
+	 *
+	 * @return an empty slice
+	 */
+	public ByteSlice acquire() {
+		ByteSlice slice = null;
+		synchronized (freeSlices) {
+			if (nrofFreeSlices > 0) {
+				slice = freeSlices[--nrofFreeSlices];
+				freeSlices[nrofFreeSlices] = null;
+			}
+			else {
+				nrofCreatedSlices++;
+			}
+		}
+		if (slice == null) {
+			slice = new ByteSlice(sliceCapacity, this);
+		}
+		slice.acquire();
+		return slice;
+	}
+
+	/**
+	 * Is invoked by a slice that is no longer referenced.
+	 *
+	 * @param slice
+	 */
+	void release(ByteSlice slice) {
+		synchronized (freeSlices) {
+			if (nrofFreeSlices < freeSlices.length) {
+				freeSlices[nrofFreeSlices++] = slice;
+			}
+		}
+	}
+
+	/**
+	 * @return number of bytes a slice can hold
+	 */
+	public int getSliceCapacity() {
+		return sliceCapacity;
+	}
+
+	/**
+	 * @return number of slices available for reuse
+	 */
+	public int getNrofFreeSlices() {
+		synchronized (freeSlices) {
+			return nrofFreeSlices;
+		}
+	}
+
+	/**
+	 * @return number of slices allocated since the pool was created
+	 */
+	public long getNrofCreatedSlices() {
+		synchronized (freeSlices) {
+			return nrofCreatedSlices;
+		}
+	}
+}
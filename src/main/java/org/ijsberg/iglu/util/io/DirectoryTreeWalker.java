@@ -0,0 +1,425 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.io;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Walks a directory tree and passes files that match a rule set to a FileVisitor as soon as they are found.
+ * <p/>
+ * Unlike FileSupport.getFilesInDirectoryTree, the walker does not build a list of all files first:
+ * <ul>
+ * <li>subdirectories are listed concurrently by an executor</li>
+ * <li>matching files are passed to the visitor immediately</li>
+ * <li>walking stops as soon as the visitor returns false or stop() is invoked</li>
+ * </ul>
+ * Files can also be consumed through an iterator, which holds a limited number of files
+ * that have been found but not yet consumed.
+ * The order in which files are found is not defined.
+ * <p/>
+ * A walker walks the tree once. Directories are listed by a shared pool of daemon threads,
+ * unless another executor is set.
+ * Walks must not be awaited by threads of the executor that lists the directories.
+ *
+ * @see FileSupport#getFilesInDirectoryTree(String, FileFilterRuleSet)
+ */
+public class DirectoryTreeWalker {
+
+	public static final int DEFAULT_NROF_THREADS = 8;
+	public static final int DEFAULT_ITERATOR_CAPACITY = 1000;
+	//time in ms a full iterator is checked for being closed
+	private static final long ITERATOR_POLL_INTERVAL = 10;
+
+	private static ExecutorService defaultExecutor;
+
+	private final File root;
+	private final FileFilterRuleSet ruleSet;
+	private boolean includeFiles = true;
+	private boolean includeDirectories;
+	private Executor executor;
+	private FileVisitor directoryVisitor;
+
+	private final Object lock = new Object();
+	private FileVisitor visitor;
+	private boolean started;
+	private boolean completed;
+	private volatile boolean stopped;
+	private volatile Throwable exception;
+	//directories that have not been listed yet
+	private final AtomicInteger nrofPendingDirectories = new AtomicInteger(1);
+	private final AtomicInteger nrofListedDirectories = new AtomicInteger();
+
+	/**
+	 * @param root root of the directory tree
+	 * @param ruleSet rule set defining which files to visit
+	 */
+	public DirectoryTreeWalker(File root, FileFilterRuleSet ruleSet) {
+		if (root == null || ruleSet == null) {
+			throw new IllegalArgumentException("root and rule set must be specified");
+		}
+		this.root = root;
+		this.ruleSet = ruleSet;
+	}
+
+	/**
+	 * @param path root of the directory tree
+	 * @param includeMask exact filename, or mask containing wildcards
+	 */
+	public DirectoryTreeWalker(String path, String includeMask) {
+		this(new File(path), new FileFilterRuleSet(path).setIncludeFilesWithNameMask(includeMask));
+	}
+
+	/**
+	 * @return the pool of daemon threads that lists directories if no executor is set
+	 */
+	public static synchronized ExecutorService getDefaultExecutor() {
+		if (defaultExecutor == null) {
+			defaultExecutor = Executors.newFixedThreadPool(DEFAULT_NROF_THREADS, new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "DirectoryTreeWalker");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return defaultExecutor;
+	}
+
+	/**
+	 * @param includeFiles true (default) if matching files are to be visited
+	 * @return this walker for convenience
+	 */
+	public DirectoryTreeWalker setIncludeFiles(boolean includeFiles) {
+		this.includeFiles = includeFiles;
+		return this;
+	}
+
+	/**
+	 * @param includeDirectories true if matching directories are to be visited; false by default
+	 * @return this walker for convenience
+	 */
+	public DirectoryTreeWalker setIncludeDirectories(boolean includeDirectories) {
+		this.includeDirectories = includeDirectories;
+		return this;
+	}
+
+	/**
+	 * Sets a visitor that receives every directory just before it is listed, regardless of the rules.
+	 * It may for instance record modification times.
+	 *
+	 * @param directoryVisitor
+	 * @return this walker for convenience
+	 */
+	public DirectoryTreeWalker setDirectoryVisitor(FileVisitor directoryVisitor) {
+		this.directoryVisitor = directoryVisitor;
+		return this;
+	}
+
+	/**
+	 * @param executor executor that lists directories
+	 * @return this walker for convenience
+	 */
+	public DirectoryTreeWalker setExecutor(Executor executor) {
+		this.executor = executor;
+		return this;
+	}
+
+	/**
+	 * Starts walking the tree without waiting for it to complete.
+	 *
+	 * @param visitor
+	 */
+	public void start(FileVisitor visitor) {
+		if (visitor == null) {
+			throw new IllegalArgumentException("visitor may not be null");
+		}
+		synchronized (lock) {
+			if (started) {
+				throw new IllegalStateException("use walker once per walk");
+			}
+			started = true;
+			this.visitor = visitor;
+		}
+		submit(root);
+	}
+
+	/**
+	 * Walks the tree and waits until it is completed or stopped.
+	 *
+	 * @param visitor
+	 * @return true if the complete tree was walked, false if walking was stopped
+	 * @throws InterruptedException if the current thread is interrupted while waiting; walking is stopped
+	 * @throws RuntimeException that was thrown by the visitor
+	 */
+	public boolean walk(FileVisitor visitor) throws InterruptedException {
+		start(visitor);
+		try {
+			awaitCompletion(0);
+		}
+		catch (InterruptedException e) {
+			stop();
+			throw e;
+		}
+		Throwable cause = exception;
+		if (cause instanceof RuntimeException) {
+			throw (RuntimeException) cause;
+		}
+		if (cause instanceof Error) {
+			throw (Error) cause;
+		}
+		return !stopped;
+	}
+
+	/**
+	 * Starts walking the tree and returns an iterator over the files found.
+	 * Walking is slowed down if the iterator holds DEFAULT_ITERATOR_CAPACITY files.
+	 *
+	 * @return an iterator that should be closed if it is abandoned before the last file
+	 */
+	public FileIterator iterator() {
+		return iterator(DEFAULT_ITERATOR_CAPACITY);
+	}
+
+	/**
+	 * Starts walking the tree and returns an iterator over the files found.
+	 *
+	 * @param capacity maximum number of files found but not yet consumed
+	 * @return an iterator that should be closed if it is abandoned before the last file
+	 */
+	public FileIterator iterator(int capacity) {
+		FileIterator iterator = new FileIterator(capacity);
+		start(iterator);
+		return iterator;
+	}
+
+	/**
+	 * Iterates over files found by the walker.
+	 */
+	public class FileIterator implements Iterator<File>, FileVisitor {
+		private final LinkedBlockingQueue<File> queue;
+		private File next;
+
+		private FileIterator(int capacity) {
+			if (capacity <= 0) {
+				throw new IllegalArgumentException("capacity must be greater than 0");
+			}
+			queue = new LinkedBlockingQueue<File>(capacity);
+		}
+
+		public boolean visit(File file) {
+			try {
+				while (!stopped) {
+					if (queue.offer(file, ITERATOR_POLL_INTERVAL, TimeUnit.MILLISECONDS)) {
+						return true;
+					}
+				}
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return false;
+		}
+
+		/**
+		 * Waits until a file is found or the walk has completed.
+		 *
+		 * @return true if another file was found
+		 * @throws IllegalStateException if the visitor failed or the current thread was interrupted
+		 */
+		public boolean hasNext() {
+			try {
+				while (next == null) {
+					//the walk is completed after the last file has been queued
+					boolean lastFileQueued = isCompleted();
+					next = queue.poll(ITERATOR_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+					if (next == null && (lastFileQueued || stopped)) {
+						if (exception != null) {
+							throw new IllegalStateException("walking directory tree " + root + " failed", exception);
+						}
+						return false;
+					}
+				}
+				return true;
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				close();
+				throw new IllegalStateException("interrupted while walking directory tree " + root);
+			}
+		}
+
+		public File next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			File file = next;
+			next = null;
+			return file;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		/**
+		 * Stops walking and discards files that have not been consumed.
+		 */
+		public void close() {
+			stop();
+			queue.clear();
+		}
+	}
+
+	private void submit(final File directory) {
+		Runnable task = new Runnable() {
+			public void run() {
+				try {
+					if (!stopped) {
+						list(directory);
+					}
+				}
+				catch (Throwable t) {
+					if (exception == null) {
+						exception = t;
+					}
+					stop();
+				}
+				finally {
+					if (nrofPendingDirectories.decrementAndGet() == 0) {
+						complete();
+					}
+				}
+			}
+		};
+		try {
+			(executor != null ? executor : getDefaultExecutor()).execute(task);
+		}
+		catch (RejectedExecutionException ree) {
+			//executor is shut down: list in current thread
+			task.run();
+		}
+	}
+
+	private void list(File directory) {
+		if (directoryVisitor != null && directory.isDirectory() && !directoryVisitor.visit(directory)) {
+			stop();
+			return;
+		}
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return;
+		}
+		nrofListedDirectories.incrementAndGet();
+		for (int i = 0; i < files.length && !stopped; i++) {
+			if (files[i].isDirectory()) {
+				if (includeDirectories && ruleSet.fileMatchesRules(files[i]) && !visitor.visit(files[i])) {
+					stop();
+					return;
+				}
+				nrofPendingDirectories.incrementAndGet();
+				submit(files[i]);
+			}
+			else if (includeFiles && ruleSet.fileMatchesRules(files[i]) && !visitor.visit(files[i])) {
+				stop();
+				return;
+			}
+		}
+	}
+
+	private void complete() {
+		synchronized (lock) {
+			completed = true;
+			lock.notifyAll();
+		}
+	}
+
+	/**
+	 * Stops walking. Files that are being visited are not interrupted.
+	 */
+	public void stop() {
+		stopped = true;
+	}
+
+	/**
+	 * @return true if walking was stopped before the complete tree was walked
+	 */
+	public boolean isStopped() {
+		return stopped;
+	}
+
+	/**
+	 * @return true if every directory has been listed or walking has stopped and no more files will be visited
+	 */
+	public boolean isCompleted() {
+		synchronized (lock) {
+			return completed;
+		}
+	}
+
+	/**
+	 * Waits until walking has completed or has stopped and no more files will be visited.
+	 *
+	 * @param timeout maximum time to wait in ms; 0 means indefinitely
+	 * @return true if walking has completed
+	 * @throws InterruptedException
+	 */
+	public boolean awaitCompletion(long timeout) throws InterruptedException {
+		long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : 0;
+		synchronized (lock) {
+			while (started && !completed) {
+				if (deadline == 0) {
+					lock.wait();
+				}
+				else {
+					long remaining = deadline - System.currentTimeMillis();
+					if (remaining <= 0) {
+						return false;
+					}
+					lock.wait(remaining);
+				}
+			}
+			return completed;
+		}
+	}
+
+	/**
+	 * @return exception thrown by the visitor or null
+	 */
+	public Throwable getException() {
+		return exception;
+	}
+
+	/**
+	 * @return number of directories that have been listed
+	 */
+	public int getNrofListedDirectories() {
+		return nrofListedDirectories.get();
+	}
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.io;
+
+/**
+ * Filter that may turn an object into any number of objects, including none.
+ *
+ * @see FilterChain
+ */
+public interface ExpandingFilter<T> {
+	/**
+	 * Passes the result of filtering to output by invoking output.onReceive
+	 * zero or more times.
+	 *
+	 * @param input
+	 * @param output receives filtered objects
+	 */
+	void filter(T input, Receiver output);
+}
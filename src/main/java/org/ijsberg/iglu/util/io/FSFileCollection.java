@@ -23,14 +23,35 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
 /**
+ * Collects files in a directory tree that match a rule set.
+ * <p/>
+ * By default, the complete tree is scanned each time the collection is refreshed.
+ * In incremental mode, a refresh only lists directories of which the modification time has changed
+ * and compares modification time and size of collected files with the previous refresh.
+ * Since the modification time of a directory changes only if entries are added or removed,
+ * this detects new, removed and changed files without listing the complete tree.
+ * A full rescan is performed:
+ * <ul>
+ * <li>at the first refresh or if the base directory did not exist</li>
+ * <li>if the rule set is replaced</li>
+ * <li>every fullRescanInterval refreshes, if set</li>
+ * </ul>
+ * A full rescan is needed to pick up files that start to match a rule set that selects files by contents,
+ * if they reside in directories that have not changed.
+ * <p/>
+ * Registered listeners are notified of added, removed and changed files after each refresh.
  */
 public class FSFileCollection implements FileCollection {
 
+	//file systems may record modification times in seconds
+	private static final long MODIFICATION_TIME_GRANULARITY = 2000;
+
     private String baseDir;
 //    private String absSourceRoot;
     private Charset charSet;
@@ -39,6 +60,30 @@ public class FSFileCollection implements FileCollection {
     private Map<String, File> filesByRelativePathAndName = new TreeMap<String, File>();
     private FileFilterRuleSet includedFilesRuleSet;
 
+	private boolean incrementalRefresh;
+	private int fullRescanInterval;
+	private int nrofRefreshesSinceFullRescan;
+	private int nrofListedDirectories;
+	//modification time and size of collected files at last refresh
+	private Map<String, FileState> fileStates = new HashMap<String, FileState>();
+	//modification time of every directory in the tree at last refresh
+	private Map<File, Long> directoryModificationTimes = new HashMap<File, Long>();
+	private final List<FileCollectionListener> listeners = new ArrayList<FileCollectionListener>();
+
+	private static class FileState {
+		private final long lastModified;
+		private final long length;
+
+		private FileState(File file) {
+			this.lastModified = file.lastModified();
+			this.length = file.length();
+		}
+
+		private boolean isChanged(FileState state) {
+			return lastModified != state.lastModified || length != state.length;
+		}
+	}
+
     public FSFileCollection(String baseDir, FileFilterRuleSet fileFilterRuleSet) {
 
         this.baseDir = FileSupport.convertToUnixStylePath(baseDir);
@@ -53,7 +98,7 @@ public class FSFileCollection implements FileCollection {
 
     @Override
     public List<String> getFileNames() {
-        refreshFiles();
+        refresh();
         return new ArrayList<String>(filesByRelativePathAndName.keySet());
     }
 
@@ -92,24 +137,268 @@ public class FSFileCollection implements FileCollection {
 		refreshFiles();
 	}
 
-	public void refreshFiles() {
+	/**
+	 * @param incrementalRefresh true if refresh() and getFileNames() should only rescan changed directories
+	 */
+	public void setIncrementalRefresh(boolean incrementalRefresh) {
+		this.incrementalRefresh = incrementalRefresh;
+	}
+
+	/**
+	 * @param fullRescanInterval number of incremental refreshes after which a full rescan is performed; 0 means never
+	 */
+	public void setFullRescanInterval(int fullRescanInterval) {
+		if (fullRescanInterval < 0) {
+			throw new IllegalArgumentException("full rescan interval may not be negative");
+		}
+		this.fullRescanInterval = fullRescanInterval;
+	}
+
+	/**
+	 * @param listener listener that is notified of changes detected while refreshing
+	 */
+	public void addListener(FileCollectionListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * @return the number of directories listed during the last refresh
+	 */
+	public int getNrofListedDirectories() {
+		return nrofListedDirectories;
+	}
 
-        filesByRelativePathAndName.clear();
-		rootDir = new Directory("ROOT");
+	/**
+	 * Refreshes the collection incrementally if incremental refresh is set,
+	 * or else by scanning the complete directory tree.
+	 */
+	public void refresh() {
+		if (incrementalRefresh) {
+			refreshChangedFiles();
+		}
+		else {
+			refreshFiles();
+		}
+	}
+
+	/**
+	 * Scans the complete directory tree.
+	 */
+	public void refreshFiles() {
 
-        List<File> files = FileSupport.getFilesInDirectoryTree(baseDir, includedFilesRuleSet);
+        final Map<String, File> files = new TreeMap<String, File>();
+		final Map<String, FileState> states = new HashMap<String, FileState>();
+		final Map<File, Long> directoryTimes = new HashMap<File, Long>();
+		final long scanTime = System.currentTimeMillis();
+		//directories are listed concurrently
+        DirectoryTreeWalker walker = new DirectoryTreeWalker(new File(baseDir), includedFilesRuleSet);
+		walker.setDirectoryVisitor(new FileVisitor() {
+			public boolean visit(File directory) {
+				long modificationTime = getModificationTime(directory, scanTime);
+				synchronized (directoryTimes) {
+					directoryTimes.put(directory, modificationTime);
+				}
+				return true;
+			}
+		});
+		try {
+			walker.walk(new FileVisitor() {
+				public boolean visit(File file) {
+					String relativePathAndName = getRelativePathAndName(file);
+					FileState state = new FileState(file);
+					synchronized (files) {
+						files.put(relativePathAndName, file);
+						states.put(relativePathAndName, state);
+					}
+					return true;
+				}
+			});
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted while refreshing files in " + baseDir);
+		}
 
-        for (File file : files) {
-            String relativePathAndName = FileSupport.convertToUnixStylePath(file.getPath()).substring(
-                    baseDir.length());
-			if(relativePathAndName.startsWith("/")) {
-				relativePathAndName = relativePathAndName.substring(1);
+		Map<String, File> added = new TreeMap<String, File>();
+		Map<String, File> removed = new TreeMap<String, File>();
+		Map<String, File> changed = new TreeMap<String, File>();
+		if (!listeners.isEmpty()) {
+			for (Map.Entry<String, File> entry : filesByRelativePathAndName.entrySet()) {
+				FileState state = states.get(entry.getKey());
+				if (state == null) {
+					removed.put(entry.getKey(), entry.getValue());
+				}
+				else if (state.isChanged(fileStates.get(entry.getKey()))) {
+					changed.put(entry.getKey(), entry.getValue());
+				}
+			}
+			for (Map.Entry<String, File> entry : files.entrySet()) {
+				if (!filesByRelativePathAndName.containsKey(entry.getKey())) {
+					added.put(entry.getKey(), entry.getValue());
+				}
 			}
-			filesByRelativePathAndName.put(relativePathAndName, file);
-			rootDir.addFile(relativePathAndName);
-        }
+		}
+
+		filesByRelativePathAndName = files;
+		fileStates = states;
+		directoryModificationTimes = directoryTimes;
+		nrofRefreshesSinceFullRescan = 0;
+		nrofListedDirectories = walker.getNrofListedDirectories();
+		rebuildRootDir();
+		notifyListeners(added, removed, changed);
     }
 
+	/**
+	 * Lists directories that have changed since the last refresh
+	 * and checks modification time and size of collected files.
+	 * Performs a full rescan if there is no previous refresh to compare with
+	 * or if the full rescan interval has passed.
+	 */
+	public void refreshChangedFiles() {
+		if (directoryModificationTimes.isEmpty() || (fullRescanInterval > 0 && nrofRefreshesSinceFullRescan >= fullRescanInterval)) {
+			refreshFiles();
+			return;
+		}
+		nrofRefreshesSinceFullRescan++;
+		nrofListedDirectories = 0;
+		long scanTime = System.currentTimeMillis();
+		Map<String, File> added = new TreeMap<String, File>();
+		Map<String, File> removed = new TreeMap<String, File>();
+		Map<String, File> changed = new TreeMap<String, File>();
+
+		for (Map.Entry<String, FileState> entry : fileStates.entrySet()) {
+			File file = filesByRelativePathAndName.get(entry.getKey());
+			if (!file.isFile()) {
+				removed.put(entry.getKey(), file);
+			}
+			else if (new FileState(file).isChanged(entry.getValue())) {
+				if (includedFilesRuleSet.fileMatchesRules(file)) {
+					changed.put(entry.getKey(), file);
+				}
+				else {
+					removed.put(entry.getKey(), file);
+				}
+			}
+		}
+		for (String relativePathAndName : removed.keySet()) {
+			filesByRelativePathAndName.remove(relativePathAndName);
+			fileStates.remove(relativePathAndName);
+		}
+		for (Map.Entry<String, File> entry : changed.entrySet()) {
+			fileStates.put(entry.getKey(), new FileState(entry.getValue()));
+		}
+
+		for (File directory : new ArrayList<File>(directoryModificationTimes.keySet())) {
+			if (!directory.isDirectory()) {
+				//files it contained have been removed above
+				directoryModificationTimes.remove(directory);
+			}
+			else if (directory.lastModified() != directoryModificationTimes.get(directory)) {
+				directoryModificationTimes.put(directory, getModificationTime(directory, scanTime));
+				listChangedDirectory(directory, scanTime, added);
+			}
+		}
+		for (Map.Entry<String, File> entry : added.entrySet()) {
+			filesByRelativePathAndName.put(entry.getKey(), entry.getValue());
+			fileStates.put(entry.getKey(), new FileState(entry.getValue()));
+		}
+
+		if (!added.isEmpty() || !removed.isEmpty()) {
+			rebuildRootDir();
+		}
+		notifyListeners(added, removed, changed);
+	}
+
+	private void listChangedDirectory(File directory, long scanTime, Map<String, File> added) {
+		File[] entries = directory.listFiles();
+		if (entries == null) {
+			return;
+		}
+		nrofListedDirectories++;
+		for (File entry : entries) {
+			if (entry.isDirectory()) {
+				if (!directoryModificationTimes.containsKey(entry)) {
+					scanNewDirectory(entry, scanTime, added);
+				}
+			}
+			else {
+				String relativePathAndName = getRelativePathAndName(entry);
+				if (!filesByRelativePathAndName.containsKey(relativePathAndName) && includedFilesRuleSet.fileMatchesRules(entry)) {
+					added.put(relativePathAndName, entry);
+				}
+			}
+		}
+	}
+
+	private void scanNewDirectory(File directory, final long scanTime, final Map<String, File> added) {
+		DirectoryTreeWalker walker = new DirectoryTreeWalker(directory, includedFilesRuleSet);
+		walker.setDirectoryVisitor(new FileVisitor() {
+			public boolean visit(File directory) {
+				long modificationTime = getModificationTime(directory, scanTime);
+				synchronized (directoryModificationTimes) {
+					directoryModificationTimes.put(directory, modificationTime);
+				}
+				return true;
+			}
+		});
+		try {
+			walker.walk(new FileVisitor() {
+				public boolean visit(File file) {
+					String relativePathAndName = getRelativePathAndName(file);
+					synchronized (added) {
+						added.put(relativePathAndName, file);
+					}
+					return true;
+				}
+			});
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted while refreshing files in " + baseDir);
+		}
+		nrofListedDirectories += walker.getNrofListedDirectories();
+	}
+
+	/**
+	 * @return the modification time of the directory, or -1 if it was modified so recently
+	 * that later modifications may not change its modification time
+	 */
+	private static long getModificationTime(File directory, long scanTime) {
+		long modificationTime = directory.lastModified();
+		return modificationTime > scanTime - MODIFICATION_TIME_GRANULARITY ? -1 : modificationTime;
+	}
+
+	private String getRelativePathAndName(File file) {
+		String relativePathAndName = FileSupport.convertToUnixStylePath(file.getPath()).substring(
+				baseDir.length());
+		if(relativePathAndName.startsWith("/")) {
+			relativePathAndName = relativePathAndName.substring(1);
+		}
+		return relativePathAndName;
+	}
+
+	private void rebuildRootDir() {
+		Directory newRootDir = new Directory("ROOT");
+		for (String relativePathAndName : filesByRelativePathAndName.keySet()) {
+			newRootDir.addFile(relativePathAndName);
+		}
+		rootDir = newRootDir;
+	}
+
+	private void notifyListeners(Map<String, File> added, Map<String, File> removed, Map<String, File> changed) {
+		for (FileCollectionListener listener : listeners) {
+			for (Map.Entry<String, File> entry : removed.entrySet()) {
+				listener.onFileRemoved(entry.getKey(), entry.getValue());
+			}
+			for (Map.Entry<String, File> entry : added.entrySet()) {
+				listener.onFileAdded(entry.getKey(), entry.getValue());
+			}
+			for (Map.Entry<String, File> entry : changed.entrySet()) {
+				listener.onFileChanged(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
 	@Override
 	public String getDescription() {
 		return "directory: '" + baseDir + "'";
@@ -21,9 +21,12 @@ package org.ijsberg.iglu.util.io;
 
 import org.ijsberg.iglu.util.collection.ArraySupport;
 import org.ijsberg.iglu.util.formatting.PatternMatchingSupport;
+import org.ijsberg.iglu.util.formatting.WildcardMatcher;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
@@ -35,6 +38,11 @@ import java.util.zip.ZipFile;
  *
  * Note: Unix-style file separators are assumed in expressions.
  *
+ * Contents of files are only inspected if the name matches. They are streamed in chunks
+ * and scanned for all texts at once; reading stops as soon as the outcome is known.
+ * Texts are matched in the platform's default encoding.
+ * Binary files, recognized by a 0 byte at the start, do not match rules on contents, unless skipping them is switched off.
+ *
  * @see PatternMatchingSupport#valueMatchesWildcardExpression(String, String)
  */
 public class FileFilterRuleSet implements Cloneable, Serializable {
@@ -44,6 +52,16 @@ public class FileFilterRuleSet implements Cloneable, Serializable {
 	private String excludeFilesWithNameMask = "";
 	private String[] includeFilesContainingText = new String[0];
 	private String[] excludeFilesContainingText = new String[0];
+	private boolean skipBinaryFiles = true;
+	//compiled name masks; built on first use
+	private transient volatile WildcardMatcher includeNameMatcher;
+	private transient volatile WildcardMatcher excludeNameMatcher;
+	//include texts followed by exclude texts; built on first use
+	private transient volatile MultiPatternMatcher contentMatcher;
+
+	private static final int CHUNK_SIZE = 8192;
+	//number of bytes inspected to recognize binary files
+	private static final int BINARY_DETECTION_SIZE = 8000;
 
 
 	public FileFilterRuleSet(String baseDir) {
@@ -98,14 +116,16 @@ public class FileFilterRuleSet implements Cloneable, Serializable {
 	public boolean fileMatchesRules(File file) {
 
         try {
-            if(file.exists()) {
+            if(file.exists() && fileMatchesRules(getComparableFileName(file))) {
                 if(includeFilesContainingText.length == 0 && excludeFilesContainingText.length == 0) {
-                    return fileMatchesRules(
-							getComparableFileName(file));
+                    return true;
                 } else {
-                    return fileMatchesRules(
-							getComparableFileName(file),
-                            FileSupport.getTextFileFromFS(file));
+					InputStream input = new FileInputStream(file);
+					try {
+						return contentsMatchRules(input);
+					} finally {
+						input.close();
+					}
                 }
             }
         } catch (IOException ioe) {
@@ -117,13 +137,18 @@ public class FileFilterRuleSet implements Cloneable, Serializable {
     public boolean fileMatchesRules(ZipEntry entry, ZipFile zipFile) {
 
         try {
+                if(!fileMatchesRules(getComparableFileName(entry.getName()))) {
+                    return false;
+                }
                 if(includeFilesContainingText.length == 0 && excludeFilesContainingText.length == 0) {
-                    return fileMatchesRules(
-							getComparableFileName(entry.getName()));
+                    return true;
                 } else {
-                    return fileMatchesRules(
-							getComparableFileName(entry.getName()),
-                            FileSupport.getTextFileFromZip(entry.getName(), zipFile));
+					InputStream input = zipFile.getInputStream(entry);
+					try {
+						return contentsMatchRules(input);
+					} finally {
+						input.close();
+					}
                 }
         } catch (IOException ioe) {
             //at the moment file does not match rules
@@ -152,6 +177,85 @@ public class FileFilterRuleSet implements Cloneable, Serializable {
         return false;
     }
 
+	private MultiPatternMatcher getContentMatcher() {
+		MultiPatternMatcher matcher = contentMatcher;
+		if(matcher == null) {
+			String[] texts = new String[includeFilesContainingText.length + excludeFilesContainingText.length];
+			System.arraycopy(includeFilesContainingText, 0, texts, 0, includeFilesContainingText.length);
+			System.arraycopy(excludeFilesContainingText, 0, texts, includeFilesContainingText.length, excludeFilesContainingText.length);
+			matcher = MultiPatternMatcher.forText(texts);
+			contentMatcher = matcher;
+		}
+		return matcher;
+	}
+
+	/**
+	 * Reads contents until it is known whether they match the include and exclude texts.
+	 *
+	 * @param input
+	 * @return true if contents contain one of the include texts, if any, and none of the exclude texts
+	 * @throws IOException
+	 */
+	private boolean contentsMatchRules(InputStream input) throws IOException {
+		int nrofIncludes = includeFilesContainingText.length;
+		int nrofExcludes = excludeFilesContainingText.length;
+		MultiPatternMatcher.Scan scan = getContentMatcher().newScan();
+		byte[] buffer = new byte[CHUNK_SIZE];
+		long nrofBytesRead = 0;
+		boolean included = nrofIncludes == 0;
+		int count;
+		while((count = input.read(buffer)) >= 0) {
+			if(skipBinaryFiles && nrofBytesRead < BINARY_DETECTION_SIZE &&
+					containsZero(buffer, (int)Math.min(count, BINARY_DETECTION_SIZE - nrofBytesRead))) {
+				//a binary file contains none of the texts
+				return nrofIncludes == 0;
+			}
+			nrofBytesRead += count;
+			scan.feed(buffer, 0, count);
+			if(!included) {
+				for(int i = 0; i < nrofIncludes && !included; i++) {
+					included = scan.isFound(i);
+				}
+			}
+			for(int i = nrofIncludes; i < nrofIncludes + nrofExcludes; i++) {
+				if(scan.isFound(i)) {
+					return false;
+				}
+			}
+			if(included && nrofExcludes == 0) {
+				return true;
+			}
+		}
+		return included;
+	}
+
+	private static boolean containsZero(byte[] buffer, int length) {
+		for(int i = 0; i < length; i++) {
+			if(buffer[i] == 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private WildcardMatcher getIncludeNameMatcher() {
+		WildcardMatcher matcher = includeNameMatcher;
+		if(matcher == null) {
+			matcher = new WildcardMatcher(includeFilesWithNameMask);
+			includeNameMatcher = matcher;
+		}
+		return matcher;
+	}
+
+	private WildcardMatcher getExcludeNameMatcher() {
+		WildcardMatcher matcher = excludeNameMatcher;
+		if(matcher == null) {
+			matcher = new WildcardMatcher(excludeFilesWithNameMask);
+			excludeNameMatcher = matcher;
+		}
+		return matcher;
+	}
+
 	private boolean includeBecauseOfName(String fileName) {
 
 		//System.out.println(baseDir);
@@ -159,7 +263,7 @@ public class FileFilterRuleSet implements Cloneable, Serializable {
 
 
 		boolean retval = includeFilesWithNameMask == null || "*".equals(includeFilesWithNameMask) ||
-				PatternMatchingSupport.valueMatchesWildcardExpression(fileName, includeFilesWithNameMask)
+				getIncludeNameMatcher().matches(fileName)
 		//		|| PatternMatchingSupport.valueMatchesWildcardExpression(fileName, "*/" + includeFilesWithNameMask)
 		;
 
@@ -168,7 +272,7 @@ public class FileFilterRuleSet implements Cloneable, Serializable {
 
 	private boolean excludeBecauseOfName(String fileName) {
 		boolean retval = excludeFilesWithNameMask != null && !"".equals(excludeFilesWithNameMask) &&
-                (PatternMatchingSupport.valueMatchesWildcardExpression(fileName, excludeFilesWithNameMask)
+                (getExcludeNameMatcher().matches(fileName)
 		//		|| PatternMatchingSupport.valueMatchesWildcardExpression(fileName, "*/" + excludeFilesWithNameMask)
 				);
 
@@ -207,6 +311,7 @@ public class FileFilterRuleSet implements Cloneable, Serializable {
 		} else {
 			this.includeFilesWithNameMask = includeFilesWithNameMask;
 		}
+		this.includeNameMatcher = null;
 		return this;
 	}
 
@@ -218,6 +323,7 @@ public class FileFilterRuleSet implements Cloneable, Serializable {
 		} else {
 			this.excludeFilesWithNameMask = excludeFilesWithNameMask;
 		}
+		this.excludeNameMatcher = null;
 		return this;
 	}
 
@@ -225,6 +331,7 @@ public class FileFilterRuleSet implements Cloneable, Serializable {
 	public FileFilterRuleSet setIncludeFilesContainingText(
             String ... includeFilesContainingText) {
 		this.includeFilesContainingText = includeFilesContainingText;
+		this.contentMatcher = null;
 		return this;
 	}
 
@@ -232,6 +339,17 @@ public class FileFilterRuleSet implements Cloneable, Serializable {
 	public FileFilterRuleSet setExcludeFilesContainingText(
             String ... excludeFilesContainingText) {
 		this.excludeFilesContainingText = excludeFilesContainingText;
+		this.contentMatcher = null;
+		return this;
+	}
+
+	/**
+	 * @param skipBinaryFiles true (default) if the contents of binary files are not searched,
+	 *                        so that they contain none of the include and exclude texts
+	 * @return this rule set for convenience
+	 */
+	public FileFilterRuleSet setSkipBinaryFiles(boolean skipBinaryFiles) {
+		this.skipBinaryFiles = skipBinaryFiles;
 		return this;
 	}
 
@@ -251,7 +369,8 @@ public class FileFilterRuleSet implements Cloneable, Serializable {
 
 	@Override
 	public FileFilterRuleSet clone() {
-		return new FileFilterRuleSet(includeFilesWithNameMask, excludeFilesWithNameMask, includeFilesContainingText, excludeFilesContainingText, baseDir);
+		return new FileFilterRuleSet(includeFilesWithNameMask, excludeFilesWithNameMask, includeFilesContainingText, excludeFilesContainingText, baseDir).
+				setSkipBinaryFiles(skipBinaryFiles);
 	}
 	
 
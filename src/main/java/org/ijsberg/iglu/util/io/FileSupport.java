@@ -26,6 +26,7 @@ import org.ijsberg.iglu.util.misc.StringSupport;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.Executor;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
@@ -35,6 +36,12 @@ import java.util.zip.ZipFile;
  */
 public abstract class FileSupport {
 	private static final int COPY_BUFFER = 100000;
+	//runs tasks in the thread that submits them
+	private static final Executor CURRENT_THREAD = new Executor() {
+		public void execute(Runnable task) {
+			task.run();
+		}
+	};
 
 	/**
 	 * Retrieves all files from a directory and its subdirectories.
@@ -642,19 +649,40 @@ public abstract class FileSupport {
 	/**
 	 * Deletes from a directory all files and subdirectories targeted by a given mask.
 	 * The method will recurse into subdirectories.
+	 * Files are deleted as soon as they are found; targeted directories are deleted afterwards.
+	 * <p/>
+	 * Directories are listed in the current thread, so that deleting does not depend on
+	 * a pool of threads that may be busy, for instance with the walk that invokes this method.
 	 *
 	 * @param root
 	 * @param includeMask
 	 */
 	public static void deleteContentsInDirectoryTree(File root, String includeMask) {
-		Collection<File> files = getContentsInDirectoryTree(root, includeMask, true, true);
-		for(File file : files) {
-			if (file.exists()) {//file may meanwhile have been deleted
-				if (file.isDirectory()) {
-					//empty directory
-					emptyDirectory(file.getAbsolutePath());
+		final List<File> directories = new ArrayList<File>();
+		DirectoryTreeWalker walker = new DirectoryTreeWalker(root,
+				new FileFilterRuleSet(root.getPath()).setIncludeFilesWithNameMask(includeMask))
+				.setIncludeDirectories(true).setExecutor(CURRENT_THREAD);
+		try {
+			walker.walk(new FileVisitor() {
+				public boolean visit(File file) {
+					if (file.isDirectory()) {
+						directories.add(file);
+					}
+					else {
+						file.delete();
+					}
+					return true;
 				}
-				file.delete();				
+			});
+		}
+		catch (InterruptedException e) {
+			//walk has completed before it waits, since directories are listed in the current thread
+			throw new IllegalStateException("interrupted while deleting contents of " + root, e);
+		}
+		for(File directory : directories) {
+			if (directory.exists()) {//directory may meanwhile have been deleted
+				emptyDirectory(directory.getAbsolutePath());
+				directory.delete();
 			}
 		}
 	}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.io;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Composes a number of filters that are applied in order of addition.
+ * <p/>
+ * Stages may be a Filter, which produces exactly one object per input,
+ * or an ExpandingFilter, which may drop an object or produce several.
+ * A chain is linked to its destination once, after which each object passes
+ * all stages in a single sequence of calls without intermediate collections.
+ *
+ * @see Pipe
+ */
+public class FilterChain {
+
+	private final List<Object> stages = new ArrayList<Object>();
+
+	/**
+	 * Creates an empty chain.
+	 */
+	public FilterChain() {
+	}
+
+	/**
+	 * Creates a chain with the stages of another chain.
+	 *
+	 * @param chain
+	 */
+	public FilterChain(FilterChain chain) {
+		stages.addAll(chain.stages);
+	}
+
+	/**
+	 * Appends a filter that produces one object per input.
+	 *
+	 * @param filter
+	 * @return this chain for convenience
+	 */
+	public FilterChain add(Filter<?> filter) {
+		if (filter == null) {
+			throw new IllegalArgumentException("filter may not be null");
+		}
+		stages.add(filter);
+		return this;
+	}
+
+	/**
+	 * Appends a filter that produces zero or more objects per input.
+	 *
+	 * @param filter
+	 * @return this chain for convenience
+	 */
+	public FilterChain add(ExpandingFilter<?> filter) {
+		if (filter == null) {
+			throw new IllegalArgumentException("filter may not be null");
+		}
+		stages.add(filter);
+		return this;
+	}
+
+	/**
+	 * @return the number of stages
+	 */
+	public int size() {
+		return stages.size();
+	}
+
+	/**
+	 * @return true if the chain contains no stages
+	 */
+	public boolean isEmpty() {
+		return stages.isEmpty();
+	}
+
+	/**
+	 * Connects the stages to a destination.
+	 *
+	 * @param destination receives the output of the last stage
+	 * @return the receiver that accepts input for the first stage,
+	 *         which is the destination itself if the chain is empty
+	 */
+	//stages are typed by their own input; a stage receives whatever the previous stage produces
+	@SuppressWarnings("unchecked")
+	public Receiver link(Receiver destination) {
+		Receiver next = destination;
+		for (int i = stages.size() - 1; i >= 0; i--) {
+			Object stage = stages.get(i);
+			if (stage instanceof Filter) {
+				next = new FilterStage((Filter<Object>) stage, next);
+			}
+			else {
+				next = new ExpandingFilterStage((ExpandingFilter<Object>) stage, next);
+			}
+		}
+		return next;
+	}
+
+	private static class FilterStage implements Receiver {
+		private final Filter<Object> filter;
+		private final Receiver next;
+
+		private FilterStage(Filter<Object> filter, Receiver next) {
+			this.filter = filter;
+			this.next = next;
+		}
+
+		public void onReceive(Object message) {
+			next.onReceive(filter.filter(message));
+		}
+
+		public void onTransmissionClose() {
+			next.onTransmissionClose();
+		}
+	}
+
+	private static class ExpandingFilterStage implements Receiver {
+		private final ExpandingFilter<Object> filter;
+		private final Receiver next;
+
+		private ExpandingFilterStage(ExpandingFilter<Object> filter, Receiver next) {
+			this.filter = filter;
+			this.next = next;
+		}
+
+		public void onReceive(Object message) {
+			filter.filter(message, next);
+		}
+
+		public void onTransmissionClose() {
+			next.onTransmissionClose();
+		}
+	}
+}
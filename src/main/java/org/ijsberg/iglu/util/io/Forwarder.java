@@ -21,11 +21,12 @@ package org.ijsberg.iglu.util.io;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.List;
 
 /**
  * Forwards received messages to a transmitter.
  */
-public class Forwarder implements Receiver {
+public class Forwarder implements BatchReceiver {
 	private OutputStream outputStream;
 	private Transmitter outputTransmitter;
 
@@ -47,6 +48,10 @@ public class Forwarder implements Receiver {
 				if (message instanceof byte[]) {
 					outputStream.write((byte[]) message);
 				}
+				else if (message instanceof ByteSlice) {
+					ByteSlice slice = (ByteSlice) message;
+					outputStream.write(slice.getBytes(), 0, slice.getLength());
+				}
 				else {
 					outputStream.write(message.toString().getBytes());
 				}
@@ -57,7 +62,24 @@ public class Forwarder implements Receiver {
 		}
 	}
 
+	public void onReceiveBatch(List<?> messages) {
+		if (outputTransmitter != null) {
+			BatchSupport.transmit(outputTransmitter, messages);
+		}
+		else {
+			for (int i = 0; i < messages.size(); i++) {
+				onReceive(messages.get(i));
+			}
+		}
+	}
+
 	public void onTransmissionClose() {
+		if (outputTransmitter != null) {
+			if (!outputTransmitter.isClosed()) {
+				outputTransmitter.close();
+			}
+			return;
+		}
 		try {
 			outputStream.close();
 		}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.io;
+
+/**
+ * Ring buffer of messages, each stored with the time it was added.
+ * Is not thread safe; queues guard it with their own lock.
+ */
+class MessageBuffer {
+	private static final int INITIAL_CAPACITY = 16;
+
+	private Object[] messages;
+	private long[] enqueueTimes;
+	private int head;
+	private int count;
+	private final boolean growable;
+	private long lastEnqueueTime;
+
+	/**
+	 * Creates a buffer that grows as needed.
+	 */
+	MessageBuffer() {
+		this(INITIAL_CAPACITY, true);
+	}
+
+	/**
+	 * Creates a buffer with a fixed capacity.
+	 *
+	 * @param capacity
+	 */
+	MessageBuffer(int capacity) {
+		this(capacity, false);
+	}
+
+	private MessageBuffer(int capacity, boolean growable) {
+		this.messages = new Object[capacity];
+		this.enqueueTimes = new long[capacity];
+		this.growable = growable;
+	}
+
+	boolean isFull() {
+		return !growable && count == messages.length;
+	}
+
+	boolean isEmpty() {
+		return count == 0;
+	}
+
+	int size() {
+		return count;
+	}
+
+	int capacity() {
+		return messages.length;
+	}
+
+	/**
+	 * @param message
+	 * @param enqueueTime
+	 * @throws IllegalStateException if the buffer is full and cannot grow
+	 */
+	void addLast(Object message, long enqueueTime) {
+		if (count == messages.length) {
+			if (!growable) {
+				throw new IllegalStateException("buffer is full");
+			}
+			grow();
+		}
+		int index = head + count;
+		if (index >= messages.length) {
+			index -= messages.length;
+		}
+		messages[index] = message;
+		enqueueTimes[index] = enqueueTime;
+		count++;
+	}
+
+	/**
+	 * @return first message; its enqueue time is available from getLastEnqueueTime()
+	 */
+	Object removeFirst() {
+		Object message = messages[head];
+		lastEnqueueTime = enqueueTimes[head];
+		messages[head] = null;
+		if (++head == messages.length) {
+			head = 0;
+		}
+		count--;
+		return message;
+	}
+
+	/**
+	 * @return the time at which the message last removed was added
+	 */
+	long getLastEnqueueTime() {
+		return lastEnqueueTime;
+	}
+
+	void clear() {
+		while (count > 0) {
+			removeFirst();
+		}
+		head = 0;
+	}
+
+	private void grow() {
+		Object[] newMessages = new Object[messages.length * 2];
+		long[] newEnqueueTimes = new long[messages.length * 2];
+		int firstPart = Math.min(count, messages.length - head);
+		System.arraycopy(messages, head, newMessages, 0, firstPart);
+		System.arraycopy(messages, 0, newMessages, firstPart, count - firstPart);
+		System.arraycopy(enqueueTimes, head, newEnqueueTimes, 0, firstPart);
+		System.arraycopy(enqueueTimes, 0, newEnqueueTimes, firstPart, count - firstPart);
+		messages = newMessages;
+		enqueueTimes = newEnqueueTimes;
+		head = 0;
+	}
+}
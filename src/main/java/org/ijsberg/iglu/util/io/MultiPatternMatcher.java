@@ -0,0 +1,218 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.io;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Finds occurrences of a number of byte patterns in data that is read in chunks.
+ * <p/>
+ * All patterns are compiled into a single automaton (Aho-Corasick), so that data is scanned once,
+ * regardless of the number of patterns. A Scan keeps its position in the automaton between chunks,
+ * so patterns spanning chunk boundaries are found as well.
+ * <p/>
+ * The automaton takes 1 KB of memory per byte of pattern; it is meant for a limited number of short patterns.
+ * A matcher is immutable and can be shared; a scan is used by a single thread.
+ */
+public class MultiPatternMatcher {
+
+	private static final int ALPHABET_SIZE = 256;
+
+	private final int nrofPatterns;
+	//next state per state and byte value
+	private final int[][] transitions;
+	//indices of patterns that end in a state or null
+	private final int[][] matches;
+	//indices of empty patterns, which are found in any data
+	private final int[] emptyPatterns;
+
+	/**
+	 * @param patterns
+	 */
+	public MultiPatternMatcher(byte[]... patterns) {
+		this.nrofPatterns = patterns.length;
+
+		List<int[]> trie = new ArrayList<int[]>();
+		List<List<Integer>> output = new ArrayList<List<Integer>>();
+		trie.add(newState());
+		output.add(new ArrayList<Integer>());
+		List<Integer> empty = new ArrayList<Integer>();
+		for (int i = 0; i < patterns.length; i++) {
+			if (patterns[i] == null) {
+				throw new IllegalArgumentException("pattern may not be null");
+			}
+			if (patterns[i].length == 0) {
+				empty.add(i);
+				continue;
+			}
+			int state = 0;
+			for (byte b : patterns[i]) {
+				int c = b & 0xff;
+				if (trie.get(state)[c] < 0) {
+					trie.get(state)[c] = trie.size();
+					trie.add(newState());
+					output.add(new ArrayList<Integer>());
+				}
+				state = trie.get(state)[c];
+			}
+			output.get(state).add(i);
+		}
+		emptyPatterns = toArray(empty);
+
+		//breadth first: failure links point to states closer to the root
+		int[] failure = new int[trie.size()];
+		transitions = new int[trie.size()][];
+		LinkedList<Integer> queue = new LinkedList<Integer>();
+		transitions[0] = trie.get(0);
+		for (int c = 0; c < ALPHABET_SIZE; c++) {
+			int next = transitions[0][c];
+			if (next < 0) {
+				transitions[0][c] = 0;
+			}
+			else {
+				failure[next] = 0;
+				queue.add(next);
+			}
+		}
+		while (!queue.isEmpty()) {
+			int state = queue.removeFirst();
+			output.get(state).addAll(output.get(failure[state]));
+			transitions[state] = trie.get(state);
+			for (int c = 0; c < ALPHABET_SIZE; c++) {
+				int next = transitions[state][c];
+				if (next < 0) {
+					transitions[state][c] = transitions[failure[state]][c];
+				}
+				else {
+					failure[next] = transitions[failure[state]][c];
+					queue.add(next);
+				}
+			}
+		}
+		matches = new int[trie.size()][];
+		for (int i = 0; i < matches.length; i++) {
+			matches[i] = output.get(i).isEmpty() ? null : toArray(output.get(i));
+		}
+	}
+
+	/**
+	 * Creates a matcher for text that is encoded in the platform's default character set.
+	 *
+	 * @param patterns
+	 * @return a new matcher
+	 */
+	public static MultiPatternMatcher forText(String... patterns) {
+		byte[][] bytePatterns = new byte[patterns.length][];
+		for (int i = 0; i < patterns.length; i++) {
+			bytePatterns[i] = patterns[i].getBytes();
+		}
+		return new MultiPatternMatcher(bytePatterns);
+	}
+
+	private static int[] newState() {
+		int[] state = new int[ALPHABET_SIZE];
+		for (int i = 0; i < ALPHABET_SIZE; i++) {
+			state[i] = -1;
+		}
+		return state;
+	}
+
+	private static int[] toArray(List<Integer> list) {
+		int[] result = new int[list.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = list.get(i);
+		}
+		return result;
+	}
+
+	/**
+	 * @return number of patterns
+	 */
+	public int getNrofPatterns() {
+		return nrofPatterns;
+	}
+
+	/**
+	 * @return a new scan, positioned at the start of the data
+	 */
+	public Scan newScan() {
+		return new Scan();
+	}
+
+	/**
+	 * Keeps track of the patterns found in consecutive chunks of data.
+	 */
+	public class Scan {
+		private int state;
+		private final boolean[] found = new boolean[nrofPatterns];
+		private int nrofPatternsFound;
+
+		private Scan() {
+			for (int i = 0; i < emptyPatterns.length; i++) {
+				markFound(emptyPatterns[i]);
+			}
+		}
+
+		private void markFound(int patternIndex) {
+			if (!found[patternIndex]) {
+				found[patternIndex] = true;
+				nrofPatternsFound++;
+			}
+		}
+
+		/**
+		 * Scans the next chunk of data.
+		 *
+		 * @param bytes
+		 * @param offset
+		 * @param length
+		 */
+		public void feed(byte[] bytes, int offset, int length) {
+			int currentState = state;
+			for (int i = offset; i < offset + length; i++) {
+				currentState = transitions[currentState][bytes[i] & 0xff];
+				int[] patternIndices = matches[currentState];
+				if (patternIndices != null) {
+					for (int j = 0; j < patternIndices.length; j++) {
+						markFound(patternIndices[j]);
+					}
+				}
+			}
+			state = currentState;
+		}
+
+		/**
+		 * @param patternIndex index of the pattern as passed to the matcher
+		 * @return true if the pattern has been found in the data scanned so far
+		 */
+		public boolean isFound(int patternIndex) {
+			return found[patternIndex];
+		}
+
+		/**
+		 * @return number of distinct patterns found in the data scanned so far
+		 */
+		public int getNrofPatternsFound() {
+			return nrofPatternsFound;
+		}
+	}
+}
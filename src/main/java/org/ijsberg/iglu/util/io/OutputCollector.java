@@ -0,0 +1,369 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.io;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Collects output, such as the output of a process, with a limited amount of memory.
+ * <p/>
+ * The first headSize bytes and the last tailSize bytes are kept in memory.
+ * As soon as output no longer fits in head and tail, everything after the head is written
+ * to a temporary file, so that the complete output remains available for streaming.
+ * Output may be received as byte arrays, ByteSlices or any object, of which the string representation is taken.
+ * <p/>
+ * The temporary file is deleted by invoking delete(). It is not deleted at exit of the VM,
+ * since a growing list of files to delete at exit would leak memory in long-running processes.
+ */
+public class OutputCollector implements BatchReceiver {
+
+	public static final int DEFAULT_HEAD_SIZE = 64 * 1024;
+	public static final int DEFAULT_TAIL_SIZE = 64 * 1024;
+
+	private final byte[] head;
+	private int headLength;
+	//ring buffer holding the most recent output after the head
+	private final byte[] tail;
+	private int tailStart;
+	private int tailLength;
+	private long nrofBytes;
+
+	private File spillFile;
+	private OutputStream spillStream;
+	private IOException spillException;
+	private boolean closed;
+	private boolean deleted;
+
+	/**
+	 * Constructs a collector that keeps 64 KB of head and 64 KB of tail in memory.
+	 */
+	public OutputCollector() {
+		this(DEFAULT_HEAD_SIZE, DEFAULT_TAIL_SIZE);
+	}
+
+	/**
+	 * @param headSize number of bytes at the start of the output kept in memory
+	 * @param tailSize number of bytes at the end of the output kept in memory
+	 */
+	public OutputCollector(int headSize, int tailSize) {
+		if (headSize < 0 || tailSize < 0) {
+			throw new IllegalArgumentException("head and tail size may not be negative");
+		}
+		this.head = new byte[headSize];
+		this.tail = new byte[tailSize];
+	}
+
+	/**
+	 * @param message output as byte array, ByteSlice or other object
+	 */
+	public void onReceive(Object message) {
+		if (message instanceof byte[]) {
+			byte[] bytes = (byte[]) message;
+			write(bytes, 0, bytes.length);
+		}
+		else if (message instanceof ByteSlice) {
+			ByteSlice slice = (ByteSlice) message;
+			write(slice.getBytes(), 0, slice.getLength());
+		}
+		else if (message != null) {
+			byte[] bytes = message.toString().getBytes();
+			write(bytes, 0, bytes.length);
+		}
+	}
+
+	/**
+	 * @param messages
+	 */
+	public synchronized void onReceiveBatch(List<?> messages) {
+		for (int i = 0; i < messages.size(); i++) {
+			onReceive(messages.get(i));
+		}
+	}
+
+	/**
+	 * Closes the temporary file for writing.
+	 * Output received afterwards is ignored.
+	 */
+	public synchronized void onTransmissionClose() {
+		closed = true;
+		closeSpillStream();
+	}
+
+	/**
+	 * Adds output.
+	 *
+	 * @param bytes
+	 * @param offset
+	 * @param length
+	 */
+	public synchronized void write(byte[] bytes, int offset, int length) {
+		if (closed) {
+			return;
+		}
+		nrofBytes += length;
+		int nrofHeadBytes = Math.min(length, head.length - headLength);
+		System.arraycopy(bytes, offset, head, headLength, nrofHeadBytes);
+		headLength += nrofHeadBytes;
+		offset += nrofHeadBytes;
+		length -= nrofHeadBytes;
+		if (length == 0) {
+			return;
+		}
+		if (spillStream == null && spillException == null && tailLength + length > tail.length) {
+			startSpilling();
+		}
+		if (spillStream != null) {
+			try {
+				spillStream.write(bytes, offset, length);
+			}
+			catch (IOException e) {
+				spillException = e;
+				closeSpillStream();
+			}
+		}
+		addToTail(bytes, offset, length);
+	}
+
+	private void startSpilling() {
+		try {
+			spillFile = File.createTempFile("iglu-output", ".tmp");
+			spillStream = new BufferedOutputStream(new FileOutputStream(spillFile));
+			spillStream.write(getTail());
+		}
+		catch (IOException e) {
+			spillException = e;
+			closeSpillStream();
+		}
+	}
+
+	private void closeSpillStream() {
+		if (spillStream != null) {
+			try {
+				spillStream.close();
+			}
+			catch (IOException e) {
+				if (spillException == null) {
+					spillException = e;
+				}
+			}
+			spillStream = null;
+		}
+	}
+
+	private void addToTail(byte[] bytes, int offset, int length) {
+		if (length >= tail.length) {
+			System.arraycopy(bytes, offset + length - tail.length, tail, 0, tail.length);
+			tailStart = 0;
+			tailLength = tail.length;
+			return;
+		}
+		int end = (tailStart + tailLength) % tail.length;
+		int nrofBytesTillWrap = Math.min(length, tail.length - end);
+		System.arraycopy(bytes, offset, tail, end, nrofBytesTillWrap);
+		System.arraycopy(bytes, offset + nrofBytesTillWrap, tail, 0, length - nrofBytesTillWrap);
+		int overflow = tailLength + length - tail.length;
+		if (overflow > 0) {
+			tailStart = (tailStart + overflow) % tail.length;
+			tailLength = tail.length;
+		}
+		else {
+			tailLength += length;
+		}
+	}
+
+	/**
+	 * @return the first bytes of the output, at most headSize
+	 */
+	public synchronized byte[] getHead() {
+		byte[] result = new byte[headLength];
+		System.arraycopy(head, 0, result, 0, headLength);
+		return result;
+	}
+
+	/**
+	 * @return the last bytes of the output that are not part of the head, at most tailSize
+	 */
+	public synchronized byte[] getTail() {
+		byte[] result = new byte[tailLength];
+		int nrofBytesTillWrap = Math.min(tailLength, tail.length - tailStart);
+		System.arraycopy(tail, tailStart, result, 0, nrofBytesTillWrap);
+		System.arraycopy(tail, 0, result, nrofBytesTillWrap, tailLength - nrofBytesTillWrap);
+		return result;
+	}
+
+	/**
+	 * @return the total number of bytes received
+	 */
+	public synchronized long getNrofBytes() {
+		return nrofBytes;
+	}
+
+	/**
+	 * @return true if output was written to a temporary file
+	 */
+	public synchronized boolean isSpilled() {
+		return spillFile != null;
+	}
+
+	/**
+	 * @return true if part of the output is lost because it could not be written to the temporary file
+	 */
+	public synchronized boolean isTruncated() {
+		return spillException != null;
+	}
+
+	/**
+	 * @return the temporary file holding the output after the head, or null if output fits in memory
+	 */
+	public synchronized File getSpillFile() {
+		return spillFile;
+	}
+
+	/**
+	 * Streams the complete output received so far.
+	 * If output was lost, the stream contains head and tail only.
+	 *
+	 * @return a stream that must be closed after use
+	 * @throws IOException if the output was spilled and the temporary file has been deleted
+	 */
+	public synchronized InputStream getInputStream() throws IOException {
+		InputStream headStream = new ByteArrayInputStream(getHead());
+		if (spillFile == null || spillException != null) {
+			return new SequenceInputStream(headStream, new ByteArrayInputStream(getTail()));
+		}
+		if (deleted) {
+			throw new IOException("spilled output is deleted");
+		}
+		if (spillStream != null) {
+			spillStream.flush();
+		}
+		return new SequenceInputStream(headStream, new FileInputStream(spillFile));
+	}
+
+	/**
+	 * Loads the complete output in memory, which may be large.
+	 *
+	 * @return the complete output received so far
+	 * @throws IOException
+	 */
+	public byte[] toByteArray() throws IOException {
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		InputStream input = getInputStream();
+		try {
+			byte[] buffer = new byte[8192];
+			int count;
+			while ((count = input.read(buffer)) >= 0) {
+				result.write(buffer, 0, count);
+			}
+		}
+		finally {
+			input.close();
+		}
+		return result.toByteArray();
+	}
+
+	/**
+	 * Iterates over the lines of the output received so far, reading them one by one.
+	 * The underlying stream is closed once the last line has been read.
+	 *
+	 * @param encoding character encoding of the output
+	 * @return lines without line terminators
+	 * @throws IOException
+	 */
+	public Iterator<String> lineIterator(String encoding) throws IOException {
+		final BufferedReader reader = new BufferedReader(new InputStreamReader(getInputStream(), encoding));
+		return new Iterator<String>() {
+			private String nextLine = readLine();
+
+			private String readLine() {
+				try {
+					String line = reader.readLine();
+					if (line == null) {
+						reader.close();
+					}
+					return line;
+				}
+				catch (IOException e) {
+					throw new IllegalStateException("can not read output", e);
+				}
+			}
+
+			public boolean hasNext() {
+				return nextLine != null;
+			}
+
+			public String next() {
+				if (nextLine == null) {
+					throw new NoSuchElementException();
+				}
+				String line = nextLine;
+				nextLine = readLine();
+				return line;
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * Iterates over the lines of the output using the default character encoding.
+	 *
+	 * @return lines without line terminators
+	 * @throws IOException
+	 */
+	public Iterator<String> lineIterator() throws IOException {
+		return lineIterator(System.getProperty("file.encoding"));
+	}
+
+	/**
+	 * Stops collecting and deletes the temporary file.
+	 */
+	public synchronized void delete() {
+		onTransmissionClose();
+		deleted = true;
+		if (spillFile != null) {
+			spillFile.delete();
+		}
+	}
+
+	/**
+	 * @return a summary of the collected output
+	 */
+	public synchronized String toString() {
+		return "OutputCollector: " + nrofBytes + " bytes" + (spillFile != null ? ", spilled to " + spillFile : "") +
+				(spillException != null ? ", truncated: " + spillException.getMessage() : "");
+	}
+}
@@ -19,12 +19,20 @@
 
 package org.ijsberg.iglu.util.io;
 
+import java.util.List;
+
 /**
  * Transmits objects to a specific receiver.
+ * <p/>
+ * Objects may pass a number of filters on their way to the receiver.
+ *
+ * @see FilterChain
  */
-public class Pipe implements Transmitter {
+public class Pipe implements BatchTransmitter {
 	private Receiver receiver;
-	private Filter<Object> filter;
+	private FilterChain filterChain = new FilterChain();
+	//first stage of the filter chain linked to the receiver
+	private Receiver entry;
 	private boolean isClosed;
 
 
@@ -41,19 +49,38 @@ public class Pipe implements Transmitter {
 		if (receiver == null) {
 			throw new IllegalArgumentException("receiver may not be null");
 		}
-		this.receiver = receiver;
+		setReceiver(receiver);
 	}
 
 	/**
 	 * @param receiver
-	 * @param filter
+	 * @param filter may be null
 	 */
 	public Pipe(Receiver receiver, Filter<?> filter) {
 		if (receiver == null) {
 			throw new IllegalArgumentException("receiver may not be null");
 		}
-		this.receiver = receiver;
-		this.filter = (Filter<Object>)filter;
+		if (filter != null) {
+			filterChain.add(filter);
+		}
+		setReceiver(receiver);
+	}
+
+	/**
+	 * Creates a pipe that passes objects through a number of filters.
+	 * A factory method is used, since a constructor would make new Pipe(receiver, null) ambiguous.
+	 *
+	 * @param receiver
+	 * @param filterChain filters applied in order, which are copied; may be null
+	 * @return a new pipe
+	 */
+	public static Pipe withFilterChain(Receiver receiver, FilterChain filterChain) {
+		Pipe pipe = new Pipe(receiver);
+		if (filterChain != null) {
+			pipe.filterChain = new FilterChain(filterChain);
+			pipe.setReceiver(receiver);
+		}
+		return pipe;
 	}
 
 	/**
@@ -63,11 +90,26 @@ public class Pipe implements Transmitter {
 		if (isClosed) {
 			throw new IllegalStateException("pipe is closed");
 		}
-		if (filter != null) {
-			receiver.onReceive(filter.filter(object));
+		entry.onReceive(object);
+	}
+
+	/**
+	 * Passes messages to the receiver in one call if there are no filters,
+	 * or one by one through the filters otherwise.
+	 *
+	 * @param messages
+	 */
+	public void transmitBatch(List<?> messages) {
+		if (isClosed) {
+			throw new IllegalStateException("pipe is closed");
+		}
+		if (entry == receiver) {
+			BatchSupport.deliver(receiver, messages);
 		}
 		else {
-			receiver.onReceive(object);
+			for (int i = 0; i < messages.size(); i++) {
+				entry.onReceive(messages.get(i));
+			}
 		}
 	}
 
@@ -76,6 +118,7 @@ public class Pipe implements Transmitter {
 	 */
 	public void setReceiver(Receiver receiver) {
 		this.receiver = receiver;
+		this.entry = filterChain.link(receiver);
 	}
 
 	/**
@@ -87,6 +130,7 @@ public class Pipe implements Transmitter {
 		}
 		receiver.onTransmissionClose();
 		receiver = null;
+		entry = null;
 		isClosed = true;
 	}
 
@@ -98,11 +142,55 @@ public class Pipe implements Transmitter {
 	}
 
 	/**
+	 * Replaces the filters applied by a single filter.
+	 *
+	 * @param filter filter or null to remove all filters
+	 * @return
+	 */
+	public <T> Filter<T> addFilter(Filter<T> filter) {
+		filterChain = new FilterChain();
+		if (filter != null) {
+			filterChain.add(filter);
+		}
+		relink();
+		return filter;
+	}
+
+	/**
+	 * Appends a filter to the filters already applied.
+	 *
+	 * @param filter
+	 * @return
+	 */
+	public <T> Filter<T> appendFilter(Filter<T> filter) {
+		filterChain.add(filter);
+		relink();
+		return filter;
+	}
+
+	/**
+	 * Appends a filter that may drop objects or produce several
+	 * to the filters already applied.
+	 *
 	 * @param filter
 	 * @return
 	 */
-	public Filter addFilter(Filter filter) {
-		this.filter = filter;
+	public <T> ExpandingFilter<T> appendFilter(ExpandingFilter<T> filter) {
+		filterChain.add(filter);
+		relink();
 		return filter;
 	}
+
+	private void relink() {
+		if (receiver != null) {
+			entry = filterChain.link(receiver);
+		}
+	}
+
+	/**
+	 * @return a copy of the filters applied
+	 */
+	public FilterChain getFilterChain() {
+		return new FilterChain(filterChain);
+	}
 }
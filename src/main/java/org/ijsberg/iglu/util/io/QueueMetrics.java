@@ -0,0 +1,132 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.io;
+
+import org.ijsberg.iglu.util.misc.Histogram;
+
+/**
+ * Statistics of a message queue: numbers of queued, dequeued and dropped messages,
+ * the highest number of messages waiting at once and the time messages spent waiting.
+ * <p/>
+ * Counters are updated by the queue while it holds its own lock, so they add no contention.
+ * Measuring waiting time takes two invocations of System.nanoTime() per message
+ * and may be switched off.
+ */
+public class QueueMetrics {
+	private volatile long nrofEnqueuedMessages;
+	private volatile long nrofDequeuedMessages;
+	private volatile long nrofDroppedMessages;
+	private volatile int highWaterMark;
+	private volatile boolean latencyTracked = true;
+	private final Histogram latency = new Histogram();
+
+	/**
+	 * @return current time in ns if latency is tracked, 0 otherwise
+	 */
+	long getTime() {
+		return latencyTracked ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * Is invoked by the queue while holding its lock.
+	 *
+	 * @param depth number of messages waiting after the message was added
+	 */
+	void onEnqueue(int depth) {
+		nrofEnqueuedMessages++;
+		if (depth > highWaterMark) {
+			highWaterMark = depth;
+		}
+	}
+
+	/**
+	 * Is invoked by the queue while holding its lock.
+	 *
+	 * @param enqueueTime time the message was added, 0 if unknown
+	 * @param now current time
+	 */
+	void onDequeue(long enqueueTime, long now) {
+		nrofDequeuedMessages++;
+		if (enqueueTime != 0 && now != 0) {
+			latency.record(now - enqueueTime);
+		}
+	}
+
+	/**
+	 * Is invoked by the queue while holding its lock.
+	 */
+	void onDrop() {
+		nrofDroppedMessages++;
+	}
+
+	/**
+	 * @return number of messages accepted by the queue
+	 */
+	public long getNrofEnqueuedMessages() {
+		return nrofEnqueuedMessages;
+	}
+
+	/**
+	 * @return number of messages read from the queue
+	 */
+	public long getNrofDequeuedMessages() {
+		return nrofDequeuedMessages;
+	}
+
+	/**
+	 * @return number of messages discarded because the queue was full
+	 */
+	public long getNrofDroppedMessages() {
+		return nrofDroppedMessages;
+	}
+
+	/**
+	 * @return highest number of messages waiting at once
+	 */
+	public int getHighWaterMark() {
+		return highWaterMark;
+	}
+
+	/**
+	 * @return distribution of time in ns between adding a message and reading it
+	 */
+	public Histogram getLatency() {
+		return latency;
+	}
+
+	/**
+	 * @return true if the time messages spend waiting is measured
+	 */
+	public boolean isLatencyTracked() {
+		return latencyTracked;
+	}
+
+	/**
+	 * @param latencyTracked false to save the cost of measuring time
+	 */
+	public void setLatencyTracked(boolean latencyTracked) {
+		this.latencyTracked = latencyTracked;
+	}
+
+	public String toString() {
+		return "in=" + nrofEnqueuedMessages + " out=" + nrofDequeuedMessages + " dropped=" + nrofDroppedMessages +
+				" high water mark=" + highWaterMark + " latency(ns): " + latency;
+	}
+}
@@ -19,17 +19,19 @@
 
 package org.ijsberg.iglu.util.io;
 
-import java.util.LinkedList;
+import java.util.Collection;
+import java.util.List;
 
 /**
  * A message queue which receives objects from a transmitter.
  *
  * @see BasicChannel
  */
-public class ReceiverQueue implements Receiver, Queue {
-	private LinkedList queue = new LinkedList();
+public class ReceiverQueue implements BatchReceiver, WaitableQueue, MeteredQueue {
+	private MessageBuffer queue = new MessageBuffer();
 	private int limit;//unlimited queue size by default
-	private boolean closed;
+	private volatile boolean closed;
+	private final QueueMetrics metrics = new QueueMetrics();
 
 	/**
 	 * Constructs a receiver with an unlimited queue size.
@@ -54,15 +56,49 @@ public class ReceiverQueue implements Receiver, Queue {
 	 */
 	public void onReceive(Object object) {
 		if (!closed && object != null) {
+			long now = metrics.getTime();
 			synchronized (queue) {
-				queue.addLast(object);
-				if (limit > 0 && queue.size() > limit && !queue.isEmpty()) {
-					queue.removeFirst();
+				enqueue(object, now);
+				queue.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Receives a number of objects from a channel.
+	 *
+	 * @param messages
+	 */
+	public void onReceiveBatch(List<?> messages) {
+		if (!closed) {
+			long now = metrics.getTime();
+			synchronized (queue) {
+				for (int i = 0; i < messages.size(); i++) {
+					Object object = messages.get(i);
+					if (object != null) {
+						enqueue(object, now);
+					}
 				}
+				queue.notifyAll();
 			}
 		}
 	}
 
+	private void enqueue(Object object, long now) {
+		queue.addLast(object, now);
+		if (limit > 0 && queue.size() > limit) {
+			queue.removeFirst();
+			metrics.onDrop();
+		}
+		metrics.onEnqueue(queue.size());
+	}
+
+	private Object dequeue(long now) {
+		Object object = queue.removeFirst();
+		metrics.onDequeue(queue.getLastEnqueueTime(), now);
+		return object;
+	}
+
 
 	/**
 	 * Retrieves and removes the first object from the queue.
@@ -72,18 +108,72 @@ public class ReceiverQueue implements Receiver, Queue {
 	public Object read() {
 		synchronized (queue) {
 			if (!queue.isEmpty()) {
-				return queue.removeFirst();
+				return dequeue(metrics.getTime());
 			}
 		}
 		return null;
 	}
 
 
+	/**
+	 * Retrieves and removes the first object from the queue,
+	 * waiting until an object arrives if the queue is empty.
+	 *
+	 * @param timeout maximum time to wait in ms; 0 means indefinitely
+	 * @return the first object from the queue or null if the timeout expired
+	 *         or the queue was closed while empty
+	 * @throws InterruptedException
+	 */
+	public Object take(long timeout) throws InterruptedException {
+		long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : 0;
+		synchronized (queue) {
+			while (queue.isEmpty()) {
+				if (closed) {
+					return null;
+				}
+				if (deadline == 0) {
+					queue.wait();
+				}
+				else {
+					long remaining = deadline - System.currentTimeMillis();
+					if (remaining <= 0) {
+						return null;
+					}
+					queue.wait(remaining);
+				}
+			}
+			return dequeue(metrics.getTime());
+		}
+	}
+
+
+	/**
+	 * Removes at most maxNrofMessages objects from the queue and adds them to a collection.
+	 *
+	 * @param collection
+	 * @param maxNrofMessages
+	 * @return the number of objects transferred
+	 */
+	public int drainTo(Collection<Object> collection, int maxNrofMessages) {
+		synchronized (queue) {
+			int nrofMessages = 0;
+			if (!queue.isEmpty()) {
+				long now = metrics.getTime();
+				while (!queue.isEmpty() && nrofMessages < maxNrofMessages) {
+					collection.add(dequeue(now));
+					nrofMessages++;
+				}
+			}
+			return nrofMessages;
+		}
+	}
+
+
 	/**
 	 * @return true if there are more objects waiting on the queue.
 	 */
 	public boolean hasNext() {
-		return !queue.isEmpty();
+		return available() > 0;
 	}
 
 
@@ -91,7 +181,10 @@ public class ReceiverQueue implements Receiver, Queue {
 	 * Closes the receiver (for incoming messages) but does <em>not</em> clear the queue.
 	 */
 	public void close() {
-		closed = true;
+		synchronized (queue) {
+			closed = true;
+			queue.notifyAll();
+		}
 		//the receiver will eventually be removed from the channel
 	}
 
@@ -124,7 +217,7 @@ public class ReceiverQueue implements Receiver, Queue {
 	 * @return queue size
 	 */
 	public int getNrofQueuedMessages() {
-		return queue.size();
+		return available();
 	}
 
 
@@ -132,7 +225,9 @@ public class ReceiverQueue implements Receiver, Queue {
 	 * @return queue size
 	 */
 	public int available() {
-		return queue.size();
+		synchronized (queue) {
+			return queue.size();
+		}
 	}
 
 	/**
@@ -141,4 +236,11 @@ public class ReceiverQueue implements Receiver, Queue {
 	public int getLimit() {
 		return limit;
 	}
+
+	/**
+	 * @return statistics of this queue
+	 */
+	public QueueMetrics getMetrics() {
+		return metrics;
+	}
 }
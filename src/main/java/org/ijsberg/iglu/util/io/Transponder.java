@@ -21,22 +21,36 @@ package org.ijsberg.iglu.util.io;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Receives and retransmits objects asynchronously.
  */
-public class Transponder implements Receiver {
+public class Transponder implements BatchReceiver {
 	private Transmitter outputTransmitter;
 	private InputStream inputStream;
 	public static final long DEFAULT_POLLING_INTERVAL = 10;
 	private long pollingInterval = DEFAULT_POLLING_INTERVAL;
+	//maximum time in ms a forwarder waits for a message before checking if the output is closed
+	private static final long IDLE_CHECK_INTERVAL = 500;
 	public static final int DEFAULT_QUEUE_SIZE = 0;//unlimited
 	private int queueSize = DEFAULT_QUEUE_SIZE;
 	public static final int DEFAULT_BUFFER_SIZE = 80;
 	private int bufferSize = DEFAULT_BUFFER_SIZE;
+	//maximum number of queued messages retransmitted in one call
+	public static final int DEFAULT_BATCH_SIZE = 100;
+	private int batchSize = DEFAULT_BATCH_SIZE;
+	//if set, stream input is forwarded in reusable slices
+	private ByteSlicePool slicePool;
 	private ReceiverQueue receiverQueue;
 	private Queue queue;
-	private boolean haltRequest;
+	//set if the queue signals arrival of messages, so that it need not be polled
+	private WaitableQueue waitableQueue;
+	private volatile boolean haltRequest;
+	//statistics, only updated by the forwarder thread
+	private volatile long nrofForwardedMessages;
+	private volatile long nrofForwardedBytes;
 	protected Thread forwarderThread;
 
 
@@ -53,11 +67,14 @@ public class Transponder implements Receiver {
 		this.outputTransmitter = outputTransmitter;
 		receiverQueue = new ReceiverQueue(queueSize);
 		this.queue = receiverQueue;
+		this.waitableQueue = receiverQueue;
 		forwarderThread = new Thread(new Forwarder());
 	}
 
 	/**
 	 * Creates transponder with a queue as input source.
+	 * If the queue is a WaitableQueue, the transponder waits for messages
+	 * instead of polling the queue.
 	 *
 	 * @param queue
 	 * @param outputTransmitter
@@ -71,6 +88,9 @@ public class Transponder implements Receiver {
 		}
 		this.outputTransmitter = outputTransmitter;
 		this.queue = queue;
+		if (queue instanceof WaitableQueue) {
+			this.waitableQueue = (WaitableQueue) queue;
+		}
 		forwarderThread = new Thread(new Forwarder());
 	}
 
@@ -90,6 +110,7 @@ public class Transponder implements Receiver {
 		this.outputTransmitter = outputTransmitter;
 		receiverQueue = new ReceiverQueue(queueSize);
 		this.queue = receiverQueue;
+		this.waitableQueue = receiverQueue;
 		channel.registerReceiver(receiverQueue);
 		forwarderThread = new Thread(new Forwarder());
 	}
@@ -117,16 +138,67 @@ public class Transponder implements Receiver {
 	}
 
 	/**
-	 * Polls the queue for new objects and retransmits them.
+	 * Constructs a StreamReader that forwards input in byte slices taken from a pool.
+	 * A slice is released as soon as the transmitter returns, so once the pool is warmed up,
+	 * forwarding does not allocate memory.
+	 * Receivers that keep a slice after onReceive must retain it.
+	 * <p/>
+	 * Note: transponder will not be able to read from alternate sources.
+	 *
+	 * @param inputStream
+	 * @param outputTransmitter
+	 * @param slicePool
+	 * @see ByteSlice
+	 */
+	public Transponder(InputStream inputStream, Transmitter outputTransmitter, ByteSlicePool slicePool) {
+		this(inputStream, outputTransmitter);
+		if (slicePool == null) {
+			throw new IllegalArgumentException("slice pool may not be null");
+		}
+		this.slicePool = slicePool;
+	}
+
+	/**
+	 * Waits for or polls the queue for new objects and retransmits them.
+	 * Objects from a WaitableQueue are retransmitted in batches.
 	 */
 	private class Forwarder implements Runnable {
+		private final ArrayList<Object> batch = new ArrayList<Object>();
+
 		/**
 		 * Contains read loop.
 		 */
 		public void run() {
 //			System.out.println("starting thread " + Thread.currentThread() + " for Transponder");
 			while (!haltRequest) {
-				if (inputStream != null) {
+				if (inputStream != null && slicePool != null) {
+					try {
+						int count = 0;
+						while (count >= 0) {
+							ByteSlice slice = slicePool.acquire();
+							try {
+								count = inputStream.read(slice.getBytes());
+								if (count > 0) {
+									slice.setLength(count);
+									outputTransmitter.transmit(slice);
+									nrofForwardedMessages++;
+									nrofForwardedBytes += count;
+								}
+							}
+							finally {
+								slice.release();
+							}
+							if (outputTransmitter.isClosed()) {
+								stop();
+							}
+						}
+					}
+					catch (IOException e) {
+						outputTransmitter.transmit("stream can no longer be forwarded...".getBytes());
+						stop();
+					}
+				}
+				else if (inputStream != null) {
 					try {
 						byte[] buffer = new byte[bufferSize];
 						int count = 0;
@@ -137,6 +209,8 @@ public class Transponder implements Receiver {
 								byte[] message = new byte[count];
 								System.arraycopy(buffer, 0, message, 0, count);
 								outputTransmitter.transmit(message);//deliver to transmitter
+								nrofForwardedMessages++;
+								nrofForwardedBytes += count;
 							}
 							if (outputTransmitter.isClosed()) {
 								stop();
@@ -151,9 +225,39 @@ public class Transponder implements Receiver {
 						stop();
 					}
 				}
+				else if (waitableQueue != null) {
+					//no polling: wait until a message arrives or the queue is closed
+					//the wait is bounded, so that closing of the output is noticed while idle
+					try {
+						Object message = waitableQueue.take(IDLE_CHECK_INTERVAL);
+						if (message != null) {
+							batch.add(message);
+							waitableQueue.drainTo(batch, batchSize - 1);
+							if (batch.size() == 1) {
+								outputTransmitter.transmit(message);
+							}
+							else {
+								BatchSupport.transmit(outputTransmitter, batch);
+							}
+							nrofForwardedMessages += batch.size();
+							batch.clear();
+						}
+						else if (queue.isClosed()) {
+							stop();
+						}
+						if (outputTransmitter.isClosed()) {
+							stop();
+						}
+					}
+					catch (InterruptedException ie) {
+						stop();
+					}
+					continue;
+				}
 				else {
 					while (queue.available() > 0) {
 						outputTransmitter.transmit(queue.read());
+						nrofForwardedMessages++;
 					}
 					if (queue.isClosed()) {
 						stop();
@@ -191,9 +295,38 @@ public class Transponder implements Receiver {
 
 	/**
 	 * Stops forwarding objects.
+	 * A transponder waiting for messages is released by closing its queue.
 	 */
 	public void stop() {
 		haltRequest = true;
+		if (waitableQueue != null && !waitableQueue.isClosed()) {
+			waitableQueue.close();
+		}
+	}
+
+	/**
+	 * @return number of messages (or chunks read from the input stream) retransmitted
+	 */
+	public long getNrofForwardedMessages() {
+		return nrofForwardedMessages;
+	}
+
+	/**
+	 * @return number of bytes read from the input stream and retransmitted
+	 */
+	public long getNrofForwardedBytes() {
+		return nrofForwardedBytes;
+	}
+
+	/**
+	 * @return statistics of the queue the transponder reads from,
+	 *         or null if it reads from a stream or from a queue that does not keep statistics
+	 */
+	public QueueMetrics getQueueMetrics() {
+		if (queue instanceof MeteredQueue) {
+			return ((MeteredQueue) queue).getMetrics();
+		}
+		return null;
 	}
 
 	/**
@@ -206,6 +339,16 @@ public class Transponder implements Receiver {
 		receiverQueue.onReceive(message);
 	}
 
+	/**
+	 * @param messages
+	 */
+	public void onReceiveBatch(List<?> messages) {
+		if (receiverQueue == null) {
+			throw new IllegalStateException("transponder is configured to retransmit messages from alternate source only");
+		}
+		receiverQueue.onReceiveBatch(messages);
+	}
+
 	/**
 	 *
 	 */
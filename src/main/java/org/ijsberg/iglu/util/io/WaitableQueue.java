@@ -0,0 +1,47 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.io;
+
+import java.util.Collection;
+
+/**
+ * Object queue that lets a reader wait for objects to arrive
+ * instead of polling.
+ */
+public interface WaitableQueue extends Queue {
+	/**
+	 * Reads (and removes) an object from the queue, waiting for one to arrive if the queue is empty.
+	 * Waiting readers are released when the queue is closed.
+	 *
+	 * @param timeout maximum time to wait in ms; 0 means indefinitely
+	 * @return an object or null if the timeout expired or the queue was closed while empty
+	 * @throws InterruptedException
+	 */
+	Object take(long timeout) throws InterruptedException;
+
+	/**
+	 * Removes at most maxNrofMessages objects from the queue and adds them to a collection.
+	 *
+	 * @param collection
+	 * @param maxNrofMessages
+	 * @return the number of objects transferred
+	 */
+	int drainTo(Collection<Object> collection, int maxNrofMessages);
+}
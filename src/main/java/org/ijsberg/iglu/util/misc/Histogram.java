@@ -0,0 +1,131 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.misc;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records the distribution of non-negative values, such as durations in nanoseconds,
+ * in buckets that double in size.
+ * <p/>
+ * Recording is cheap and does not allocate memory, which makes the histogram suitable
+ * for measuring under full load. The price is precision: percentiles are reported
+ * as the upper bound of the bucket they fall in, so they may be up to twice the actual value.
+ */
+public class Histogram {
+	//bucket i holds values v with 2^(i-1) <= v < 2^i; bucket 0 holds 0
+	private static final int NROF_BUCKETS = 64;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(NROF_BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * @param value value to record; negative values are recorded as 0
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		buckets.incrementAndGet(NROF_BUCKETS - Long.numberOfLeadingZeros(value));
+		count.incrementAndGet();
+		sum.addAndGet(value);
+		long currentMax;
+		while (value > (currentMax = max.get()) && !max.compareAndSet(currentMax, value)) {
+		}
+	}
+
+	/**
+	 * @return number of recorded values
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * @return highest recorded value
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * @return average of recorded values or 0 if nothing has been recorded
+	 */
+	public long getMean() {
+		long currentCount = count.get();
+		return currentCount == 0 ? 0 : sum.get() / currentCount;
+	}
+
+	/**
+	 * @param percentage 0 - 100
+	 * @return a value that is greater than or equal to the given percentage of recorded values
+	 */
+	public long getPercentile(double percentage) {
+		if (percentage < 0 || percentage > 100) {
+			throw new IllegalArgumentException("percentage must be in range 0 - 100");
+		}
+		long[] snapshot = new long[NROF_BUCKETS];
+		long total = 0;
+		for (int i = 0; i < NROF_BUCKETS; i++) {
+			snapshot[i] = buckets.get(i);
+			total += snapshot[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long threshold = (long) Math.ceil(total * percentage / 100);
+		long accumulated = 0;
+		for (int i = 0; i < NROF_BUCKETS; i++) {
+			accumulated += snapshot[i];
+			if (accumulated >= threshold && snapshot[i] > 0) {
+				return Math.min(getUpperBound(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	private static long getUpperBound(int bucket) {
+		return bucket == 0 ? 0 : bucket >= 63 ? Long.MAX_VALUE : (1L << bucket) - 1;
+	}
+
+	/**
+	 * Discards all recorded values.
+	 * Values recorded concurrently may be partially lost.
+	 */
+	public void reset() {
+		for (int i = 0; i < NROF_BUCKETS; i++) {
+			buckets.set(i, 0);
+		}
+		count.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+
+	/**
+	 * @return summary containing count, mean, median, 99th percentile and maximum
+	 */
+	public String toString() {
+		return "count=" + getCount() + " mean=" + getMean() + " p50=" + getPercentile(50) +
+				" p99=" + getPercentile(99) + " max=" + getMax();
+	}
+}
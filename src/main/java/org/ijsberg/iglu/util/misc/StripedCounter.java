@@ -0,0 +1,92 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.misc;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter that can be incremented by many threads concurrently without them contending
+ * for the same memory location.
+ * <p/>
+ * Increments are spread over a number of cells, each on its own cache line, selected by thread.
+ * Reading the count sums the cells and is therefore more expensive than incrementing.
+ */
+public class StripedCounter {
+	//distance between cells in longs, so that each cell occupies its own cache line
+	private static final int PADDING = 8;
+	private static final int NROF_STRIPES = getNrofStripes();
+
+	private final AtomicLongArray cells = new AtomicLongArray(NROF_STRIPES * PADDING);
+
+	private static int getNrofStripes() {
+		int nrofStripes = 1;
+		int nrofProcessors = Runtime.getRuntime().availableProcessors();
+		while (nrofStripes < nrofProcessors * 2 && nrofStripes < 64) {
+			nrofStripes <<= 1;
+		}
+		return nrofStripes;
+	}
+
+	private static int getCellIndex() {
+		long id = Thread.currentThread().getId();
+		int hash = (int) (id ^ (id >>> 32));
+		hash ^= (hash >>> 16);
+		return (hash & (NROF_STRIPES - 1)) * PADDING;
+	}
+
+	/**
+	 * Adds 1 to the count.
+	 */
+	public void increment() {
+		cells.incrementAndGet(getCellIndex());
+	}
+
+	/**
+	 * @param value value to add to the count
+	 */
+	public void add(long value) {
+		cells.addAndGet(getCellIndex(), value);
+	}
+
+	/**
+	 * @return the current count
+	 */
+	public long get() {
+		long sum = 0;
+		for (int i = 0; i < NROF_STRIPES; i++) {
+			sum += cells.get(i * PADDING);
+		}
+		return sum;
+	}
+
+	/**
+	 * Sets the count to 0.
+	 * Increments that take place concurrently may be lost.
+	 */
+	public void reset() {
+		for (int i = 0; i < NROF_STRIPES; i++) {
+			cells.set(i * PADDING, 0);
+		}
+	}
+
+	public String toString() {
+		return String.valueOf(get());
+	}
+}
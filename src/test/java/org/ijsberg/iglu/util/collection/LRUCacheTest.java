@@ -0,0 +1,82 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.collection;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LRUCacheTest {
+
+	@Test
+	public void testEviction() throws Exception {
+		LRUCache<String, String> cache = new LRUCache<String, String>(3);
+		cache.put("a", "A");
+		cache.put("b", "B");
+		cache.put("c", "C");
+		assertEquals("A", cache.get("a"));
+		cache.put("d", "D");
+
+		assertEquals(3, cache.size());
+		assertNull(cache.get("b"));
+		assertEquals("A", cache.get("a"));
+		assertEquals("C", cache.get("c"));
+		assertEquals("D", cache.get("d"));
+
+		assertEquals(4, cache.getNrofHits());
+		assertEquals(1, cache.getNrofMisses());
+		assertEquals(1, cache.getNrofEvictions());
+		assertEquals(0.8, cache.getHitRatio(), 0.001);
+
+		cache.resetStatistics();
+		assertEquals(0, cache.getNrofHits());
+		assertEquals("A", cache.remove("a"));
+		assertEquals(2, cache.size());
+		cache.clear();
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testConcurrentAccess() throws Exception {
+		final LRUCache<Integer, Integer> cache = new LRUCache<Integer, Integer>(1000);
+		assertEquals(1000, cache.getCapacity());
+		Thread[] threads = new Thread[4];
+		for (int i = 0; i < threads.length; i++) {
+			final int offset = i * 10000;
+			threads[i] = new Thread() {
+				public void run() {
+					for (int j = 0; j < 10000; j++) {
+						Integer key = offset + j;
+						if (cache.get(key) == null) {
+							cache.put(key, key);
+						}
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (int i = 0; i < threads.length; i++) {
+			threads[i].join();
+		}
+		assertTrue(cache.size() <= cache.getCapacity());
+		assertEquals(40000, cache.getNrofMisses());
+		assertEquals(40000 - cache.size(), cache.getNrofEvictions());
+	}
+}
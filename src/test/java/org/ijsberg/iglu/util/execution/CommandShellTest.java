@@ -19,6 +19,235 @@
 
 package org.ijsberg.iglu.util.execution;
 
+import org.ijsberg.iglu.util.io.FileSupport;
+import org.ijsberg.iglu.util.io.Receiver;
+import org.ijsberg.iglu.util.io.ReceiverQueue;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
 public class CommandShellTest {
-}
 
+	private static String filter(CommandShell.NewLineFilter filter, String input) {
+		return new String(filter.filter(input.getBytes()));
+	}
+
+	@Test
+	public void testNewLineFilter() throws Exception {
+		CommandShell.NewLineFilter filter = new CommandShell.NewLineFilter();
+		assertEquals("a\r\nb\r\nc\r\nd", filter(filter, "a\nb\rc\r\nd"));
+		assertEquals("\r\n\r\n", filter(filter, "\n\n"));
+		assertEquals("", filter(filter, ""));
+		assertEquals("no line ending", filter(filter, "no line ending"));
+		//output does not fit in the initial buffer
+		assertEquals("\r\n\r\n\r\n\r\n\r\n\r\n\r\n\r\n", filter(filter, "\n\r\n\r\n\n\n\n\n\n"));
+	}
+
+	@Test
+	public void testNewLineFilterSplitCrLf() throws Exception {
+		CommandShell.NewLineFilter filter = new CommandShell.NewLineFilter();
+		assertEquals("line\r\n", filter(filter, "line\r"));
+		assertEquals("next\r\n", filter(filter, "\nnext\n"));
+		assertEquals("\r\n", filter(filter, "\n"));
+	}
+
+	private static boolean isWindows() {
+		return System.getProperty("os.name").startsWith("Windows");
+	}
+
+	@Test
+	public void testExecuteAsync() throws Throwable {
+		if (isWindows()) {
+			return;
+		}
+		ReceiverQueue queue = new ReceiverQueue();
+		Executable execution = CommandShell.executeAsync(new String[]{"/bin/sh", "-c", "echo out; echo err 1>&2; exit 3"},
+				null, new File("."), queue);
+		execution.waitUntilFinished();
+		assertTrue(execution.isFinished());
+		CommandResult result = (CommandResult) execution.getReturnValue();
+		assertEquals(3, result.getExitCode());
+		assertEquals("out\n", new String(result.getOutput()));
+		assertEquals("err\n", new String(result.getErrorOutput()));
+		assertTrue(result.getDuration() >= 0);
+
+		StringBuffer forwarded = new StringBuffer();
+		while (queue.available() > 0) {
+			forwarded.append(new String((byte[]) queue.read()));
+		}
+		assertEquals(8, forwarded.length());
+	}
+
+	@Test
+	public void testExecuteAsyncInParallel() throws Throwable {
+		if (isWindows()) {
+			return;
+		}
+		Executable[] executions = new Executable[20];
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < executions.length; i++) {
+			executions[i] = CommandShell.executeAsync("sleep 0.3; echo " + i, new File("."));
+		}
+		Executable all = Executable.allOf(executions);
+		all.waitUntilFinished();
+		assertTrue(all.isFinished());
+		assertTrue(System.currentTimeMillis() - start < 3000);
+		Object[] results = (Object[]) all.getReturnValue();
+		for (int i = 0; i < results.length; i++) {
+			CommandResult result = (CommandResult) results[i];
+			assertEquals(0, result.getExitCode());
+			assertEquals(i + "\n", new String(result.getOutput()));
+			assertTrue(result.getDuration() >= 250);
+		}
+	}
+
+	@Test
+	public void testInterruptExecuteAsync() throws Throwable {
+		if (isWindows()) {
+			return;
+		}
+		Executable execution = CommandShell.executeAsync("sleep 10", new File("."));
+		execution.interrupt();
+		execution.waitUntilFinished();
+		assertFalse(execution.isFinished());
+		assertNull(execution.getReturnValue());
+	}
+
+	private static File createTree() throws Exception {
+		File root = FileSupport.createTmpDir("Iglu-Util-test");
+		String[] dirs = {"a", "a/b", "a/b/c", "d", "d/e"};
+		for (int i = 0; i < dirs.length; i++) {
+			FileSupport.createDirectory(root.getPath() + "/" + dirs[i]);
+		}
+		FileSupport.writeTextFile(root.getPath() + "/a/b/fail", "");
+		FileSupport.writeTextFile(root.getPath() + "/d/fail", "");
+		return root;
+	}
+
+	@Test
+	public void testExecuteRecursiveCollectAll() throws Throwable {
+		if (isWindows()) {
+			return;
+		}
+		File root = createTree();
+		try {
+			ReceiverQueue results = new ReceiverQueue();
+			Executable execution = CommandShell.executeRecursive("if [ -e fail ]; then exit 1; fi; pwd",
+					root.getPath(), 2, CommandShell.COLLECT_ALL, results);
+			execution.waitUntilFinished();
+			assertTrue(execution.isFinished());
+			List errors = (List) execution.getReturnValue();
+			assertEquals(2, errors.size());
+			assertTrue(errors.get(0) instanceof CommandFailedException);
+
+			Set<File> dirs = new HashSet<File>();
+			while (results.available() > 0) {
+				dirs.add(((CommandResult) results.read()).getWorkingDir());
+			}
+			assertEquals(6, dirs.size());
+			assertTrue(dirs.contains(root));
+			assertTrue(dirs.contains(new File(root, "a/b/c")));
+		}
+		finally {
+			FileSupport.deleteFile(root);
+		}
+	}
+
+	@Test
+	public void testExecuteRecursiveFailFast() throws Throwable {
+		if (isWindows()) {
+			return;
+		}
+		File root = createTree();
+		try {
+			Executable execution = CommandShell.executeRecursive("if [ -e fail ]; then exit 1; fi",
+					root.getPath(), 1, CommandShell.FAIL_FAST, null);
+			execution.waitUntilFinished();
+			assertFalse(execution.isFinished());
+			assertTrue(execution.getExecutionException() instanceof CommandFailedException);
+			CommandResult result = ((CommandFailedException) execution.getExecutionException()).getResult();
+			assertTrue(new File(result.getWorkingDir(), "fail").exists());
+		}
+		finally {
+			FileSupport.deleteFile(root);
+		}
+	}
+
+	@Test
+	public void testExecuteRecursiveFailingReceiver() throws Throwable {
+		if (isWindows()) {
+			return;
+		}
+		File root = createTree();
+		try {
+			Executable execution = CommandShell.executeRecursive("pwd", root.getPath(), 2, CommandShell.COLLECT_ALL, new Receiver() {
+				public void onReceive(Object o) {
+					throw new IllegalStateException("receiver failed");
+				}
+
+				public void onTransmissionClose() {
+				}
+			});
+			execution.waitUntilFinished();
+			assertTrue(execution.isFinished());
+			List errors = (List) execution.getReturnValue();
+			assertEquals(6, errors.size());
+			assertTrue(errors.get(0) instanceof IllegalStateException);
+		}
+		finally {
+			FileSupport.deleteFile(root);
+		}
+	}
+
+	@Test
+	public void testGetOutputDeletesSpillFile() throws Throwable {
+		if (isWindows()) {
+			return;
+		}
+		Executable execution = CommandShell.executeAsync("head -c 300000 /dev/zero", new File("."));
+		execution.waitUntilFinished();
+		CommandResult result = (CommandResult) execution.getReturnValue();
+		File spillFile = result.getOutputCollector().getSpillFile();
+		assertTrue(spillFile.exists());
+		assertEquals(300000, result.getOutput().length);
+		assertFalse(spillFile.exists());
+		assertEquals(300000, result.getOutput().length);
+	}
+
+	@Test
+	public void testExecuteRecursiveWithRejectingWalker() throws Throwable {
+		if (isWindows()) {
+			return;
+		}
+		File root = createTree();
+		try {
+			final AtomicInteger nrofAcceptedTasks = new AtomicInteger();
+			RecursiveExecution execution = new RecursiveExecution(CommandShell.getCommandArrayForCurrentOS("pwd"), 2,
+					CommandShell.COLLECT_ALL, null, new Executor() {
+				public void execute(Runnable task) {
+					if (nrofAcceptedTasks.incrementAndGet() > 2) {
+						throw new RejectedExecutionException("walker is shut down");
+					}
+					Executable.getDefaultExecutor().execute(task);
+				}
+			});
+			execution.visit(root);
+			execution.waitUntilFinished();
+			assertTrue(execution.isFinished());
+			List errors = (List) execution.getReturnValue();
+			assertFalse(errors.isEmpty());
+			assertTrue(errors.get(0) instanceof RejectedExecutionException);
+		}
+		finally {
+			FileSupport.deleteFile(root);
+		}
+	}
+}
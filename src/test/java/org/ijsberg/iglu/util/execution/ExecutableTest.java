@@ -20,12 +20,21 @@
 package org.ijsberg.iglu.util.execution;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
 import static junit.framework.Assert.assertNull;
 import static junit.framework.Assert.assertTrue;
 import static junit.framework.Assert.fail;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
 /**
  */
 public class ExecutableTest {
@@ -190,4 +199,339 @@ public class ExecutableTest {
 		Thread.sleep(300);
 		assertEquals("done", exec.getReturnValue());
 	}
+
+	@Test
+	public void testExecuteAsyncOnExecutor() throws Throwable {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Executable[] execs = new Executable[5];
+			for (int i = 0; i < execs.length; i++) {
+				execs[i] = new Executable(executor) {
+					protected Object execute() throws Throwable {
+						return Thread.currentThread();
+					}
+				};
+				execs[i].executeAsync();
+			}
+			for (int i = 0; i < execs.length; i++) {
+				execs[i].waitUntilFinished();
+				assertTrue(execs[i].isFinished());
+				assertEquals(execs[0].getReturnValue(), execs[i].getReturnValue());
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testExecuteAsyncTimedOnSmallPool() throws Throwable {
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			long start = System.currentTimeMillis();
+			Executable[] execs = new Executable[50];
+			for (int i = 0; i < execs.length; i++) {
+				execs[i] = new Executable(executor) {
+					protected Object execute() throws Throwable {
+						return sleepAWhile(10000);
+					}
+				};
+				execs[i].executeAsyncTimed(100);
+			}
+			for (int i = 0; i < execs.length; i++) {
+				execs[i].waitUntilFinished();
+				assertTrue(execs[i].getExecutionException() instanceof TimeOutException);
+				assertFalse(execs[i].isFinished());
+				assertNull(execs[i].getReturnValue());
+			}
+			//executables waiting in line time out without occupying a thread
+			assertTrue(System.currentTimeMillis() - start < 2000);
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testExecuteAsyncDelayedOnTimer() throws Throwable {
+		Executable exec = new Executable() {
+			protected Object execute() throws Throwable {
+				return doStuff();
+			}
+		};
+		long start = System.currentTimeMillis();
+		exec.executeAsyncDelayed(100);
+		assertNull(exec.getReturnValue());
+		exec.waitUntilFinished();
+		assertTrue(System.currentTimeMillis() - start >= 90);
+		assertEquals("done", exec.getReturnValue());
+
+		exec = new Executable() {
+			protected Object execute() throws Throwable {
+				return doStuff();
+			}
+		};
+		exec.executeAsyncDelayed(100);
+		exec.interrupt();
+		exec.waitUntilFinished();
+		Thread.sleep(150);
+		assertFalse(exec.isFinished());
+		assertNull(exec.getReturnValue());
+	}
+
+	private static class RecordingListener implements ExecutionListener {
+		private final CountDownLatch completion = new CountDownLatch(1);
+		private final List<String> events = new ArrayList<String>();
+
+		public synchronized void onSuccess(Executable executable, Object result) {
+			events.add("success " + result);
+			completion.countDown();
+		}
+
+		public synchronized void onFailure(Executable executable, Throwable exception) {
+			events.add("failure " + exception.getMessage());
+			completion.countDown();
+		}
+
+		public synchronized void onTimeOut(Executable executable, TimeOutException exception) {
+			events.add("timeout");
+			completion.countDown();
+		}
+
+		private List<String> await() throws InterruptedException {
+			assertTrue(completion.await(2, TimeUnit.SECONDS));
+			synchronized (this) {
+				return events;
+			}
+		}
+	}
+
+	private static Executable returning(final Object result) {
+		return new Executable() {
+			protected Object execute() throws Throwable {
+				return result;
+			}
+		};
+	}
+
+	private static Executable throwing(final String message) {
+		return new Executable() {
+			protected Object execute() throws Throwable {
+				throw new IllegalStateException(message);
+			}
+		};
+	}
+
+	@Test
+	public void testListener() throws Throwable {
+		RecordingListener listener = new RecordingListener();
+		Executable exec = returning("done").addListener(listener);
+		exec.executeAsync();
+		assertEquals("[success done]", listener.await().toString());
+
+		//registered after completion
+		listener = new RecordingListener();
+		exec.addListener(listener);
+		assertEquals("[success done]", listener.await().toString());
+
+		listener = new RecordingListener();
+		throwing("oops").addListener(listener).executeAsync();
+		assertEquals("[failure oops]", listener.await().toString());
+
+		listener = new RecordingListener();
+		exec = new Executable() {
+			protected Object execute() throws Throwable {
+				return sleepAWhile(2000);
+			}
+		};
+		exec.addListener(listener).executeAsyncTimed(50);
+		assertEquals("[timeout]", listener.await().toString());
+	}
+
+	@Test
+	public void testThenExecute() throws Throwable {
+		final Executable first = returning("first");
+		Executable second = first.thenExecute(new Executable() {
+			protected Object execute() throws Throwable {
+				return first.getReturnValue() + " second";
+			}
+		});
+		RecordingListener listener = new RecordingListener();
+		second.addListener(listener);
+		first.executeAsync();
+		assertEquals("[success first second]", listener.await().toString());
+
+		Executable failing = throwing("oops");
+		Executable skipped = failing.thenExecute(returning("skipped"));
+		listener = new RecordingListener();
+		skipped.addListener(listener);
+		failing.executeAsync();
+		assertEquals("[failure oops]", listener.await().toString());
+		assertNull(skipped.getReturnValue());
+		try {
+			skipped.executeAsync();
+			fail("executable has already completed");
+		}
+		catch (IllegalStateException expected) {
+		}
+	}
+
+	@Test
+	public void testAllOf() throws Throwable {
+		Executable[] execs = {returning("a"), returning("b"), returning("c")};
+		Executable all = Executable.allOf(execs);
+		for (int i = 0; i < execs.length; i++) {
+			execs[i].executeAsync();
+		}
+		all.waitUntilFinished();
+		assertTrue(all.isFinished());
+		Object[] results = (Object[]) all.getReturnValue();
+		assertEquals(3, results.length);
+		assertEquals("a", results[0]);
+		assertEquals("c", results[2]);
+
+		execs = new Executable[]{returning("a"), throwing("oops")};
+		all = Executable.allOf(execs);
+		RecordingListener listener = new RecordingListener();
+		all.addListener(listener);
+		execs[0].executeAsync();
+		execs[1].executeAsync();
+		assertEquals("[failure oops]", listener.await().toString());
+
+		all = Executable.allOf();
+		all.waitUntilFinished();
+		assertEquals(0, ((Object[]) all.getReturnValue()).length);
+	}
+
+	@Test
+	public void testAnyOf() throws Throwable {
+		Executable slow = new Executable() {
+			protected Object execute() throws Throwable {
+				return sleepAWhile(1000);
+			}
+		};
+		Executable fast = returning("fast");
+		Executable any = Executable.anyOf(slow, fast);
+		RecordingListener listener = new RecordingListener();
+		any.addListener(listener);
+		slow.executeAsync();
+		fast.executeAsync();
+		assertEquals("[success fast]", listener.await().toString());
+		slow.interrupt();
+
+		any = Executable.anyOf(returning("never started"));
+		listener = new RecordingListener();
+		any.addListener(listener);
+		any.interrupt();
+		assertEquals("[failure execution interrupted]", listener.await().toString());
+	}
+
+	@Test
+	public void testStatistics() throws Throwable {
+		ExecutionStatistics statistics = new ExecutionStatistics();
+
+		Executable exec = returning("a").setLabel("returning").setMonitor(statistics);
+		exec.executeAsync();
+		exec.waitUntilFinished();
+		exec = throwing("oops").setLabel("throwing").setMonitor(statistics);
+		exec.executeAsync();
+		exec.waitUntilFinished();
+		exec = new Executable() {
+			protected Object execute() throws Throwable {
+				return sleepAWhile(1000);
+			}
+		}.setLabel("sleeping").setMonitor(statistics);
+		try {
+			exec.executeTimed(50);
+			fail("execution should result in a TimeOutException");
+		}
+		catch (TimeOutException expected) {
+		}
+		exec = returning("never started").setLabel("interrupted").setMonitor(statistics);
+		exec.executeAsyncDelayed(10000);
+		exec.interrupt();
+
+		//a timeout is reported by the timer thread, possibly after the timed out call has returned
+		long timeOutDeadline = System.currentTimeMillis() + 2000;
+		while (statistics.getStatistics("sleeping").getNrofTimeOuts() == 0 && System.currentTimeMillis() < timeOutDeadline) {
+			Thread.sleep(10);
+		}
+		assertEquals("[interrupted, returning, sleeping, throwing]", statistics.getLabels().toString());
+		assertEquals(1, statistics.getStatistics("returning").getNrofExecutions());
+		assertEquals(0, statistics.getStatistics("returning").getNrofFailures());
+		assertEquals(1, statistics.getStatistics("throwing").getNrofFailures());
+		assertEquals(1, statistics.getStatistics("sleeping").getNrofTimeOuts());
+		assertEquals(1, statistics.getStatistics("interrupted").getNrofInterruptions());
+		assertEquals(0, statistics.getStatistics("interrupted").getNrofExecutions());
+
+		//run time is recorded once the interrupted code has returned
+		long deadline = System.currentTimeMillis() + 2000;
+		while (statistics.getStatistics("sleeping").getRunTimes().getCount() == 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertTrue(statistics.getStatistics("sleeping").getRunTimes().getMax() >= 40 * 1000000L);
+	}
+
+	@Test
+	public void testDefaultMonitor() throws Throwable {
+		ExecutionStatistics statistics = new ExecutionStatistics();
+		Executable exec = returning("a");
+		Executable.setDefaultMonitor(statistics);
+		try {
+			exec.executeAsync();
+			exec.waitUntilFinished();
+		}
+		finally {
+			Executable.setDefaultMonitor(null);
+		}
+		assertEquals(1, statistics.getStatistics(exec.getLabel()).getNrofExecutions());
+	}
+
+	@Test
+	public void testCreateExecutor() throws Throwable {
+		assertFalse(isDaemonThread(Executable.getDefaultExecutor()));
+		ExecutorService daemonPool = Executable.createExecutor(1, true);
+		ExecutorService pool = Executable.createExecutor(1);
+		try {
+			assertTrue(isDaemonThread(daemonPool));
+			assertFalse(isDaemonThread(pool));
+		}
+		finally {
+			daemonPool.shutdown();
+			pool.shutdown();
+		}
+	}
+
+	private static boolean isDaemonThread(Executor executor) throws Throwable {
+		Executable exec = new Executable(executor) {
+			protected Object execute() {
+				return Thread.currentThread().isDaemon();
+			}
+		};
+		exec.executeAsync();
+		exec.waitUntilFinished();
+		return (Boolean) exec.getReturnValue();
+	}
+
+	@Test
+	public void testExecuteTimedInPoolThread() throws Throwable {
+		final ExecutorService pool = Executable.createExecutor(1);
+		try {
+			Executable outer = new Executable(pool) {
+				protected Object execute() throws Throwable {
+					return new Executable(pool) {
+						protected Object execute() throws Throwable {
+							return Thread.currentThread();
+						}
+					}.executeTimed(1000) == Thread.currentThread();
+				}
+			};
+			outer.executeAsync();
+			outer.waitUntilFinished();
+			assertEquals(Boolean.TRUE, outer.getReturnValue());
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
 }
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.execution;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ProcessPoolTest {
+
+	private static final File DIR = new File(".");
+
+	private static boolean isWindows() {
+		return System.getProperty("os.name").startsWith("Windows");
+	}
+
+	@Test
+	public void testMaxNrofProcesses() throws Throwable {
+		if (isWindows()) {
+			return;
+		}
+		ProcessPool pool = new ProcessPool(2);
+		Executable[] executions = new Executable[6];
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < executions.length; i++) {
+			executions[i] = pool.submit("sleep 0.2", DIR);
+		}
+		assertEquals(2, pool.getNrofRunningProcesses());
+		assertEquals(4, pool.getNrofWaitingCommands());
+		Executable all = Executable.allOf(executions);
+		while (!all.isFinished()) {
+			assertTrue(pool.getNrofRunningProcesses() <= 2);
+			Thread.sleep(10);
+		}
+		assertTrue(System.currentTimeMillis() - start >= 550);
+		assertEquals(0, pool.getNrofRunningProcesses());
+		assertEquals(6, pool.getQueueWaitTimes().getCount());
+		assertEquals(6, pool.getRunTimes().getCount());
+		assertTrue(pool.getQueueWaitTimes().getMax() >= 350);
+	}
+
+	@Test
+	public void testPriority() throws Throwable {
+		if (isWindows()) {
+			return;
+		}
+		ProcessPool pool = new ProcessPool(1);
+		final List<String> order = new ArrayList<String>();
+		ExecutionListener listener = new ExecutionListener() {
+			public void onSuccess(Executable executable, Object result) {
+				synchronized (order) {
+					order.add(new String(((CommandResult) result).getOutput()).trim());
+				}
+			}
+
+			public void onFailure(Executable executable, Throwable exception) {
+			}
+
+			public void onTimeOut(Executable executable, TimeOutException exception) {
+			}
+		};
+		Executable all = Executable.allOf(
+				pool.submit("sleep 0.1; echo first", DIR).addListener(listener),
+				pool.submit("echo low", DIR, 1, ProcessPool.NO_TIMEOUT).addListener(listener),
+				pool.submit("echo low2", DIR, 1, ProcessPool.NO_TIMEOUT).addListener(listener),
+				pool.submit("echo high", DIR, 9, ProcessPool.NO_TIMEOUT).addListener(listener));
+		all.waitUntilFinished();
+		synchronized (order) {
+			assertEquals("[first, high, low, low2]", order.toString());
+		}
+	}
+
+	@Test
+	public void testTimeOut() throws Throwable {
+		if (isWindows()) {
+			return;
+		}
+		ProcessPool pool = new ProcessPool(1);
+		long start = System.currentTimeMillis();
+		Executable slow = pool.submit("sleep 10", DIR, ProcessPool.DEFAULT_PRIORITY, 100);
+		Executable next = pool.submit("echo next", DIR);
+		slow.waitUntilFinished();
+		assertTrue(slow.getExecutionException() instanceof TimeOutException);
+		next.waitUntilFinished();
+		assertTrue(next.isFinished());
+		assertTrue(System.currentTimeMillis() - start < 5000);
+		assertEquals(1, pool.getNrofTimedOutCommands());
+	}
+
+	@Test
+	public void testInterruptWaitingCommand() throws Throwable {
+		if (isWindows()) {
+			return;
+		}
+		ProcessPool pool = new ProcessPool(1);
+		Executable running = pool.submit("sleep 0.2", DIR);
+		Executable waiting = pool.submit("echo never", DIR);
+		waiting.interrupt();
+		waiting.waitUntilFinished();
+		running.waitUntilFinished();
+		Thread.sleep(100);
+		assertFalse(waiting.isFinished());
+		assertEquals(1, pool.getRunTimes().getCount());
+
+		pool.shutdown();
+		try {
+			pool.submit("echo too late", DIR);
+			fail("pool is shut down");
+		}
+		catch (IllegalStateException expected) {
+		}
+	}
+
+	@Test
+	public void testTimeOutDestroysChildProcesses() throws Throwable {
+		if (isWindows()) {
+			return;
+		}
+		File marker = File.createTempFile("iglu-pool", ".tmp");
+		assertTrue(marker.delete());
+		ProcessPool pool = new ProcessPool(1);
+		Executable slow = pool.submit("sh -c 'sleep 1; touch " + marker.getAbsolutePath() + "'", DIR, ProcessPool.DEFAULT_PRIORITY, 200);
+		slow.waitUntilFinished();
+		assertTrue(slow.getExecutionException() instanceof TimeOutException);
+		Thread.sleep(1500);
+		assertFalse(marker.exists());
+		marker.delete();
+	}
+
+	@Test
+	public void testManyCommandsThatCanNotStart() throws Throwable {
+		if (isWindows()) {
+			return;
+		}
+		ProcessPool pool = new ProcessPool(1);
+		File missingDir = new File("does/not/exist");
+		Executable blocker = pool.submit("sleep 0.2", DIR);
+		Executable[] executions = new Executable[5000];
+		for (int i = 0; i < executions.length; i++) {
+			executions[i] = pool.submit("echo never", missingDir);
+		}
+		blocker.waitUntilFinished();
+		for (Executable execution : executions) {
+			execution.waitUntilFinished();
+			assertNotNull(execution.getExecutionException());
+		}
+		assertEquals(0, pool.getNrofRunningProcesses());
+		assertEquals(0, pool.getNrofWaitingCommands());
+	}
+}
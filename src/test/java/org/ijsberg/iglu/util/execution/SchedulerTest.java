@@ -0,0 +1,237 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.execution;
+
+import org.ijsberg.iglu.util.time.SchedulingSupport;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SchedulerTest {
+
+	private static final long FIVE_MINUTES = 5 * SchedulingSupport.MINUTE_IN_MS;
+
+	private volatile long currentTime;
+	private Scheduler scheduler;
+
+	@Before
+	public void setUp() {
+		currentTime = SchedulingSupport.getNextIntervalStart(System.currentTimeMillis(), 5) + 1000;
+		scheduler = new Scheduler("test scheduler") {
+			protected long getCurrentTime() {
+				return currentTime;
+			}
+		};
+	}
+
+	@After
+	public void tearDown() {
+		scheduler.stop();
+	}
+
+	private void setCurrentTime(long time) {
+		currentTime = time;
+		scheduler.wakeUp();
+	}
+
+	private static void waitFor(Scheduler.Job job, long nrofRuns, boolean running) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 2000;
+		while ((job.getNrofRuns() != nrofRuns || job.isRunning() != running) && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+		assertEquals(nrofRuns, job.getNrofRuns());
+		assertEquals(running, job.isRunning());
+	}
+
+	private static class BlockingTask implements Runnable {
+		private final AtomicInteger nrofRuns = new AtomicInteger();
+		private final CountDownLatch release = new CountDownLatch(1);
+
+		public void run() {
+			nrofRuns.incrementAndGet();
+			try {
+				release.await();
+			}
+			catch (InterruptedException ignore) {
+			}
+		}
+	}
+
+	@Test
+	public void testRunAtIntervalStart() throws Exception {
+		BlockingTask task = new BlockingTask();
+		task.release.countDown();
+		long firstRunTime = currentTime - 1000 + FIVE_MINUTES;
+		Scheduler.Job job = scheduler.schedule(task, 5, 0, Scheduler.SKIP);
+		assertEquals(firstRunTime, job.getNextRunTime());
+
+		setCurrentTime(firstRunTime - 1);
+		Thread.sleep(50);
+		assertEquals(0, task.nrofRuns.get());
+
+		setCurrentTime(firstRunTime);
+		waitFor(job, 1, false);
+		assertEquals(1, task.nrofRuns.get());
+		assertEquals(firstRunTime + FIVE_MINUTES, job.getNextRunTime());
+
+		//a late wake-up does not shift the schedule
+		setCurrentTime(firstRunTime + FIVE_MINUTES + 20000);
+		waitFor(job, 2, false);
+		assertEquals(firstRunTime + 2 * FIVE_MINUTES, job.getNextRunTime());
+	}
+
+	@Test
+	public void testOffset() throws Exception {
+		Scheduler.Job job = scheduler.schedule(new BlockingTask(), 5, 2, Scheduler.SKIP);
+		assertEquals(currentTime - 1000 + 2 * SchedulingSupport.MINUTE_IN_MS, job.getNextRunTime());
+	}
+
+	private Scheduler.Job runSlowJob(BlockingTask task, int missedRunPolicy) throws Exception {
+		long firstRunTime = currentTime - 1000 + FIVE_MINUTES;
+		Scheduler.Job job = scheduler.schedule(task, 5, 0, missedRunPolicy);
+		setCurrentTime(firstRunTime);
+		waitFor(job, 1, true);
+		//three runs are due while the first one is still in progress
+		for (int i = 1; i <= 3; i++) {
+			setCurrentTime(firstRunTime + i * FIVE_MINUTES);
+			Thread.sleep(50);
+		}
+		assertEquals(firstRunTime + 4 * FIVE_MINUTES, job.getNextRunTime());
+		return job;
+	}
+
+	@Test
+	public void testSkip() throws Exception {
+		BlockingTask task = new BlockingTask();
+		Scheduler.Job job = runSlowJob(task, Scheduler.SKIP);
+		assertEquals(3, job.getNrofSkippedRuns());
+		assertEquals(0, job.getNrofPendingRuns());
+		task.release.countDown();
+		waitFor(job, 1, false);
+	}
+
+	@Test
+	public void testCoalesce() throws Exception {
+		BlockingTask task = new BlockingTask();
+		Scheduler.Job job = runSlowJob(task, Scheduler.COALESCE);
+		assertEquals(2, job.getNrofSkippedRuns());
+		assertEquals(1, job.getNrofPendingRuns());
+		task.release.countDown();
+		waitFor(job, 2, false);
+		assertEquals(2, task.nrofRuns.get());
+	}
+
+	@Test
+	public void testCatchUp() throws Exception {
+		BlockingTask task = new BlockingTask();
+		Scheduler.Job job = runSlowJob(task, Scheduler.CATCH_UP);
+		assertEquals(0, job.getNrofSkippedRuns());
+		assertEquals(3, job.getNrofPendingRuns());
+		task.release.countDown();
+		waitFor(job, 4, false);
+		assertEquals(4, task.nrofRuns.get());
+	}
+
+	@Test
+	public void testMissedWhileSuspended() throws Exception {
+		BlockingTask task = new BlockingTask();
+		task.release.countDown();
+		long firstRunTime = currentTime - 1000 + FIVE_MINUTES;
+		Scheduler.Job skippingJob = scheduler.schedule(task, 5, 0, Scheduler.SKIP);
+		Scheduler.Job catchingUpJob = scheduler.schedule(task, 5, 0, Scheduler.CATCH_UP);
+
+		setCurrentTime(firstRunTime + 3 * FIVE_MINUTES + 1000);
+		waitFor(skippingJob, 1, false);
+		assertEquals(3, skippingJob.getNrofSkippedRuns());
+		waitFor(catchingUpJob, 4, false);
+		assertEquals(firstRunTime + 4 * FIVE_MINUTES, catchingUpJob.getNextRunTime());
+	}
+
+	@Test
+	public void testCatchUpWithRejectingExecutor() throws Exception {
+		final AtomicInteger nrofRejections = new AtomicInteger();
+		final ExecutorService pool = Executable.createExecutor(1);
+		Scheduler rejectingScheduler = new Scheduler("rejecting scheduler", new Executor() {
+			public void execute(Runnable command) {
+				if (nrofRejections.get() < 3) {
+					nrofRejections.incrementAndGet();
+					throw new RejectedExecutionException("busy");
+				}
+				pool.execute(command);
+			}
+		}) {
+			protected long getCurrentTime() {
+				return currentTime;
+			}
+		};
+		try {
+			BlockingTask task = new BlockingTask();
+			task.release.countDown();
+			long firstRunTime = currentTime - 1000 + FIVE_MINUTES;
+			Scheduler.Job job = rejectingScheduler.schedule(task, 5, 0, Scheduler.CATCH_UP);
+			//a backlog of runs, none of which the executor accepts at first
+			currentTime = firstRunTime + 9999 * FIVE_MINUTES;
+			rejectingScheduler.wakeUp();
+
+			long deadline = System.currentTimeMillis() + 10000;
+			while ((task.nrofRuns.get() < 10000 || job.isRunning()) && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			assertEquals(3, nrofRejections.get());
+			assertEquals(10000, task.nrofRuns.get());
+			assertEquals(10000, job.getNrofRuns());
+			assertEquals(0, job.getNrofPendingRuns());
+		}
+		finally {
+			rejectingScheduler.stop();
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void testCancel() throws Exception {
+		BlockingTask task = new BlockingTask();
+		Scheduler.Job job = scheduler.schedule(task, 5, 0, Scheduler.SKIP);
+		assertEquals(1, scheduler.getNrofJobs());
+		job.cancel();
+		assertEquals(0, scheduler.getNrofJobs());
+		setCurrentTime(job.getNextRunTime());
+		Thread.sleep(50);
+		assertEquals(0, task.nrofRuns.get());
+	}
+
+	@Test
+	public void testIllegalInterval() throws Exception {
+		try {
+			scheduler.schedule(new BlockingTask(), 7, 0, Scheduler.SKIP);
+			fail("interval of 7 minutes does not divide a day");
+		}
+		catch (IllegalArgumentException expected) {
+		}
+	}
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.execution;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.*;
+
+public class ShellSessionPoolTest {
+
+	//time to wait for a replacement session
+	private static final long DEFAULT_WAIT = 5000;
+
+	private static boolean isWindows() {
+		return System.getProperty("os.name").startsWith("Windows");
+	}
+
+	@Test
+	public void testExecute() throws Exception {
+		if (isWindows()) {
+			return;
+		}
+		ShellSessionPool pool = new ShellSessionPool("test", new File("."), 1, 2, 100);
+		try {
+			assertEquals(1, pool.getNrofIdleSessions());
+			CommandResult result = pool.execute("echo hello", 2000);
+			assertEquals(0, result.getExitCode());
+			assertEquals("hello\r\n", new String(result.getOutput()));
+
+			result = pool.execute("echo oops 1>&2; false", 2000);
+			assertEquals(1, result.getExitCode());
+			assertEquals("oops\r\n", new String(result.getOutput()));
+
+			result = pool.execute("X=1; echo $X", 2000);
+			assertEquals("1\r\n", new String(result.getOutput()));
+			assertEquals(1, pool.getNrofSessions());
+		}
+		finally {
+			pool.close();
+		}
+	}
+
+	@Test
+	public void testSessionState() throws Exception {
+		if (isWindows()) {
+			return;
+		}
+		ShellSessionPool pool = new ShellSessionPool("test", new File("."), 1, 1, 100);
+		try {
+			ShellSession session = pool.lease(1000);
+			session.execute("cd /", 1000);
+			assertEquals("/\r\n", new String(session.execute("pwd", 1000).getOutput()));
+			assertEquals(2, session.getNrofCommands());
+			pool.release(session);
+			assertSame(session, pool.lease(1000));
+		}
+		finally {
+			pool.close();
+		}
+	}
+
+	@Test
+	public void testMaxUses() throws Exception {
+		if (isWindows()) {
+			return;
+		}
+		ShellSessionPool pool = new ShellSessionPool("test", new File("."), 1, 1, 2);
+		try {
+			ShellSession session = pool.lease(1000);
+			session.execute(":", 1000);
+			session.execute(":", 1000);
+			pool.release(session);
+			assertEquals(1, pool.getNrofRecycledSessions());
+
+			ShellSession nextSession = pool.lease(DEFAULT_WAIT);
+			assertNotSame(session, nextSession);
+			assertEquals(0, nextSession.getNrofCommands());
+			pool.release(nextSession);
+		}
+		finally {
+			pool.close();
+		}
+	}
+
+	@Test
+	public void testTimeOut() throws Exception {
+		if (isWindows()) {
+			return;
+		}
+		ShellSessionPool pool = new ShellSessionPool("test", new File("."), 0, 1, 100);
+		try {
+			ShellSession session = pool.lease(1000);
+			try {
+				pool.lease(100);
+				fail("maximum number of sessions is leased");
+			}
+			catch (TimeOutException expected) {
+			}
+			try {
+				session.execute("sleep 5", 100);
+				fail("command should time out");
+			}
+			catch (TimeOutException expected) {
+			}
+			assertFalse(session.isUsable());
+			try {
+				session.execute("echo unreachable", 100);
+				fail("broken session must refuse commands");
+			}
+			catch (IOException expected) {
+			}
+			pool.release(session);
+			assertEquals(1, pool.getNrofRecycledSessions());
+			assertEquals("ok\r\n", new String(pool.execute("echo ok", DEFAULT_WAIT).getOutput()));
+		}
+		finally {
+			pool.close();
+		}
+	}
+
+	@Test
+	public void testMultiByteCharactersSplitOverChunks() throws Exception {
+		if (isWindows() || !"UTF-8".equals(Charset.defaultCharset().name())) {
+			return;
+		}
+		ShellSessionPool pool = new ShellSessionPool("test", new File("."), 1, 1, 100);
+		try {
+			StringBuffer expected = new StringBuffer();
+			StringBuffer command = new StringBuffer("printf 'x");
+			//a single leading byte makes characters straddle chunks of even size
+			expected.append('x');
+			for (int i = 0; i < 100; i++) {
+				expected.append("\u00e9");
+				command.append("\\303\\251");
+			}
+			command.append("'");
+			CommandResult result = pool.execute(command.toString(), 2000);
+			assertEquals(expected.toString(), new String(result.getOutput(), "UTF-8"));
+		}
+		finally {
+			pool.close();
+		}
+	}
+}
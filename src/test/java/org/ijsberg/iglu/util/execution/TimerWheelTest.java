@@ -0,0 +1,166 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.execution;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class TimerWheelTest {
+
+	private TimerWheel wheel;
+
+	@Before
+	public void setUp() {
+		wheel = new TimerWheel("test timer", 10, 16);
+	}
+
+	@After
+	public void tearDown() {
+		wheel.stop();
+	}
+
+	@Test
+	public void testAccuracy() throws Exception {
+		//delays exceed a full rotation of 160 ms
+		long[] delays = {0, 5, 50, 120, 170, 400};
+		final CountDownLatch latch = new CountDownLatch(delays.length);
+		final AtomicLong[] executionTimes = new AtomicLong[delays.length];
+		long start = System.nanoTime();
+		for (int i = 0; i < delays.length; i++) {
+			final AtomicLong executionTime = executionTimes[i] = new AtomicLong();
+			wheel.schedule(new Runnable() {
+				public void run() {
+					executionTime.set(System.nanoTime());
+					latch.countDown();
+				}
+			}, delays[i]);
+		}
+		assertTrue(latch.await(2, TimeUnit.SECONDS));
+		for (int i = 0; i < delays.length; i++) {
+			long delay = (executionTimes[i].get() - start) / 1000000;
+			assertTrue("task ran " + delay + " ms after scheduling instead of " + delays[i], delay >= delays[i]);
+			assertTrue("task ran " + delay + " ms after scheduling instead of " + delays[i], delay < delays[i] + 100);
+		}
+		assertEquals(0, wheel.getNrofWaitingTimeouts());
+	}
+
+	@Test
+	public void testCancel() throws Exception {
+		final AtomicInteger nrofRuns = new AtomicInteger();
+		Runnable task = new Runnable() {
+			public void run() {
+				nrofRuns.incrementAndGet();
+			}
+		};
+		TimerWheel.Timeout cancelled = wheel.schedule(task, 50);
+		TimerWheel.Timeout expired = wheel.schedule(task, 50);
+		assertEquals(2, wheel.getNrofWaitingTimeouts());
+
+		assertTrue(cancelled.cancel());
+		assertFalse(cancelled.cancel());
+		assertTrue(cancelled.isCancelled());
+		assertEquals(1, wheel.getNrofWaitingTimeouts());
+
+		Thread.sleep(200);
+		assertEquals(1, nrofRuns.get());
+		assertTrue(expired.isExpired());
+		assertFalse(expired.cancel());
+		assertFalse(cancelled.isExpired());
+		assertEquals(0, wheel.getNrofWaitingTimeouts());
+	}
+
+	@Test
+	public void testManyTimeouts() throws Exception {
+		int nrofTimeouts = 20000;
+		final AtomicInteger nrofRuns = new AtomicInteger();
+		Runnable task = new Runnable() {
+			public void run() {
+				nrofRuns.incrementAndGet();
+			}
+		};
+		Random random = new Random(1);
+		TimerWheel.Timeout[] timeouts = new TimerWheel.Timeout[nrofTimeouts];
+		for (int i = 0; i < nrofTimeouts; i++) {
+			timeouts[i] = wheel.schedule(task, random.nextInt(300));
+		}
+		int nrofCancelled = 0;
+		for (int i = 0; i < nrofTimeouts; i += 2) {
+			if (timeouts[i].cancel()) {
+				nrofCancelled++;
+			}
+		}
+		assertTrue(nrofCancelled > 0);
+		long deadline = System.currentTimeMillis() + 2000;
+		while (wheel.getNrofWaitingTimeouts() > 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(0, wheel.getNrofWaitingTimeouts());
+		Thread.sleep(20);
+		assertEquals(nrofTimeouts - nrofCancelled, nrofRuns.get());
+	}
+
+	@Test
+	public void testFailingTask() throws Exception {
+		final CountDownLatch latch = new CountDownLatch(1);
+		wheel.schedule(new Runnable() {
+			public void run() {
+				throw new RuntimeException("test: timer must survive this");
+			}
+		}, 0);
+		wheel.schedule(new Runnable() {
+			public void run() {
+				latch.countDown();
+			}
+		}, 20);
+		assertTrue(latch.await(1, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testStop() throws Exception {
+		final AtomicInteger nrofRuns = new AtomicInteger();
+		wheel.schedule(new Runnable() {
+			public void run() {
+				nrofRuns.incrementAndGet();
+			}
+		}, 50);
+		wheel.stop();
+		assertTrue(wheel.isStopped());
+		Thread.sleep(100);
+		assertEquals(0, nrofRuns.get());
+		try {
+			wheel.schedule(new Runnable() {
+				public void run() {
+				}
+			}, 0);
+			fail("stopped timer wheel must not accept tasks");
+		}
+		catch (IllegalStateException expected) {
+		}
+	}
+}
@@ -20,6 +20,7 @@
 package org.ijsberg.iglu.util.formatting;
 
 import static junit.framework.Assert.assertTrue;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 
 import org.junit.Test;
@@ -67,5 +68,14 @@ public class PatternMatchingSupportTest {
 		assertTrue(PatternMatchingSupport.valueMatchesRegularExpression("hopla.mask.mask", ".*mask"));
 	}
 
-}
+	@Test
+	public void testPatternCache() {
+		String regexp = "cached\\d+";
+		long nrofHits = PatternMatchingSupport.getPatternCache().getNrofHits();
+		assertTrue(PatternMatchingSupport.valueMatchesRegularExpression("cached123", regexp));
+		assertEquals(2, PatternMatchingSupport.getRangesMatchingRegularExpression("cached1 cached2", regexp).size());
+		assertTrue(PatternMatchingSupport.getPatternCache().getNrofHits() >= nrofHits + 1);
+		assertTrue(PatternMatchingSupport.getPattern(regexp) == PatternMatchingSupport.getPattern(regexp));
+	}
 
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.formatting;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class WildcardMatcherTest {
+
+	@Test
+	public void testMatches() throws Exception {
+		assertTrue(new WildcardMatcher("*").matches(""));
+		assertTrue(new WildcardMatcher("*").matches("hopla.mask"));
+		assertTrue(new WildcardMatcher("").matches(""));
+		assertFalse(new WildcardMatcher("").matches("x"));
+
+		WildcardMatcher matcher = new WildcardMatcher("/dir/*dir/*.ext");
+		assertTrue(matcher.matches("/dir/subdir/file.ext"));
+		assertTrue(matcher.matches("/dir/dir/.ext"));
+		assertFalse(matcher.matches("/dir/subdir/file.ex"));
+		assertFalse(matcher.matches("/dir/subdir/file.ext2"));
+
+		//as in the original regular expression translation, '?' matches at most one character
+		matcher = new WildcardMatcher("s?bdir");
+		assertTrue(matcher.matches("subdir"));
+		assertTrue(matcher.matches("sbdir"));
+		assertFalse(matcher.matches("suubdir"));
+		assertTrue(new WildcardMatcher("a??").matches("a"));
+		assertFalse(new WildcardMatcher("a??").matches("abcd"));
+	}
+
+	@Test
+	public void testLiteralCharacters() throws Exception {
+		assertTrue(new WildcardMatcher("a+b(c)[d]^$.txt").matches("a+b(c)[d]^$.txt"));
+		assertFalse(new WildcardMatcher("a.txt").matches("abtxt"));
+		assertTrue(new WildcardMatcher("\\dir\\*").matches("\\dir\\file"));
+		assertTrue(new WildcardMatcher("*\u00e9t\u00e9*").matches("r\u00e9sum\u00e9 \u00e9t\u00e9.txt"));
+		assertFalse(new WildcardMatcher("*\u00e9t\u00e9*").matches("r\u00e9sum\u00e9 ete.txt"));
+	}
+
+	@Test
+	public void testAlternatives() throws Exception {
+		WildcardMatcher matcher = new WildcardMatcher("*.mask|*.test");
+		assertTrue(matcher.matches("hopla.mask"));
+		assertTrue(matcher.matches("hopla.test"));
+		assertFalse(matcher.matches("hopla.hopla"));
+
+		matcher = new WildcardMatcher("a|");
+		assertTrue(matcher.matches("a"));
+		assertTrue(matcher.matches(""));
+		assertFalse(matcher.matches("b"));
+	}
+
+	@Test
+	public void testPathologicalExpression() throws Exception {
+		StringBuffer value = new StringBuffer();
+		for (int i = 0; i < 10000; i++) {
+			value.append('a');
+		}
+		assertFalse(new WildcardMatcher("*a*a*a*a*a*a*a*a*a*a*b").matches(value.toString()));
+		assertTrue(new WildcardMatcher("*a*a*a*a*a*a*a*a*a*a*").matches(value.toString()));
+	}
+
+	@Test
+	public void testLongExpression() throws Exception {
+		StringBuffer expression = new StringBuffer();
+		for (int i = 0; i < 10; i++) {
+			expression.append("/directory").append(i);
+		}
+		String value = expression.toString() + "/file.txt";
+		assertTrue(new WildcardMatcher(expression + "/*.txt").matches(value));
+		assertTrue(new WildcardMatcher(expression + "/f?le.txt").matches(value));
+		assertFalse(new WildcardMatcher(expression + "/*.tx").matches(value));
+		assertTrue(new WildcardMatcher("*.doc|" + expression + "/*.txt").matches(value));
+	}
+}
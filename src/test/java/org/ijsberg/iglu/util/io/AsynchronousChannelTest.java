@@ -0,0 +1,146 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.io;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class AsynchronousChannelTest {
+
+	/**
+	 * Blocks on the first message until released.
+	 */
+	private static class StuckReceiver implements Receiver {
+		private final CountDownLatch started = new CountDownLatch(1);
+		private final CountDownLatch release = new CountDownLatch(1);
+		private volatile boolean transmissionClosed;
+		private volatile int nrofMessages;
+
+		public void onReceive(Object message) {
+			started.countDown();
+			try {
+				release.await();
+			}
+			catch (InterruptedException ignore) {
+			}
+			nrofMessages++;
+		}
+
+		public void onTransmissionClose() {
+			transmissionClosed = true;
+		}
+	}
+
+	@Test
+	public void testTransmit() throws Exception {
+		AsynchronousChannel channel = new AsynchronousChannel("channel");
+		ReceiverQueue receiver1 = new ReceiverQueue();
+		ReceiverQueue receiver2 = new ReceiverQueue();
+		channel.registerReceiver(receiver1);
+		channel.registerReceiver(receiver2);
+
+		for (int i = 0; i < 500; i++) {
+			channel.transmit("" + i);
+		}
+		for (int i = 0; i < 500; i++) {
+			assertEquals("" + i, receiver1.take(1000));
+			assertEquals("" + i, receiver2.take(1000));
+		}
+		channel.close();
+	}
+
+	@Test
+	public void testSlowReceiverDoesNotDelayOthers() throws Exception {
+		AsynchronousChannel channel = new AsynchronousChannel("channel", 50, AsynchronousChannel.DROP);
+		StuckReceiver slowReceiver = new StuckReceiver();
+		ReceiverQueue fastReceiver = new ReceiverQueue();
+		channel.registerReceiver(slowReceiver);
+		channel.registerReceiver(fastReceiver);
+
+		for (int i = 0; i < 20; i++) {
+			channel.transmit("" + i);
+		}
+		for (int i = 0; i < 20; i++) {
+			assertEquals("" + i, fastReceiver.take(1000));
+		}
+		assertTrue(slowReceiver.started.await(1, TimeUnit.SECONDS));
+		for (int i = 0; i < 100; i++) {
+			channel.transmit("" + i);
+		}
+		//1 message being delivered, at most 50 queued
+		assertTrue(channel.getNrofDroppedMessages() >= 69);
+
+		slowReceiver.release.countDown();
+		channel.close();
+		for (int i = 0; i < 100 && !fastReceiver.isClosed(); i++) {
+			Thread.sleep(10);
+		}
+		assertTrue(fastReceiver.isClosed());
+	}
+
+	@Test
+	public void testDisconnectSlowReceiver() throws Exception {
+		AsynchronousChannel channel = new AsynchronousChannel("channel", 10, AsynchronousChannel.DISCONNECT);
+		StuckReceiver slowReceiver = new StuckReceiver();
+		channel.registerReceiver(slowReceiver);
+
+		channel.transmit("first");
+		assertTrue(slowReceiver.started.await(1, TimeUnit.SECONDS));
+		for (int i = 0; i < 20; i++) {
+			channel.transmit("" + i);
+		}
+		assertEquals(0, channel.getNrofReceivers());
+
+		slowReceiver.release.countDown();
+		for (int i = 0; i < 100 && !slowReceiver.transmissionClosed; i++) {
+			Thread.sleep(10);
+		}
+		assertTrue(slowReceiver.transmissionClosed);
+		assertEquals(1, slowReceiver.nrofMessages);
+		channel.close();
+	}
+
+	@Test
+	public void testCloseDeliversQueuedMessages() throws Exception {
+		AsynchronousChannel channel = new AsynchronousChannel("channel", 100, AsynchronousChannel.BLOCK);
+		final CountDownLatch closed = new CountDownLatch(1);
+		final int[] nrofMessages = new int[1];
+		channel.registerReceiver(new Receiver() {
+			public void onReceive(Object message) {
+				nrofMessages[0]++;
+			}
+
+			public void onTransmissionClose() {
+				closed.countDown();
+			}
+		});
+		for (int i = 0; i < 1000; i++) {
+			channel.transmit("" + i);
+		}
+		channel.close();
+		assertTrue(closed.await(1, TimeUnit.SECONDS));
+		assertEquals(1000, nrofMessages[0]);
+		assertNull(channel.registerReceiver(new ReceiverQueue()));
+	}
+}
@@ -20,7 +20,12 @@
 package org.ijsberg.iglu.util.io;
 
 import org.junit.Test;
+
+import java.util.Arrays;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class BasicChannelTest {
 
@@ -61,5 +66,91 @@ public class BasicChannelTest {
 		assertEquals(0, receiver2.available());
 	}
 
+	@Test
+	public void testTransmitBatch() throws Exception {
+		BasicChannel channel = new BasicChannel("channel");
+		ReceiverQueue receiver1 = channel.createReceiver();
+		ReceiverQueue receiver2 = new ReceiverQueue();
+		channel.registerReceiver(new Forwarder(new Pipe(receiver2)));
+
+		channel.transmitBatch(Arrays.asList("1", "2"));
+
+		assertEquals("1", receiver1.read());
+		assertEquals("2", receiver1.read());
+		assertEquals("1", receiver2.read());
+		assertEquals("2", receiver2.read());
+	}
+
+	@Test
+	public void testMetrics() throws Exception {
+		BasicChannel channel = new BasicChannel("channel");
+		ReceiverQueue receiver1 = channel.createReceiver(2);
+		channel.createReceiver();
+
+		for (int i = 0; i < 5; i++) {
+			channel.transmit("" + i);
+		}
+		assertEquals(5, channel.getNrofTransmittedMessages());
+		assertEquals(10, channel.getNrofDeliveredMessages());
+		assertEquals(2, channel.getReceiverMetrics().size());
+		assertEquals(3, receiver1.getMetrics().getNrofDroppedMessages());
+		assertEquals(2, receiver1.getMetrics().getHighWaterMark());
+	}
+
+	@Test
+	public void testClosedReceiverIsRemoved() throws Exception {
+		BasicChannel channel = new BasicChannel("channel");
+		ReceiverQueue receiver1 = channel.createReceiver();
+		ReceiverQueue receiver2 = channel.createReceiver();
+		assertEquals(2, channel.getNrofReceivers());
+
+		receiver1.close();
+		channel.transmit("message");
+
+		assertEquals(1, channel.getNrofReceivers());
+		assertEquals(0, receiver1.available());
+		assertEquals("message", receiver2.read());
+	}
+
+	@Test
+	public void testConcurrentTransmitAndRegister() throws Exception {
+		final BasicChannel channel = new BasicChannel("channel");
+		final ReceiverQueue receiver = channel.createReceiver();
+		Thread[] producers = new Thread[4];
+		for (int i = 0; i < producers.length; i++) {
+			producers[i] = new Thread() {
+				public void run() {
+					for (int j = 0; j < 1000; j++) {
+						channel.transmit("message");
+					}
+				}
+			};
+			producers[i].start();
+		}
+		for (int i = 0; i < 50; i++) {
+			channel.createReceiver().close();
+		}
+		for (int i = 0; i < producers.length; i++) {
+			producers[i].join();
+		}
+		assertEquals(4000, receiver.available());
+	}
+
+	@Test
+	public void testClose() throws Exception {
+		BasicChannel channel = new BasicChannel("channel", 2);
+		ReceiverQueue receiver = channel.createReceiver();
+		ReceiverQueue forwarded = new ReceiverQueue();
+		channel.registerReceiver(new Forwarder(new Pipe(forwarded)));
+		assertNull(channel.createReceiver());
+
+		channel.close();
+
+		assertTrue(receiver.isClosed());
+		assertTrue(forwarded.isClosed());
+		assertEquals(0, channel.getNrofReceivers());
+		assertNull(channel.createReceiver());
+	}
+
 }
 
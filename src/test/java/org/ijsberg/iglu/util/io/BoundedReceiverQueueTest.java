@@ -0,0 +1,136 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.io;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+public class BoundedReceiverQueueTest {
+
+	@Test
+	public void testDropOldest() throws Exception {
+		BoundedReceiverQueue queue = new BoundedReceiverQueue(2, BoundedReceiverQueue.DROP_OLDEST);
+		queue.onReceive("1");
+		queue.onReceive("2");
+		queue.onReceive("3");
+
+		assertEquals(2, queue.available());
+		assertEquals(1, queue.getNrofDroppedMessages());
+		assertEquals("2", queue.read());
+		assertEquals("3", queue.read());
+		assertNull(queue.read());
+	}
+
+	@Test
+	public void testDropNewest() throws Exception {
+		BoundedReceiverQueue queue = new BoundedReceiverQueue(2, BoundedReceiverQueue.DROP_NEWEST);
+		queue.onReceive("1");
+		queue.onReceive("2");
+		queue.onReceive("3");
+
+		assertEquals(2, queue.available());
+		assertEquals(1, queue.getNrofDroppedMessages());
+		assertEquals("1", queue.read());
+		assertEquals("2", queue.read());
+	}
+
+	@Test
+	public void testFail() throws Exception {
+		BoundedReceiverQueue queue = new BoundedReceiverQueue(1, BoundedReceiverQueue.FAIL);
+		queue.onReceive("1");
+		try {
+			queue.onReceive("2");
+			fail("full queue should refuse message");
+		}
+		catch (IllegalStateException expected) {
+		}
+		assertEquals(1, queue.getNrofDroppedMessages());
+	}
+
+	@Test
+	public void testBlockWithTimeout() throws Exception {
+		BoundedReceiverQueue queue = new BoundedReceiverQueue(1, BoundedReceiverQueue.BLOCK, 50);
+		queue.onReceive("1");
+		long start = System.currentTimeMillis();
+		queue.onReceive("2");
+		assertTrue(System.currentTimeMillis() - start >= 40);
+		assertEquals(1, queue.getNrofDroppedMessages());
+		assertEquals("1", queue.read());
+	}
+
+	@Test
+	public void testBlockReleasedByConsumer() throws Exception {
+		final BoundedReceiverQueue queue = new BoundedReceiverQueue(1);
+		queue.onReceive("1");
+		Thread producer = new Thread() {
+			public void run() {
+				queue.onReceive("2");
+			}
+		};
+		producer.start();
+		Thread.sleep(50);
+		assertEquals(1, queue.available());
+		assertEquals("1", queue.take(1000));
+		assertEquals("2", queue.take(1000));
+		producer.join(1000);
+		assertEquals(0, queue.getNrofDroppedMessages());
+	}
+
+	@Test
+	public void testTake() throws Exception {
+		final BoundedReceiverQueue queue = new BoundedReceiverQueue(10);
+		assertNull(queue.take(20));
+
+		new Thread() {
+			public void run() {
+				try {
+					Thread.sleep(50);
+				}
+				catch (InterruptedException ignore) {
+				}
+				queue.onReceive("message");
+			}
+		}.start();
+		assertEquals("message", queue.take(2000));
+
+		queue.close();
+		assertNull(queue.take(0));
+	}
+
+	@Test
+	public void testDrainTo() throws Exception {
+		BoundedReceiverQueue queue = new BoundedReceiverQueue(10, BoundedReceiverQueue.DROP_NEWEST);
+		for (int i = 0; i < 15; i++) {
+			queue.onReceive("" + i);
+		}
+		assertEquals(10, queue.available());
+
+		ArrayList<Object> result = new ArrayList<Object>();
+		assertEquals(4, queue.drainTo(result, 4));
+		assertEquals("0", result.get(0));
+		assertEquals("3", result.get(3));
+		assertEquals(6, queue.drainTo(result, 100));
+		assertEquals(10, result.size());
+		assertEquals(0, queue.available());
+	}
+}
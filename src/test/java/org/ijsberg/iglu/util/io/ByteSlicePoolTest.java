@@ -0,0 +1,74 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.io;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ByteSlicePoolTest {
+
+	@Test
+	public void testReuse() throws Exception {
+		ByteSlicePool pool = new ByteSlicePool(16, 2);
+		ByteSlice slice = pool.acquire();
+		assertEquals(16, slice.getBytes().length);
+		slice.release();
+		assertEquals(1, pool.getNrofFreeSlices());
+
+		assertSame(slice, pool.acquire());
+		assertEquals(1, pool.getNrofCreatedSlices());
+	}
+
+	@Test
+	public void testRetain() throws Exception {
+		ByteSlicePool pool = new ByteSlicePool(16, 2);
+		ByteSlice slice = pool.acquire();
+		slice.retain();
+		slice.release();
+		assertEquals(0, pool.getNrofFreeSlices());
+		slice.release();
+		assertEquals(1, pool.getNrofFreeSlices());
+
+		try {
+			slice.release();
+			fail("slice may not be released twice");
+		}
+		catch (IllegalStateException expected) {
+		}
+		try {
+			slice.retain();
+			fail("released slice may not be retained");
+		}
+		catch (IllegalStateException expected) {
+		}
+	}
+
+	@Test
+	public void testPoolLimit() throws Exception {
+		ByteSlicePool pool = new ByteSlicePool(16, 1);
+		ByteSlice slice1 = pool.acquire();
+		ByteSlice slice2 = pool.acquire();
+		slice1.release();
+		slice2.release();
+		assertEquals(1, pool.getNrofFreeSlices());
+		assertEquals(2, pool.getNrofCreatedSlices());
+	}
+}
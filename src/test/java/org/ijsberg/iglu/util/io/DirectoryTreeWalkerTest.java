@@ -0,0 +1,172 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.io;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class DirectoryTreeWalkerTest extends DirStructureDependentTest {
+
+	@Test
+	public void testWalk() throws Exception {
+		final List<File> files = Collections.synchronizedList(new ArrayList<File>());
+		DirectoryTreeWalker walker = new DirectoryTreeWalker(dirStructRoot, "*");
+		assertTrue(walker.walk(new FileVisitor() {
+			public boolean visit(File file) {
+				files.add(file);
+				return true;
+			}
+		}));
+		assertEquals(169, files.size());
+		assertEquals(new HashSet<File>(FileSupport.getFilesInDirectoryTree(dirStructRoot)), new HashSet<File>(files));
+
+		try {
+			walker.walk(new FileVisitor() {
+				public boolean visit(File file) {
+					return true;
+				}
+			});
+			fail("walker should not walk twice");
+		}
+		catch (IllegalStateException expected) {
+		}
+	}
+
+	@Test
+	public void testWalkWithMask() throws Exception {
+		final AtomicInteger count = new AtomicInteger();
+		new DirectoryTreeWalker(dirStructRoot, "*.LOG").walk(new FileVisitor() {
+			public boolean visit(File file) {
+				count.incrementAndGet();
+				return true;
+			}
+		});
+		assertEquals(19, count.get());
+
+		final AtomicInteger nrofDirectories = new AtomicInteger();
+		new DirectoryTreeWalker(new File(dirStructRoot), new FileFilterRuleSet(dirStructRoot).setIncludeFilesWithNameMask("*"))
+				.setIncludeFiles(false).setIncludeDirectories(true).walk(new FileVisitor() {
+			public boolean visit(File file) {
+				assertTrue(file.isDirectory());
+				nrofDirectories.incrementAndGet();
+				return true;
+			}
+		});
+		assertEquals(FileSupport.getDirectoriesInDirectoryTree(dirStructRoot).size(), nrofDirectories.get());
+	}
+
+	@Test
+	public void testStop() throws Exception {
+		final AtomicInteger count = new AtomicInteger();
+		DirectoryTreeWalker walker = new DirectoryTreeWalker(dirStructRoot, "*");
+		assertFalse(walker.walk(new FileVisitor() {
+			public boolean visit(File file) {
+				return count.incrementAndGet() < 5;
+			}
+		}));
+		assertTrue(walker.isStopped());
+		assertTrue(walker.isCompleted());
+		//directories being listed concurrently may still visit a few files
+		assertTrue(count.get() < 169);
+	}
+
+	@Test
+	public void testIterator() throws Exception {
+		DirectoryTreeWalker.FileIterator iterator = new DirectoryTreeWalker(dirStructRoot, "*").iterator(10);
+		int count = 0;
+		while (iterator.hasNext()) {
+			assertTrue(iterator.next().isFile());
+			count++;
+		}
+		assertEquals(169, count);
+
+		DirectoryTreeWalker walker = new DirectoryTreeWalker(dirStructRoot, "*");
+		iterator = walker.iterator(1);
+		assertTrue(iterator.hasNext());
+		iterator.next();
+		iterator.close();
+		assertTrue(walker.awaitCompletion(5000));
+		assertTrue(walker.isStopped());
+	}
+
+	@Test
+	public void testVisitorFailure() throws Exception {
+		try {
+			new DirectoryTreeWalker(dirStructRoot, "*").walk(new FileVisitor() {
+				public boolean visit(File file) {
+					throw new IllegalArgumentException("oops");
+				}
+			});
+			fail("exception of visitor should be rethrown");
+		}
+		catch (IllegalArgumentException expected) {
+			assertEquals("oops", expected.getMessage());
+		}
+	}
+
+	@Test
+	public void testDeleteContentsInDirectoryTree() throws Exception {
+		FileSupport.deleteContentsInDirectoryTree(dirStructRoot, "*.LOG");
+		assertEquals(0, FileSupport.getFilesInDirectoryTree(dirStructRoot, "*.LOG").size());
+		assertEquals(150, FileSupport.getFilesInDirectoryTree(dirStructRoot).size());
+	}
+
+	@Test
+	public void testDeleteOnAllWalkerThreads() throws Exception {
+		final File[] roots = new File[DirectoryTreeWalker.DEFAULT_NROF_THREADS];
+		for (int i = 0; i < roots.length; i++) {
+			roots[i] = new File(dirStructRoot, "delete" + i);
+			new File(roots[i], "a/b").mkdirs();
+			FileSupport.createFile(new File(roots[i], "a/b/file.txt").getPath());
+		}
+		final CountDownLatch allThreadsBusy = new CountDownLatch(roots.length);
+		final CountDownLatch deleted = new CountDownLatch(roots.length);
+		for (int i = 0; i < roots.length; i++) {
+			final File root = roots[i];
+			DirectoryTreeWalker.getDefaultExecutor().execute(new Runnable() {
+				public void run() {
+					allThreadsBusy.countDown();
+					try {
+						allThreadsBusy.await();
+					}
+					catch (InterruptedException e) {
+						return;
+					}
+					FileSupport.deleteFile(root);
+					deleted.countDown();
+				}
+			});
+		}
+		assertTrue(deleted.await(5, TimeUnit.SECONDS));
+		for (File root : roots) {
+			assertFalse(root.exists());
+		}
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.io;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FSFileCollectionTest extends DirStructureDependentTest {
+
+	private static class RecordingListener implements FileCollectionListener {
+		private List<String> events = new ArrayList<String>();
+
+		public void onFileAdded(String relativePathAndName, File file) {
+			events.add("added " + relativePathAndName);
+		}
+
+		public void onFileRemoved(String relativePathAndName, File file) {
+			events.add("removed " + relativePathAndName);
+		}
+
+		public void onFileChanged(String relativePathAndName, File file) {
+			events.add("changed " + relativePathAndName);
+		}
+
+		private String getEvents() {
+			String result = events.toString();
+			events.clear();
+			return result;
+		}
+	}
+
+	//makes sure that subsequent modifications change modification times
+	private static void backdate(File root, long time) {
+		root.setLastModified(time);
+		File[] files = root.listFiles();
+		for (int i = 0; files != null && i < files.length; i++) {
+			backdate(files[i], time);
+		}
+	}
+
+	@Test
+	public void testRefreshChangedFiles() throws Exception {
+		backdate(tmpDir, System.currentTimeMillis() - 60000);
+		FSFileCollection collection = new FSFileCollection(dirStructRoot, new FileFilterRuleSet().setIncludeFilesWithNameMask("*"));
+		collection.setIncrementalRefresh(true);
+		RecordingListener listener = new RecordingListener();
+		collection.addListener(listener);
+		assertEquals(169, collection.size());
+		int nrofDirectories = collection.getNrofListedDirectories();
+		assertTrue(nrofDirectories > 2);
+
+		collection.refresh();
+		assertEquals("[]", listener.getEvents());
+		assertEquals(0, collection.getNrofListedDirectories());
+
+		FileSupport.writeTextFile(dirStructRoot + "WWW/new.txt", "new");
+		FileSupport.writeTextFile(dirStructRoot + "new/sub/new.txt", "new");
+		assertEquals(171, collection.getFileNames().size());
+		assertEquals("[added WWW/new.txt, added new/sub/new.txt]", listener.getEvents());
+		assertTrue(collection.containsFile("new/sub/new.txt"));
+		//root, WWW, new and new/sub
+		assertEquals(4, collection.getNrofListedDirectories());
+
+		File file = new File(dirStructRoot + "WWW/new.txt");
+		FileSupport.writeTextFile(file.getPath(), "changed");
+		file.setLastModified(System.currentTimeMillis() - 10000);
+		collection.refresh();
+		assertEquals("[changed WWW/new.txt]", listener.getEvents());
+
+		FileSupport.deleteFile(new File(dirStructRoot + "new"));
+		file.delete();
+		collection.refresh();
+		assertEquals("[removed WWW/new.txt, removed new/sub/new.txt]", listener.getEvents());
+		assertEquals(169, collection.size());
+		assertFalse(collection.containsFile("new/sub/new.txt"));
+	}
+
+	@Test
+	public void testFullRescan() throws Exception {
+		FSFileCollection collection = new FSFileCollection(dirStructRoot, new FileFilterRuleSet().setIncludeFilesWithNameMask("*.LOG"));
+		RecordingListener listener = new RecordingListener();
+		collection.addListener(listener);
+		assertEquals(19, collection.size());
+
+		FileSupport.writeTextFile(dirStructRoot + "WWW/new.LOG", "new");
+		collection.refreshFiles();
+		assertEquals("[added WWW/new.LOG]", listener.getEvents());
+		assertEquals(20, collection.getFileNames().size());
+
+		collection.setIncrementalRefresh(true);
+		collection.setFullRescanInterval(1);
+		collection.refresh();
+		collection.refresh();
+		//root and all of its subdirectories
+		assertEquals(FileSupport.getDirectoriesInDirectoryTree(dirStructRoot).size() + 1, collection.getNrofListedDirectories());
+	}
+}
@@ -23,6 +23,8 @@ import org.junit.Test;
 
 import java.io.File;
 
+import java.io.FileOutputStream;
+
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -101,6 +103,54 @@ public class FileFilterRuleSetTest extends DirStructureDependentTest {
 		ruleSet = new FileFilterRuleSet("*.html", "* /_d0/ *", "*FITNESS FOR A PARTICULAR PURPOSE*", "  + This file is part of Iglu.");
 		assertTrue(ruleSet.fileMatchesRules(file));     */
 	}
-	
-	
+
+	@Test
+	public void testFileMatchesRulesForStreamedContents() throws Exception {
+
+		StringBuffer contents = new StringBuffer();
+		for (int i = 0; i < 5000; i++) {
+			contents.append("line " + i + "\n");
+		}
+		//spans a chunk boundary
+		contents.insert(8190, "INCLUDE");
+		File file = FileSupport.writeTextFile(dirStructRoot + "large.txt", contents.toString() + "EXCLUDE");
+
+		FileFilterRuleSet ruleSet = new FileFilterRuleSet().setIncludeFilesWithNameMask("*.txt").setIncludeFilesContainingText("absent", "INCLUDE");
+		assertTrue(ruleSet.fileMatchesRules(file));
+
+		ruleSet = new FileFilterRuleSet().setIncludeFilesWithNameMask("*.txt").setIncludeFilesContainingText("absent");
+		assertFalse(ruleSet.fileMatchesRules(file));
+
+		ruleSet = new FileFilterRuleSet().setIncludeFilesWithNameMask("*.txt").setIncludeFilesContainingText("INCLUDE").setExcludeFilesContainingText("EXCLUDE");
+		assertFalse(ruleSet.fileMatchesRules(file));
+
+		ruleSet = new FileFilterRuleSet().setIncludeFilesWithNameMask("*.txt").setExcludeFilesContainingText("absent");
+		assertTrue(ruleSet.fileMatchesRules(file));
+		assertTrue(ruleSet.fileMatchesRules("large.txt", contents.toString()));
+
+		ruleSet = new FileFilterRuleSet().setIncludeFilesWithNameMask("*.html").setIncludeFilesContainingText("INCLUDE");
+		assertFalse(ruleSet.fileMatchesRules(file));
+	}
+
+	@Test
+	public void testFileMatchesRulesForBinaryContents() throws Exception {
+
+		File file = new File(dirStructRoot + "binary.bin");
+		FileOutputStream output = new FileOutputStream(file);
+		output.write(new byte[]{'G', 'I', 'F', 0, 1, 2});
+		output.close();
+
+		FileFilterRuleSet ruleSet = new FileFilterRuleSet().setIncludeFilesWithNameMask("*.bin").setIncludeFilesContainingText("GIF");
+		assertFalse(ruleSet.fileMatchesRules(file));
+		assertFalse(ruleSet.clone().fileMatchesRules(file));
+
+		ruleSet.setSkipBinaryFiles(false);
+		assertTrue(ruleSet.fileMatchesRules(file));
+
+		//binary files are not excluded for texts they are not searched for
+		ruleSet = new FileFilterRuleSet().setIncludeFilesWithNameMask("*.bin").setExcludeFilesContainingText("GIF");
+		assertTrue(ruleSet.fileMatchesRules(file));
+		ruleSet.setSkipBinaryFiles(false);
+		assertFalse(ruleSet.fileMatchesRules(file));
+	}
 }
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.io;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MultiPatternMatcherTest {
+
+	private static MultiPatternMatcher.Scan scan(MultiPatternMatcher matcher, String data, int chunkSize) {
+		MultiPatternMatcher.Scan scan = matcher.newScan();
+		byte[] bytes = data.getBytes();
+		for (int offset = 0; offset < bytes.length; offset += chunkSize) {
+			scan.feed(bytes, offset, Math.min(chunkSize, bytes.length - offset));
+		}
+		return scan;
+	}
+
+	@Test
+	public void testOverlappingPatterns() throws Exception {
+		MultiPatternMatcher matcher = MultiPatternMatcher.forText("he", "she", "his", "hers");
+		assertEquals(4, matcher.getNrofPatterns());
+
+		MultiPatternMatcher.Scan scan = scan(matcher, "ushers", 100);
+		assertTrue(scan.isFound(0));
+		assertTrue(scan.isFound(1));
+		assertFalse(scan.isFound(2));
+		assertTrue(scan.isFound(3));
+		assertEquals(3, scan.getNrofPatternsFound());
+
+		scan = scan(matcher, "hishis", 100);
+		assertTrue(scan.isFound(2));
+		assertEquals(1, scan.getNrofPatternsFound());
+
+		assertEquals(0, scan(matcher, "nothing to see", 100).getNrofPatternsFound());
+	}
+
+	@Test
+	public void testChunkBoundaries() throws Exception {
+		MultiPatternMatcher matcher = MultiPatternMatcher.forText("boundary", "aab");
+		for (int chunkSize = 1; chunkSize < 12; chunkSize++) {
+			MultiPatternMatcher.Scan scan = scan(matcher, "a crossed boundaaab", chunkSize);
+			assertFalse(scan.isFound(0));
+			assertTrue(scan.isFound(1));
+
+			scan = scan(matcher, "..boundary..", chunkSize);
+			assertTrue(scan.isFound(0));
+		}
+	}
+
+	@Test
+	public void testEmptyPattern() throws Exception {
+		MultiPatternMatcher matcher = MultiPatternMatcher.forText("", "x");
+		MultiPatternMatcher.Scan scan = matcher.newScan();
+		assertTrue(scan.isFound(0));
+		assertFalse(scan.isFound(1));
+	}
+}
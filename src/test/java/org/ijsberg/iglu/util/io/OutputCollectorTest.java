@@ -0,0 +1,86 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.io;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+import static org.junit.Assert.*;
+
+public class OutputCollectorTest {
+
+	@Test
+	public void testHeadAndTail() throws Exception {
+		OutputCollector collector = new OutputCollector(4, 4);
+		collector.onReceive("abc");
+		assertEquals("abc", new String(collector.getHead()));
+		assertEquals(0, collector.getTail().length);
+
+		collector.onReceive("defgh".getBytes());
+		assertEquals("abcd", new String(collector.getHead()));
+		assertEquals("efgh", new String(collector.getTail()));
+		assertFalse(collector.isSpilled());
+		assertEquals("abcdefgh", new String(collector.toByteArray()));
+
+		ByteSlice slice = new ByteSlicePool(16, 1).acquire();
+		System.arraycopy("ijXYZ".getBytes(), 0, slice.getBytes(), 0, 5);
+		slice.setLength(2);
+		collector.onReceive(slice);
+		assertEquals(10, collector.getNrofBytes());
+		assertEquals("ghij", new String(collector.getTail()));
+		assertTrue(collector.isSpilled());
+		assertFalse(collector.isTruncated());
+		assertEquals("abcdefghij", new String(collector.toByteArray()));
+
+		collector.onReceive("0123456789");
+		collector.onTransmissionClose();
+		assertEquals("6789", new String(collector.getTail()));
+		assertEquals("abcdefghij0123456789", new String(collector.toByteArray()));
+
+		File spillFile = collector.getSpillFile();
+		assertTrue(spillFile.exists());
+		collector.delete();
+		assertFalse(spillFile.exists());
+		try {
+			collector.toByteArray();
+			fail("spilled output is deleted");
+		}
+		catch (IOException expected) {
+		}
+	}
+
+	@Test
+	public void testLineIterator() throws Exception {
+		OutputCollector collector = new OutputCollector(8, 8);
+		for (int i = 0; i < 100; i++) {
+			collector.onReceive("line " + i + "\n");
+		}
+		Iterator<String> lines = collector.lineIterator("UTF-8");
+		for (int i = 0; i < 100; i++) {
+			assertTrue(lines.hasNext());
+			assertEquals("line " + i, lines.next());
+		}
+		assertFalse(lines.hasNext());
+		collector.delete();
+	}
+}
@@ -19,7 +19,105 @@
 
 package org.ijsberg.iglu.util.io;
 
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
 
 public class PipeTest {
-}
 
+	@Test
+	public void testTransmitBatch() throws Exception {
+		ReceiverQueue receiver = new ReceiverQueue();
+		Pipe pipe = new Pipe(receiver, new Filter<String>() {
+			public String filter(String input) {
+				return input.toUpperCase();
+			}
+		});
+
+		pipe.transmitBatch(Arrays.asList("a", "b", "c"));
+
+		assertEquals(3, receiver.available());
+		assertEquals("A", receiver.read());
+		assertEquals("B", receiver.read());
+		assertEquals("C", receiver.read());
+	}
+
+	@Test
+	public void testFilterChain() throws Exception {
+		ReceiverQueue receiver = new ReceiverQueue();
+		FilterChain chain = new FilterChain()
+				.add(new Filter<String>() {
+					public String filter(String input) {
+						return input.trim();
+					}
+				})
+				.add(new ExpandingFilter<String>() {
+					//splits words, drops empty input
+					public void filter(String input, Receiver output) {
+						for (String word : input.split(" ")) {
+							if (word.length() > 0) {
+								output.onReceive(word);
+							}
+						}
+					}
+				});
+		Pipe pipe = Pipe.withFilterChain(receiver, chain);
+		pipe.appendFilter(new Filter<String>() {
+			public String filter(String input) {
+				return input.toUpperCase();
+			}
+		});
+		assertEquals(2, chain.size());
+		assertEquals(3, pipe.getFilterChain().size());
+
+		pipe.transmit(" hello  world ");
+		pipe.transmit("   ");
+		pipe.transmit("again");
+
+		assertEquals(3, receiver.available());
+		assertEquals("HELLO", receiver.read());
+		assertEquals("WORLD", receiver.read());
+		assertEquals("AGAIN", receiver.read());
+	}
+
+	@Test
+	public void testAddFilterReplaces() throws Exception {
+		ReceiverQueue receiver = new ReceiverQueue();
+		Pipe pipe = new Pipe(receiver, null);
+		pipe.transmit("");
+		assertEquals("", receiver.read());
+
+		pipe.addFilter(new Filter<String>() {
+			public String filter(String input) {
+				return input + "a";
+			}
+		});
+		pipe.addFilter(new Filter<String>() {
+			public String filter(String input) {
+				return input + "b";
+			}
+		});
+		pipe.transmit("");
+		assertEquals("b", receiver.read());
+	}
+
+	@Test
+	public void testAppendFilter() throws Exception {
+		ReceiverQueue receiver = new ReceiverQueue();
+		Pipe pipe = new Pipe(receiver);
+		pipe.appendFilter(new Filter<String>() {
+			public String filter(String input) {
+				return input + "a";
+			}
+		});
+		pipe.appendFilter(new Filter<String>() {
+			public String filter(String input) {
+				return input + "b";
+			}
+		});
+		pipe.transmit("");
+		assertEquals("ab", receiver.read());
+	}
+}
@@ -19,7 +19,76 @@
 
 package org.ijsberg.iglu.util.io;
 
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 public class ReceiverQueueTest {
+
+	@Test
+	public void testTake() throws Exception {
+		final ReceiverQueue queue = new ReceiverQueue();
+		assertNull(queue.take(20));
+
+		new Thread() {
+			public void run() {
+				try {
+					Thread.sleep(50);
+				}
+				catch (InterruptedException ignore) {
+				}
+				queue.onReceive("message");
+			}
+		}.start();
+		assertEquals("message", queue.take(2000));
+
+		queue.onReceive("last");
+		queue.close();
+		assertEquals("last", queue.take(0));
+		assertNull(queue.take(0));
+	}
+
+	@Test
+	public void testMetrics() throws Exception {
+		ReceiverQueue queue = new ReceiverQueue(50);
+		for (int i = 0; i < 100; i++) {
+			queue.onReceive("" + i);
+		}
+		QueueMetrics metrics = queue.getMetrics();
+		assertEquals(100, metrics.getNrofEnqueuedMessages());
+		assertEquals(50, metrics.getNrofDroppedMessages());
+		assertEquals(50, metrics.getHighWaterMark());
+
+		assertEquals("50", queue.read());
+		assertEquals(10, queue.drainTo(new ArrayList<Object>(), 10));
+		assertEquals(11, metrics.getNrofDequeuedMessages());
+		assertEquals(11, metrics.getLatency().getCount());
+
+		metrics.setLatencyTracked(false);
+		queue.read();
+		assertEquals(12, metrics.getNrofDequeuedMessages());
+		assertEquals(11, metrics.getLatency().getCount());
+	}
+
+	@Test
+	public void testGrowingQueuePreservesOrder() throws Exception {
+		ReceiverQueue queue = new ReceiverQueue();
+		for (int i = 0; i < 10; i++) {
+			queue.onReceive("" + i);
+		}
+		for (int i = 0; i < 5; i++) {
+			assertEquals("" + i, queue.read());
+		}
+		for (int i = 10; i < 100; i++) {
+			queue.onReceive("" + i);
+		}
+		for (int i = 5; i < 100; i++) {
+			assertEquals("" + i, queue.read());
+		}
+		assertNull(queue.read());
+	}
 }
 
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.io;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TransponderTest {
+
+	@Test
+	public void testForwardWithoutPolling() throws Exception {
+		ReceiverQueue output = new ReceiverQueue();
+		Transponder transponder = new Transponder(new Pipe(output));
+		transponder.start();
+
+		transponder.onReceive("message");
+		assertEquals("message", output.take(1000));
+
+		transponder.stop();
+		transponder.forwarderThread.join(1000);
+		assertFalse(transponder.forwarderThread.isAlive());
+		assertTrue(output.isClosed());
+	}
+
+	@Test
+	public void testRetransmitInBatches() throws Exception {
+		final List<Integer> batchSizes = new ArrayList<Integer>();
+		ReceiverQueue output = new ReceiverQueue() {
+			public void onReceiveBatch(List<?> messages) {
+				batchSizes.add(messages.size());
+				super.onReceiveBatch(messages);
+			}
+		};
+		ReceiverQueue input = new ReceiverQueue();
+		for (int i = 0; i < 250; i++) {
+			input.onReceive("" + i);
+		}
+		input.close();
+		Transponder transponder = new Transponder(input, new Pipe(output));
+		transponder.start();
+		transponder.forwarderThread.join(1000);
+
+		assertEquals(Arrays.asList(Transponder.DEFAULT_BATCH_SIZE, Transponder.DEFAULT_BATCH_SIZE, 50), batchSizes);
+		for (int i = 0; i < 250; i++) {
+			assertEquals("" + i, output.read());
+		}
+	}
+
+	@Test
+	public void testForwardStreamInPooledSlices() throws Exception {
+		byte[] input = new byte[100000];
+		for (int i = 0; i < input.length; i++) {
+			input[i] = (byte) i;
+		}
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		ByteSlicePool pool = new ByteSlicePool(1024, 4);
+		Transponder transponder = new Transponder(new ByteArrayInputStream(input), new Pipe(new Forwarder(output)), pool);
+		transponder.start();
+		for (int i = 0; i < 100 && output.size() < input.length; i++) {
+			Thread.sleep(10);
+		}
+		transponder.stop();
+		transponder.forwarderThread.join(1000);
+
+		assertArrayEquals(input, output.toByteArray());
+		assertEquals(1, pool.getNrofCreatedSlices());
+	}
+
+	@Test
+	public void testStopsWhenQueueCloses() throws Exception {
+		BoundedReceiverQueue input = new BoundedReceiverQueue(10);
+		ReceiverQueue output = new ReceiverQueue();
+		Transponder transponder = new Transponder(input, new Pipe(output));
+		transponder.start();
+
+		input.onReceive("1");
+		input.onReceive("2");
+		input.close();
+
+		transponder.forwarderThread.join(1000);
+		assertFalse(transponder.forwarderThread.isAlive());
+		assertEquals("1", output.read());
+		assertEquals("2", output.read());
+	}
+
+	@Test
+	public void testStopsWhenIdleOutputCloses() throws Exception {
+		BoundedReceiverQueue input = new BoundedReceiverQueue(10);
+		Pipe output = new Pipe(new ReceiverQueue());
+		Transponder transponder = new Transponder(input, output);
+		transponder.start();
+
+		output.close();
+		transponder.forwarderThread.join(3000);
+		assertFalse(transponder.forwarderThread.isAlive());
+	}
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2011-2014 Jeroen Meetsma - IJsberg Automatisering BV
+ *
+ * This file is part of Iglu.
+ *
+ * Iglu is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Iglu is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Iglu.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ijsberg.iglu.util.misc;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HistogramTest {
+
+	@Test
+	public void testPercentile() throws Exception {
+		Histogram histogram = new Histogram();
+		assertEquals(0, histogram.getPercentile(99));
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i);
+		}
+		assertEquals(1000, histogram.getCount());
+		assertEquals(1000, histogram.getMax());
+		assertEquals(500, histogram.getMean());
+
+		long median = histogram.getPercentile(50);
+		assertTrue(median >= 500 && median < 1000);
+		long p99 = histogram.getPercentile(99);
+		assertTrue(p99 >= 990 && p99 <= 1000);
+		assertEquals(1000, histogram.getPercentile(100));
+	}
+
+	@Test
+	public void testReset() throws Exception {
+		Histogram histogram = new Histogram();
+		histogram.record(0);
+		histogram.record(-5);
+		histogram.record(Long.MAX_VALUE);
+		assertEquals(3, histogram.getCount());
+		assertEquals(0, histogram.getPercentile(50));
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getMax());
+	}
+}